@@ -0,0 +1,16 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+SCRIPT_DIR="$(cd -- "$(dirname -- "${BASH_SOURCE[0]}")" && pwd)"
+ROOT_DIR="$(cd -- "${SCRIPT_DIR}/.." && pwd)"
+
+SPEC="${1:-${ROOT_DIR}/datasets/large-space.json}"
+shift || true
+
+cd "${ROOT_DIR}"
+mvn -q -DskipTests compile
+CLASSPATH_FILE="${ROOT_DIR}/target/classpath.txt"
+mvn -q dependency:build-classpath -Dmdep.outputFile="${CLASSPATH_FILE}" >/dev/null
+
+exec java -cp "${ROOT_DIR}/target/classes:$(cat "${CLASSPATH_FILE}")" \
+  com.anymind.promptrecorder.bench.DatasetGenerator "${SPEC}" "$@"
@@ -0,0 +1,38 @@
+package com.anymind.promptrecorder.api;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, Object>> storageFailure(IllegalStateException e) {
+        if (isBusy(e)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Collections.singletonMap("error", "database_busy"));
+        }
+        throw e;
+    }
+
+    static boolean isBusy(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof SQLException) {
+                int code = ((SQLException) current).getErrorCode() & 0xff;
+                if (code == SQLITE_BUSY || code == SQLITE_LOCKED) {
+                    return true;
+                }
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+}
@@ -1,9 +1,12 @@
 package com.anymind.promptrecorder.api;
 
+import com.anymind.promptrecorder.cluster.ClusterMembership;
 import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateRequest;
 import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateResponse;
 import com.anymind.promptrecorder.storage.SpaceRegistry;
 import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
+import com.anymind.promptrecorder.util.TokenGenerator;
+import java.time.Instant;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,15 +14,20 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class SpacesController {
     private final SpaceRegistry spaceRegistry;
+    private final ClusterMembership clusterMembership;
 
-    public SpacesController(SpaceRegistry spaceRegistry) {
+    public SpacesController(SpaceRegistry spaceRegistry, ClusterMembership clusterMembership) {
         this.spaceRegistry = spaceRegistry;
+        this.clusterMembership = clusterMembership;
     }
 
     @PostMapping("/spaces")
     public SpaceCreateResponse create(@RequestBody(required = false) SpaceCreateRequest request) {
         String name = request == null ? null : request.getName();
-        SpaceInfo info = spaceRegistry.createSpace(name);
+        SpaceInfo info = clusterMembership.enabled()
+            ? spaceRegistry.registerSpace(clusterMembership.newLocalSpaceId(), TokenGenerator.spaceSecret(),
+                name, Instant.now().toString())
+            : spaceRegistry.createSpace(name);
         return new SpaceCreateResponse(info.getSpaceId(), info.getSpaceSecret(), info.getCreatedAt());
     }
 }
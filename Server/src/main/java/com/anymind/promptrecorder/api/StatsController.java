@@ -0,0 +1,61 @@
+package com.anymind.promptrecorder.api;
+
+import com.anymind.promptrecorder.auth.SessionTokens;
+import com.anymind.promptrecorder.backup.SpaceExporter;
+import com.anymind.promptrecorder.cluster.ClusterMembership;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.HibernationManager;
+import com.anymind.promptrecorder.storage.MaintenanceScheduler;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import com.anymind.promptrecorder.storage.TombstoneCollector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class StatsController {
+    private final StoragePaths storagePaths;
+    private final ClusterMembership clusterMembership;
+    private final SpaceStore spaceStore;
+    private final DurabilityPolicy durabilityPolicy;
+    private final HibernationManager hibernationManager;
+    private final MaintenanceScheduler maintenanceScheduler;
+    private final TombstoneCollector tombstoneCollector;
+    private final SessionTokens sessionTokens;
+    private final SpaceExporter spaceExporter;
+
+    public StatsController(StoragePaths storagePaths, ClusterMembership clusterMembership, SpaceStore spaceStore,
+                           DurabilityPolicy durabilityPolicy, HibernationManager hibernationManager,
+                           MaintenanceScheduler maintenanceScheduler, TombstoneCollector tombstoneCollector,
+                           SessionTokens sessionTokens, SpaceExporter spaceExporter) {
+        this.storagePaths = storagePaths;
+        this.clusterMembership = clusterMembership;
+        this.spaceStore = spaceStore;
+        this.durabilityPolicy = durabilityPolicy;
+        this.hibernationManager = hibernationManager;
+        this.maintenanceScheduler = maintenanceScheduler;
+        this.tombstoneCollector = tombstoneCollector;
+        this.sessionTokens = sessionTokens;
+        this.spaceExporter = spaceExporter;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("storage_roots", storagePaths.stats());
+        out.put("cluster", clusterMembership.stats());
+        Map<String, Object> engine = new LinkedHashMap<>();
+        engine.put("name", spaceStore.engine());
+        engine.putAll(spaceStore.stats());
+        out.put("engine", engine);
+        out.put("durability", durabilityPolicy.stats());
+        out.put("hibernation", hibernationManager.stats());
+        out.put("maintenance", maintenanceScheduler.stats());
+        out.put("tombstones", tombstoneCollector.stats());
+        out.put("sessions", sessionTokens.stats());
+        out.put("backups", spaceExporter.stats());
+        return out;
+    }
+}
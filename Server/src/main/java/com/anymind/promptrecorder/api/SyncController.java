@@ -1,39 +1,247 @@
 package com.anymind.promptrecorder.api;
 
+import com.anymind.promptrecorder.auth.SessionTokens;
+import com.anymind.promptrecorder.backup.SpaceExporter;
+import com.anymind.promptrecorder.model.BackupModels.ExportRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeResponse;
+import com.anymind.promptrecorder.model.SyncModels.FetchRequest;
+import com.anymind.promptrecorder.model.SyncModels.FetchResponse;
+import com.anymind.promptrecorder.model.SyncModels.HistoryRequest;
+import com.anymind.promptrecorder.model.SyncModels.HistoryResponse;
 import com.anymind.promptrecorder.model.SyncModels.PullRequest;
 import com.anymind.promptrecorder.model.SyncModels.PullResponse;
 import com.anymind.promptrecorder.model.SyncModels.PushRequest;
 import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.RevisionEntry;
+import com.anymind.promptrecorder.model.SyncModels.SessionRequest;
+import com.anymind.promptrecorder.model.SyncModels.SessionResponse;
+import com.anymind.promptrecorder.model.SyncModels.SummaryRequest;
+import com.anymind.promptrecorder.model.SyncModels.SummaryResponse;
+import com.anymind.promptrecorder.model.SyncModels.TreeRequest;
+import com.anymind.promptrecorder.model.SyncModels.TreeResponse;
+import com.anymind.promptrecorder.storage.GroupSummaries;
+import com.anymind.promptrecorder.storage.MerkleTree;
 import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
 import com.anymind.promptrecorder.storage.SyncService;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class SyncController {
+    private static final Pattern TREE_PREFIX = Pattern.compile("[0-9a-f]{0," + MerkleTree.LEAF_DEPTH + "}");
+
+    private static final String BEARER = "Bearer ";
+
     private final SpaceRegistry spaceRegistry;
     private final SyncService syncService;
+    private final SessionTokens sessionTokens;
+    private final SpaceExporter spaceExporter;
 
-    public SyncController(SpaceRegistry spaceRegistry, SyncService syncService) {
+    public SyncController(SpaceRegistry spaceRegistry, SyncService syncService, SessionTokens sessionTokens,
+                          SpaceExporter spaceExporter) {
         this.spaceRegistry = spaceRegistry;
         this.syncService = syncService;
+        this.sessionTokens = sessionTokens;
+        this.spaceExporter = spaceExporter;
     }
 
-    @PostMapping("/sync/push")
-    public PushResponse push(@RequestBody PushRequest request) {
+    @PostMapping("/sync/session")
+    public SessionResponse session(@RequestBody SessionRequest request) {
         validate(request.getSpaceId(), request.getSpaceSecret());
+        String deviceId = request.getDeviceId();
+        if (deviceId == null || deviceId.trim().isEmpty() || deviceId.indexOf('\n') >= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "device_id required");
+        }
+        SpaceInfo space = spaceRegistry.findSpace(request.getSpaceId()).get();
+        String token = sessionTokens.issue(space, deviceId, Instant.now().getEpochSecond());
+        return new SessionResponse(token, sessionTokens.ttlSeconds());
+    }
+
+    @PostMapping("/sync/push")
+    public PushResponse push(@RequestBody PushRequest request,
+                             @RequestHeader(value = "Authorization", required = false) String authorization) {
+        request.setDeviceId(authorizeDevice(request.getSpaceId(), request.getSpaceSecret(), request.getDeviceId(),
+            authorization));
         return syncService.push(request);
     }
 
     @PostMapping("/sync/pull")
-    public PullResponse pull(@RequestBody PullRequest request) {
-        validate(request.getSpaceId(), request.getSpaceSecret());
+    public PullResponse pull(@RequestBody PullRequest request,
+                             @RequestHeader(value = "Authorization", required = false) String authorization) {
+        request.setDeviceId(authorizeDevice(request.getSpaceId(), request.getSpaceSecret(), request.getDeviceId(),
+            authorization));
+        validateProjection(request.getProjection());
         return syncService.pull(request);
     }
 
+    @PostMapping("/sync/exchange")
+    public ExchangeResponse exchange(@RequestBody ExchangeRequest request,
+                                     @RequestHeader(value = "Authorization", required = false) String authorization) {
+        request.setDeviceId(authorizeDevice(request.getSpaceId(), request.getSpaceSecret(), request.getDeviceId(),
+            authorization));
+        validateProjection(request.getProjection());
+        return syncService.exchange(request);
+    }
+
+    @PostMapping("/sync/fetch")
+    public FetchResponse fetch(@RequestBody FetchRequest request,
+                               @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        if (request.getIds() == null || request.getIds().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids required");
+        }
+        if (request.getIds().size() > SyncService.MAX_FETCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "at most " + SyncService.MAX_FETCH_IDS + " ids per fetch");
+        }
+        return syncService.fetch(request);
+    }
+
+    @PostMapping("/sync/tree")
+    public TreeResponse tree(@RequestBody TreeRequest request,
+                             @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        List<String> prefixes = request.getPrefixes();
+        if (prefixes == null || prefixes.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "prefixes required");
+        }
+        if (prefixes.size() > SyncService.MAX_TREE_PREFIXES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "at most " + SyncService.MAX_TREE_PREFIXES + " prefixes per request");
+        }
+        for (String prefix : prefixes) {
+            if (prefix == null || !TREE_PREFIX.matcher(prefix).matches()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "prefixes must be up to " + MerkleTree.LEAF_DEPTH + " lowercase hex digits");
+            }
+        }
+        return syncService.tree(request);
+    }
+
+    @PostMapping("/sync/summaries")
+    public SummaryResponse summaries(@RequestBody SummaryRequest request,
+                                     @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        if (request.getGrouping() != null && !GroupSummaries.GROUPINGS.contains(request.getGrouping())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "grouping must be day, week or month");
+        }
+        return syncService.summaries(request);
+    }
+
+    @PostMapping("/sync/history")
+    public HistoryResponse history(@RequestBody HistoryRequest request,
+                                   @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        validateHistory(request);
+        return syncService.history(request);
+    }
+
+    @PostMapping("/sync/history/at")
+    public RevisionEntry revisionAt(@RequestBody HistoryRequest request,
+                                    @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        validateHistory(request);
+        if (request.getRev() == null || request.getRev() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rev must be >= 0");
+        }
+        RevisionEntry revision = syncService.revisionAt(request);
+        if (revision == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no revision of the record at or before rev");
+        }
+        return revision;
+    }
+
+    @PostMapping("/sync/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestBody ExportRequest request,
+                                                        @RequestHeader(value = "Authorization", required = false) String authorization) {
+        authorize(request.getSpaceId(), request.getSpaceSecret(), null, authorization);
+        if (!spaceExporter.enabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "exports need the sqlite storage engine");
+        }
+        if (request.getSinceRev() != null && request.getSinceRev() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "since_rev must be >= 0");
+        }
+        String spaceId = request.getSpaceId();
+        if (!spaceExporter.hasData(spaceId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "space has no data to export yet");
+        }
+        Map<String, Long> since = request.getSinceRev() == null
+            ? Collections.<String, Long>emptyMap()
+            : Collections.singletonMap(spaceId, request.getSinceRev());
+        StreamingResponseBody body = out -> {
+            try {
+                spaceExporter.export(Collections.singletonList(spaceId), since, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Export failed", e);
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + spaceId + ".zip\"")
+            .body(body);
+    }
+
+    private void validateHistory(HistoryRequest request) {
+        if (request.getRecordId() == null || request.getRecordId().trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "record_id required");
+        }
+        if (!syncService.keepsHistory()) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "this storage engine keeps no history");
+        }
+    }
+
+    private void validateProjection(String projection) {
+        if (projection != null && !SyncService.PROJECTION_FULL.equals(projection)
+            && !SyncService.PROJECTION_METADATA.equals(projection)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "projection must be full or metadata");
+        }
+    }
+
+    // a token is bound to one device, so a body without device_id still acts as that device
+    private String authorizeDevice(String spaceId, String spaceSecret, String deviceId, String authorization) {
+        String tokenDevice = authorize(spaceId, spaceSecret, deviceId, authorization);
+        return deviceId == null ? tokenDevice : deviceId;
+    }
+
+    // the device a session token was issued to, or null when the request authenticated with the secret
+    private String authorize(String spaceId, String spaceSecret, String deviceId, String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            validate(spaceId, spaceSecret);
+            return null;
+        }
+        if (spaceId == null || spaceId.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "space_id required");
+        }
+        Optional<String> tokenDevice = sessionTokens.verify(authorization.substring(BEARER.length()).trim(), spaceId,
+            Instant.now().getEpochSecond());
+        if (!tokenDevice.isPresent()) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "invalid or expired session token");
+        }
+        if (deviceId != null && !deviceId.equals(tokenDevice.get())) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "session token issued to another device");
+        }
+        return tokenDevice.get();
+    }
+
     private void validate(String spaceId, String spaceSecret) {
         if (spaceId == null || spaceId.trim().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "space_id required");
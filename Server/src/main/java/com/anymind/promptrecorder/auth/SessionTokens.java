@@ -0,0 +1,182 @@
+package com.anymind.promptrecorder.auth;
+
+import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Stateless session tokens: "st1.<key id>.<payload>.<hmac>", where the payload carries the space, the
+// device, the expiry and a fingerprint of the secret the token was issued for. Verifying is pure CPU;
+// the registry is consulted at most once per revalidate interval per space, so a rotated secret or a
+// removed space stops its tokens within that interval instead of at expiry.
+@Component
+public class SessionTokens {
+    private static final String VERSION = "st1";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Map<String, byte[]> keys = new LinkedHashMap<>();
+    private final String signingKeyId;
+    private final SpaceRegistry spaceRegistry;
+    private final long ttlSeconds;
+    private final long revalidateNanos;
+    private final ConcurrentMap<String, Long> confirmed = new ConcurrentHashMap<>();
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private volatile long lastSweepNanos = System.nanoTime();
+
+    public SessionTokens(SpaceRegistry spaceRegistry,
+                         @Value("${auth.session.keys:}") String keysSpec,
+                         @Value("${auth.session.ttl-seconds:3600}") long ttlSeconds,
+                         @Value("${auth.session.revalidate-seconds:300}") long revalidateSeconds) {
+        this.spaceRegistry = spaceRegistry;
+        this.ttlSeconds = ttlSeconds;
+        this.revalidateNanos = TimeUnit.SECONDS.toNanos(revalidateSeconds);
+        for (String entry : keysSpec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            // only the id goes into the token, so only the id has to stay clear of the separator
+            if (eq <= 0 || eq == trimmed.length() - 1 || trimmed.substring(0, eq).indexOf('.') >= 0) {
+                throw new IllegalArgumentException("session key must be id=secret with no dots in the id: " + trimmed);
+            }
+            keys.put(trimmed.substring(0, eq).trim(), trimmed.substring(eq + 1).trim().getBytes(StandardCharsets.UTF_8));
+        }
+        if (keys.isEmpty()) {
+            // tokens then last until restart; configure shared keys when several nodes serve a space
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            keys.put("local", random);
+        }
+        this.signingKeyId = keys.keySet().iterator().next();
+    }
+
+    public long ttlSeconds() {
+        return ttlSeconds;
+    }
+
+    public String issue(SpaceInfo space, String deviceId, long nowEpochSeconds) {
+        String payload = space.getSpaceId() + "\n" + deviceId + "\n"
+            + (nowEpochSeconds + ttlSeconds) + "\n" + fingerprint(space.getSpaceSecret());
+        String body = VERSION + "." + signingKeyId + "." + encode(payload.getBytes(StandardCharsets.UTF_8));
+        long now = System.nanoTime();
+        sweep(now);
+        confirmed.put(space.getSpaceId() + "\n" + fingerprint(space.getSpaceSecret()), now);
+        issued.incrementAndGet();
+        return body + "." + encode(mac(keys.get(signingKeyId), body));
+    }
+
+    // the device id the token was issued to, or empty when the token is malformed, forged, expired,
+    // for another space, or its secret no longer matches
+    public Optional<String> verify(String token, String spaceId, long nowEpochSeconds) {
+        Optional<String> device = check(token, spaceId, nowEpochSeconds);
+        (device.isPresent() ? verified : rejected).incrementAndGet();
+        return device;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("signing_key", signingKeyId);
+        out.put("keys", keys.size());
+        out.put("issued", issued.get());
+        out.put("verified", verified.get());
+        out.put("rejected", rejected.get());
+        out.put("revalidations", revalidations.get());
+        out.put("confirmed_spaces", confirmed.size());
+        return out;
+    }
+
+    private Optional<String> check(String token, String spaceId, long nowEpochSeconds) {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return Optional.empty();
+        }
+        byte[] key = keys.get(parts[1]);
+        if (key == null) {
+            return Optional.empty();
+        }
+        byte[] expected = mac(key, parts[0] + "." + parts[1] + "." + parts[2]);
+        String[] fields;
+        try {
+            if (!MessageDigest.isEqual(expected, Base64.getUrlDecoder().decode(parts[3]))) {
+                return Optional.empty();
+            }
+            fields = new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8).split("\n", -1);
+            if (fields.length != 4 || !fields[0].equals(spaceId) || Long.parseLong(fields[2]) <= nowEpochSeconds) {
+                return Optional.empty();
+            }
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        return stillCurrent(spaceId, fields[3]) ? Optional.of(fields[1]) : Optional.<String>empty();
+    }
+
+    private boolean stillCurrent(String spaceId, String fingerprint) {
+        String cacheKey = spaceId + "\n" + fingerprint;
+        long now = System.nanoTime();
+        sweep(now);
+        Long checkedAt = confirmed.get(cacheKey);
+        if (checkedAt != null && now - checkedAt < revalidateNanos) {
+            return true;
+        }
+        revalidations.incrementAndGet();
+        Optional<SpaceInfo> space = spaceRegistry.findSpace(spaceId);
+        if (!space.isPresent() || !fingerprint(space.get().getSpaceSecret()).equals(fingerprint)) {
+            confirmed.remove(cacheKey);
+            return false;
+        }
+        confirmed.put(cacheKey, now);
+        return true;
+    }
+
+    // a confirmation past the interval would be rechecked anyway, so dropping it only bounds the map to
+    // the spaces seen within one interval; rotated secrets and idle spaces leave with it
+    private void sweep(long now) {
+        if (now - lastSweepNanos < revalidateNanos) {
+            return;
+        }
+        lastSweepNanos = now;
+        confirmed.values().removeIf(checkedAt -> now - checkedAt >= revalidateNanos);
+    }
+
+    private static String fingerprint(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return encode(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static byte[] mac(byte[] key, String body) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac.doFinal(body.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(ALGORITHM + " unavailable", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,74 @@
+package com.anymind.promptrecorder.backup;
+
+import com.anymind.promptrecorder.model.BackupModels.ExportedSpace;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Backs up spaces from a storage root while the server keeps running. Without space ids every
+// registered space is exported; --since=<earlier archive> exports only what changed after it.
+// --storage-roots must match the server's storage.roots, or spaces placed on other disks are missed.
+public class BackupTool {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: BackupTool <out.zip> [--storage-root=data] [--storage-roots=path[:weight],...] " +
+                "[--since=previous.zip] [--max-bytes-per-second=8388608] [spaceId ...]");
+            System.exit(2);
+        }
+        Path out = Paths.get(args[0]);
+        String root = "data";
+        String roots = "";
+        Path previous = null;
+        long maxBytesPerSecond = 8L * 1024 * 1024;
+        List<String> spaceIds = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--storage-root=")) {
+                root = args[i].substring("--storage-root=".length());
+            } else if (args[i].startsWith("--storage-roots=")) {
+                roots = args[i].substring("--storage-roots=".length());
+            } else if (args[i].startsWith("--since=")) {
+                previous = Paths.get(args[i].substring("--since=".length()));
+            } else if (args[i].startsWith("--max-bytes-per-second=")) {
+                maxBytesPerSecond = Long.parseLong(args[i].substring("--max-bytes-per-second=".length()));
+            } else {
+                spaceIds.add(args[i]);
+            }
+        }
+        StoragePaths paths = new StoragePaths(root, roots, 0);
+        if (spaceIds.isEmpty()) {
+            spaceIds = new SpaceRegistry(paths).listSpaceIds();
+        }
+        Map<String, Long> since = previous == null ? Collections.<String, Long>emptyMap() : SpaceExporter.sinceRevs(previous);
+
+        SpaceDatabase database = new SpaceDatabase(paths);
+        Path partial = out.resolveSibling(out.getFileName() + ".partial");
+        long start = System.nanoTime();
+        List<ExportedSpace> exported;
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(partial))) {
+            exported = new SpaceExporter(database, maxBytesPerSecond).export(spaceIds, since, stream);
+        } catch (Exception e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        } finally {
+            database.close();
+        }
+        // a backup that stopped halfway never takes the place of a complete one
+        Files.move(partial, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (ExportedSpace space : exported) {
+            System.err.printf("%s: %d records, revs %d..%d%s%n", space.getSpaceId(), space.getRecords(),
+                space.getFromRev(), space.getToRev(), space.isFull() ? " (full)" : "");
+        }
+        System.err.printf("%d spaces, %d bytes in %.1fs%n", exported.size(), Files.size(out),
+            (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+}
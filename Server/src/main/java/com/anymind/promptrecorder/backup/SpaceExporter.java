@@ -0,0 +1,207 @@
+package com.anymind.promptrecorder.backup;
+
+import com.anymind.promptrecorder.model.BackupModels.BackupManifest;
+import com.anymind.promptrecorder.model.BackupModels.ExportedSpace;
+import com.anymind.promptrecorder.model.SyncModels.PullChange;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Streams spaces into a zip archive: one JSON-lines entry per space, then a manifest. Each space is
+// read on its own read-only connection inside one WAL snapshot, so the copy is consistent without
+// touching a DB file mid-write, holding the writer or taking a slot from the reader pool. Only one row
+// is held at a time, and output is paced to max-bytes-per-second so a backup does not crowd out sync.
+@Component
+public class SpaceExporter {
+    public static final String MANIFEST = "manifest.json";
+    private static final int FORMAT = 1;
+
+    private final SpaceDatabase spaceDatabase;
+    private final boolean enabled;
+    private final long maxBytesPerSecond;
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong throttledMillis = new AtomicLong();
+
+    public SpaceExporter(SpaceDatabase spaceDatabase, long maxBytesPerSecond) {
+        this(spaceDatabase, "sqlite", maxBytesPerSecond);
+    }
+
+    @Autowired
+    public SpaceExporter(SpaceDatabase spaceDatabase,
+                         @Value("${storage.engine:sqlite}") String engine,
+                         @Value("${backup.max-bytes-per-second:8388608}") long maxBytesPerSecond) {
+        this.spaceDatabase = spaceDatabase;
+        this.enabled = "sqlite".equals(engine);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public boolean hasData(String spaceId) {
+        return spaceDatabase.hasDatabase(spaceId);
+    }
+
+    // sinceRevs holds the to_rev each space reached in the backup this one builds on; spaces without
+    // an entry are exported in full
+    public List<ExportedSpace> export(List<String> spaceIds, Map<String, Long> sinceRevs, OutputStream out)
+        throws Exception {
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        Pacer pacer = new Pacer(maxBytesPerSecond);
+        List<ExportedSpace> exported = new ArrayList<>();
+        try {
+            for (String spaceId : spaceIds) {
+                zip.putNextEntry(new ZipEntry("spaces/" + spaceId + ".jsonl"));
+                Long since = sinceRevs.get(spaceId);
+                exported.add(exportSpace(spaceId, since == null ? 0 : since, zip, pacer));
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(JsonUtils.write(new BackupManifest(FORMAT, Instant.now().toString(), exported))
+                .getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+        } finally {
+            exports.incrementAndGet();
+            bytes.addAndGet(pacer.bytes);
+            throttledMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(pacer.sleptNanos));
+        }
+        return exported;
+    }
+
+    // the to_rev per space of an earlier archive, to pass as sinceRevs for an incremental backup
+    public static Map<String, Long> sinceRevs(Path archive) throws IOException {
+        Map<String, Long> since = new HashMap<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry entry = zip.getEntry(MANIFEST);
+            if (entry == null) {
+                throw new IOException(archive + " has no " + MANIFEST);
+            }
+            BackupManifest manifest;
+            try (InputStream in = zip.getInputStream(entry)) {
+                manifest = JsonUtils.read(new String(readAll(in), StandardCharsets.UTF_8), BackupManifest.class);
+            }
+            for (ExportedSpace space : manifest.getSpaces()) {
+                since.put(space.getSpaceId(), space.getToRev());
+            }
+        }
+        return since;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("exports", exports.get());
+        out.put("bytes", bytes.get());
+        out.put("throttled_ms", throttledMillis.get());
+        return out;
+    }
+
+    private ExportedSpace exportSpace(String spaceId, long sinceRev, OutputStream out, Pacer pacer) throws Exception {
+        try (Connection conn = spaceDatabase.openSnapshot(spaceId)) {
+            if (conn == null) {
+                // an empty entry would pass for a complete backup of an empty space
+                throw new IllegalStateException("no database for space " + spaceId + " under any storage root");
+            }
+            long head;
+            long purgedThrough;
+            try (Statement stmt = conn.createStatement()) {
+                head = single(stmt, "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'changes'), 0)");
+                purgedThrough = single(stmt, "SELECT IFNULL((SELECT value FROM space_meta WHERE key = 'purged_through'), 0)");
+            }
+            // tombstones up to the purge horizon are gone, so a base older than it can only be replaced
+            boolean full = sinceRev <= 0 || sinceRev < purgedThrough;
+            long fromRev = full ? 0 : sinceRev;
+            long records = 0;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT id, content, system_tags_json, user_tags_json, created_at, updated_at_client, deleted, " +
+                    "server_rev, server_updated_at FROM records WHERE server_rev > ?" + (full ? " AND deleted = 0" : ""))) {
+                stmt.setLong(1, fromRev);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        byte[] line = (JsonUtils.write(new PullChange(
+                            rs.getString("id"),
+                            rs.getString("content"),
+                            JsonUtils.toList(rs.getString("system_tags_json")),
+                            JsonUtils.toList(rs.getString("user_tags_json")),
+                            rs.getString("created_at"),
+                            rs.getString("updated_at_client"),
+                            rs.getInt("deleted") != 0,
+                            rs.getLong("server_rev"),
+                            rs.getString("server_updated_at")
+                        )) + "\n").getBytes(StandardCharsets.UTF_8);
+                        out.write(line);
+                        pacer.spend(line.length);
+                        records++;
+                    }
+                }
+            }
+            return new ExportedSpace(spaceId, fromRev, head, full, records);
+        }
+    }
+
+    private static long single(Statement stmt, String sql) throws Exception {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static class Pacer {
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+        private long sleptNanos;
+
+        private Pacer(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private void spend(int count) throws InterruptedException {
+            bytes += count;
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long ahead = start + (long) (bytes * 1e9 / bytesPerSecond) - System.nanoTime();
+            if (ahead > TimeUnit.MILLISECONDS.toNanos(5)) {
+                TimeUnit.NANOSECONDS.sleep(ahead);
+                sleptNanos += ahead;
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.anymind.promptrecorder.bench;
+
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+public class DatasetGenerator {
+    private static final long EPOCH_START = Instant.parse("2025-01-01T00:00:00Z").getEpochSecond();
+    private static final String[] SYSTEM_TAGS = {"#P1", "#P2", "#temp", "#longterm"};
+
+    private final DatasetSpec spec;
+    private final SpaceRegistry spaceRegistry;
+    private final SpaceDatabase spaceDatabase;
+
+    public DatasetGenerator(DatasetSpec spec, StoragePaths paths) {
+        this.spec = spec;
+        this.spaceRegistry = new SpaceRegistry(paths);
+        this.spaceDatabase = new SpaceDatabase(paths);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: DatasetGenerator <dataset.json> [--storage-root=data]");
+            System.exit(2);
+        }
+        DatasetSpec spec = DatasetSpec.read(new File(args[0]));
+        String root = "data";
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--storage-root=")) {
+                root = args[i].substring("--storage-root=".length());
+            }
+        }
+        DatasetGenerator generator = new DatasetGenerator(spec, new StoragePaths(root));
+        for (SpaceInfo info : generator.generate()) {
+            System.out.println(info.getSpaceId() + " " + info.getSpaceSecret());
+        }
+    }
+
+    public List<SpaceInfo> generate() throws Exception {
+        Random seeds = new Random(spec.getSeed());
+        List<SpaceInfo> spaces = new ArrayList<>();
+        for (int s = 0; s < spec.getSpaces(); s++) {
+            long spaceSeed = seeds.nextLong();
+            long start = System.nanoTime();
+            SpaceInfo info = generateSpace(s, spaceSeed);
+            long rows = writeSpace(info.getSpaceId(), spaceSeed);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.err.printf("%s: %d rows in %.1fs (%.0f rows/s)%n",
+                info.getSpaceId(), rows, seconds, rows / Math.max(seconds, 1e-9));
+            spaces.add(info);
+        }
+        return spaces;
+    }
+
+    private SpaceInfo generateSpace(int index, long spaceSeed) {
+        Random random = new Random(spaceSeed);
+        String spaceId = "spc_" + token(random, 16);
+        String spaceSecret = "sec_" + token(random, 24);
+        if (spaceRegistry.findSpace(spaceId).isPresent()) {
+            throw new IllegalStateException("Space " + spaceId + " already exists; use a fresh storage root or seed");
+        }
+        String createdAt = Instant.ofEpochSecond(EPOCH_START).toString();
+        return spaceRegistry.registerSpace(spaceId, spaceSecret, spec.getName() + "-" + index, createdAt);
+    }
+
+    private long writeSpace(String spaceId, long spaceSeed) throws Exception {
+        Random random = new Random(spaceSeed ^ 0x5DEECE66DL);
+        int records = spec.getRecordsPerSpace();
+        long edits = Math.round(records * spec.getEditsPerRecord());
+        long totalEvents = records + edits + Math.round(records * spec.getTombstoneRatio());
+        double secondsPerEvent = Math.max(1.0, spec.getHistoryDays() * 86400.0 / Math.max(1, totalEvents));
+
+        long[] createdAt = new long[records];
+        long[] updatedAt = new long[records];
+        long[] lastRev = new long[records];
+        boolean[] deleted = new boolean[records];
+        byte[] lastDevice = new byte[records];
+        ZipfSampler editSampler = new ZipfSampler(Math.max(1, records), spec.getEditSkew());
+        ZipfSampler tagSampler = new ZipfSampler(Math.max(1, spec.getTagVocabulary()), spec.getTagSkew());
+        int devices = Math.max(1, Math.min(spec.getDeviceCount(), 127));
+
+        long rows = 0;
+        try (Connection conn = spaceDatabase.open(spaceId)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA synchronous=OFF;");
+                stmt.execute("PRAGMA cache_size=-65536;");
+            }
+            conn.setAutoCommit(false);
+            String changeSql = "INSERT INTO changes (rev, record_id, deleted, server_updated_at) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement changeStmt = conn.prepareStatement(changeSql)) {
+                long rev = 0;
+                int created = 0;
+                long remainingEdits = edits;
+                while (created < records || remainingEdits > 0) {
+                    long remainingCreates = records - created;
+                    boolean create = created == 0 || remainingEdits == 0
+                        || random.nextDouble() * (remainingCreates + remainingEdits) < remainingCreates;
+                    int index;
+                    if (create) {
+                        index = created++;
+                    } else {
+                        index = editSampler.nextBelow(random, created);
+                        remainingEdits--;
+                    }
+                    rev++;
+                    long time = EPOCH_START + (long) (rev * secondsPerEvent);
+                    if (create) {
+                        createdAt[index] = time;
+                    }
+                    updatedAt[index] = time;
+                    lastRev[index] = rev;
+                    lastDevice[index] = (byte) random.nextInt(devices);
+                    addChange(changeStmt, rev, recordId(spaceSeed, index), false, time);
+                    flushIfFull(changeStmt, ++rows);
+                }
+                for (int index = 0; index < records; index++) {
+                    if (random.nextDouble() >= spec.getTombstoneRatio()) {
+                        continue;
+                    }
+                    rev++;
+                    long time = EPOCH_START + (long) (rev * secondsPerEvent);
+                    updatedAt[index] = time;
+                    lastRev[index] = rev;
+                    deleted[index] = true;
+                    addChange(changeStmt, rev, recordId(spaceSeed, index), true, time);
+                    flushIfFull(changeStmt, ++rows);
+                }
+                changeStmt.executeBatch();
+            }
+
+            String recordSql = "INSERT INTO records " +
+                "(id, content, system_tags_json, user_tags_json, created_at, updated_at_client, deleted, server_rev, server_updated_at, last_device_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement recordStmt = conn.prepareStatement(recordSql)) {
+                for (int index = 0; index < records; index++) {
+                    List<String> userTags = userTags(random, tagSampler);
+                    List<String> systemTags = random.nextInt(5) == 0
+                        ? Collections.singletonList(SYSTEM_TAGS[random.nextInt(SYSTEM_TAGS.length)])
+                        : Collections.<String>emptyList();
+                    int length = SyntheticText.logNormalLength(random, spec.getContentMedianChars(),
+                        spec.getContentSigma(), spec.getContentMaxChars());
+                    String[] tags = new String[userTags.size() + systemTags.size()];
+                    int t = 0;
+                    for (String tag : systemTags) {
+                        tags[t++] = tag;
+                    }
+                    for (String tag : userTags) {
+                        tags[t++] = tag;
+                    }
+                    String updated = Instant.ofEpochSecond(updatedAt[index]).toString();
+                    recordStmt.setString(1, recordId(spaceSeed, index));
+                    recordStmt.setString(2, SyntheticText.prompt(random, length, tags));
+                    recordStmt.setString(3, JsonUtils.toJson(systemTags));
+                    recordStmt.setString(4, JsonUtils.toJson(userTags));
+                    recordStmt.setString(5, Instant.ofEpochSecond(createdAt[index]).toString());
+                    recordStmt.setString(6, updated);
+                    recordStmt.setInt(7, deleted[index] ? 1 : 0);
+                    recordStmt.setLong(8, lastRev[index]);
+                    recordStmt.setString(9, updated);
+                    recordStmt.setString(10, "device-" + lastDevice[index]);
+                    recordStmt.addBatch();
+                    flushIfFull(recordStmt, ++rows);
+                }
+                recordStmt.executeBatch();
+            }
+            conn.commit();
+            spaceDatabase.rebuildDerived(conn);
+        }
+        return rows;
+    }
+
+    private void flushIfFull(PreparedStatement stmt, long written) throws Exception {
+        if (written % Math.max(1, spec.getBatchSize()) == 0) {
+            stmt.executeBatch();
+        }
+    }
+
+    private static void addChange(PreparedStatement stmt, long rev, String recordId, boolean deleted, long time)
+        throws Exception {
+        stmt.setLong(1, rev);
+        stmt.setString(2, recordId);
+        stmt.setInt(3, deleted ? 1 : 0);
+        stmt.setString(4, Instant.ofEpochSecond(time).toString());
+        stmt.addBatch();
+    }
+
+    private List<String> userTags(Random random, ZipfSampler tagSampler) {
+        int count = random.nextInt(Math.max(1, spec.getMaxTagsPerRecord()) + 1);
+        Set<String> tags = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            tags.add("#tag" + tagSampler.next(random));
+        }
+        return new ArrayList<>(tags);
+    }
+
+    static String recordId(long spaceSeed, int index) {
+        long high = mix(spaceSeed + index * 0x9E3779B97F4A7C15L);
+        long low = mix(high ^ index);
+        return new UUID(high, low).toString();
+    }
+
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String token(Random random, int bytes) {
+        byte[] buffer = new byte[bytes];
+        random.nextBytes(buffer);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer);
+    }
+}
@@ -0,0 +1,80 @@
+package com.anymind.promptrecorder.bench;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+
+public class DatasetSpec {
+    @JsonProperty("name")
+    private String name = "dataset";
+    @JsonProperty("seed")
+    private long seed = 42L;
+    @JsonProperty("spaces")
+    private int spaces = 1;
+    @JsonProperty("records_per_space")
+    private int recordsPerSpace = 100000;
+    @JsonProperty("edits_per_record")
+    private double editsPerRecord = 2.0;
+    @JsonProperty("edit_skew")
+    private double editSkew = 1.1;
+    @JsonProperty("tombstone_ratio")
+    private double tombstoneRatio = 0.05;
+    @JsonProperty("tag_vocabulary")
+    private int tagVocabulary = 500;
+    @JsonProperty("tag_skew")
+    private double tagSkew = 1.0;
+    @JsonProperty("max_tags_per_record")
+    private int maxTagsPerRecord = 4;
+    @JsonProperty("content_median_chars")
+    private int contentMedianChars = 400;
+    @JsonProperty("content_sigma")
+    private double contentSigma = 1.0;
+    @JsonProperty("content_max_chars")
+    private int contentMaxChars = 20000;
+    @JsonProperty("history_days")
+    private int historyDays = 365;
+    @JsonProperty("device_count")
+    private int deviceCount = 3;
+    @JsonProperty("batch_size")
+    private int batchSize = 5000;
+
+    public DatasetSpec() {}
+
+    public static DatasetSpec read(File file) throws IOException {
+        return new ObjectMapper().readValue(file, DatasetSpec.class);
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+    public int getSpaces() { return spaces; }
+    public void setSpaces(int spaces) { this.spaces = spaces; }
+    public int getRecordsPerSpace() { return recordsPerSpace; }
+    public void setRecordsPerSpace(int recordsPerSpace) { this.recordsPerSpace = recordsPerSpace; }
+    public double getEditsPerRecord() { return editsPerRecord; }
+    public void setEditsPerRecord(double editsPerRecord) { this.editsPerRecord = editsPerRecord; }
+    public double getEditSkew() { return editSkew; }
+    public void setEditSkew(double editSkew) { this.editSkew = editSkew; }
+    public double getTombstoneRatio() { return tombstoneRatio; }
+    public void setTombstoneRatio(double tombstoneRatio) { this.tombstoneRatio = tombstoneRatio; }
+    public int getTagVocabulary() { return tagVocabulary; }
+    public void setTagVocabulary(int tagVocabulary) { this.tagVocabulary = tagVocabulary; }
+    public double getTagSkew() { return tagSkew; }
+    public void setTagSkew(double tagSkew) { this.tagSkew = tagSkew; }
+    public int getMaxTagsPerRecord() { return maxTagsPerRecord; }
+    public void setMaxTagsPerRecord(int maxTagsPerRecord) { this.maxTagsPerRecord = maxTagsPerRecord; }
+    public int getContentMedianChars() { return contentMedianChars; }
+    public void setContentMedianChars(int contentMedianChars) { this.contentMedianChars = contentMedianChars; }
+    public double getContentSigma() { return contentSigma; }
+    public void setContentSigma(double contentSigma) { this.contentSigma = contentSigma; }
+    public int getContentMaxChars() { return contentMaxChars; }
+    public void setContentMaxChars(int contentMaxChars) { this.contentMaxChars = contentMaxChars; }
+    public int getHistoryDays() { return historyDays; }
+    public void setHistoryDays(int historyDays) { this.historyDays = historyDays; }
+    public int getDeviceCount() { return deviceCount; }
+    public void setDeviceCount(int deviceCount) { this.deviceCount = deviceCount; }
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+}
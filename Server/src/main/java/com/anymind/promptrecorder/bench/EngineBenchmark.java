@@ -0,0 +1,118 @@
+package com.anymind.promptrecorder.bench;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushRequest;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.InMemorySpaceStore;
+import com.anymind.promptrecorder.storage.LogSpaceStore;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import com.anymind.promptrecorder.storage.SyncService;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class EngineBenchmark {
+    private final int spaces;
+    private final int pushes;
+    private final int batch;
+    private final int pullLimit;
+
+    public EngineBenchmark(int spaces, int pushes, int batch, int pullLimit) {
+        this.spaces = spaces;
+        this.pushes = pushes;
+        this.batch = batch;
+        this.pullLimit = pullLimit;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> engines = args.length > 0 ? Arrays.asList(args[0].split(",")) : Arrays.asList("sqlite", "log", "memory");
+        int spaces = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int pushes = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        EngineBenchmark benchmark = new EngineBenchmark(spaces, pushes, batch, 200);
+        System.out.printf("%-16s %12s %12s %12s %12s%n", "engine", "push ops/s", "push p99 ms", "pull ops/s", "pull p99 ms");
+        for (String engine : engines) {
+            Path dir = Files.createTempDirectory("engine-bench");
+            LoadReport report = benchmark.run(createStore(engine.trim(), dir));
+            LoadReport.OpStats push = report.op("push");
+            LoadReport.OpStats pull = report.op("pull");
+            System.out.printf("%-16s %12.0f %12.3f %12.0f %12.3f%n", engine,
+                push.count() / push.totalSeconds(), LoadReport.percentile(push.sortedLatencies(), 0.99) / 1000.0,
+                pull.count() / pull.totalSeconds(), LoadReport.percentile(pull.sortedLatencies(), 0.99) / 1000.0);
+        }
+    }
+
+    public static SpaceStore createStore(String spec, Path dir) {
+        int colon = spec.indexOf(':');
+        String engine = colon < 0 ? spec : spec.substring(0, colon);
+        DurabilityPolicy durability = new DurabilityPolicy(colon < 0 ? "strict" : spec.substring(colon + 1), "", 100, 1000);
+        switch (engine) {
+            case "sqlite":
+                return new SqliteSpaceStore(new SpaceDatabase(new StoragePaths(dir.toString())), durability);
+            case "memory":
+                return new InMemorySpaceStore();
+            case "log":
+                return new LogSpaceStore(new StoragePaths(dir.toString()), durability, 64 * 1024 * 1024, 0.5, 0);
+            default:
+                throw new IllegalArgumentException("unknown engine: " + engine);
+        }
+    }
+
+    public LoadReport run(SpaceStore store) {
+        SyncService syncService = new SyncService(store);
+        LoadReport report = new LoadReport(store.engine());
+        Random random = new Random(42);
+        String now = Instant.now().toString();
+
+        for (int i = 0; i < pushes; i++) {
+            for (int s = 0; s < spaces; s++) {
+                List<ChangeRequest> changes = new ArrayList<>(batch);
+                for (int c = 0; c < batch; c++) {
+                    ChangeRequest change = new ChangeRequest();
+                    change.setId("rec-" + random.nextInt(pushes * batch));
+                    change.setContent(SyntheticText.prompt(random, SyntheticText.logNormalLength(random, 400, 1.0, 20000)));
+                    change.setSystemTags(Collections.<String>emptyList());
+                    change.setUserTags(Collections.singletonList("#t" + random.nextInt(20)));
+                    change.setCreatedAt(now);
+                    change.setUpdatedAt(now);
+                    changes.add(change);
+                }
+                PushRequest request = new PushRequest();
+                request.setSpaceId("spc_bench_" + s);
+                request.setDeviceId("bench");
+                request.setChanges(changes);
+                long start = System.nanoTime();
+                syncService.push(request);
+                report.op("push").success((System.nanoTime() - start) / 1000);
+            }
+        }
+
+        for (int s = 0; s < spaces; s++) {
+            long cursor = 0;
+            while (true) {
+                PullRequest request = new PullRequest();
+                request.setSpaceId("spc_bench_" + s);
+                request.setSinceRev(cursor);
+                request.setLimit(pullLimit);
+                long start = System.nanoTime();
+                PullResponse response = syncService.pull(request);
+                report.op("pull").success((System.nanoTime() - start) / 1000);
+                if (response.getChanges().isEmpty()) {
+                    break;
+                }
+                cursor += response.getChanges().size();
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,305 @@
+package com.anymind.promptrecorder.bench;
+
+import com.anymind.promptrecorder.PromptRecorderServerApplication;
+import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateRequest;
+import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateResponse;
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullChange;
+import com.anymind.promptrecorder.model.SyncModels.PullRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+public class LoadGenerator {
+    private final LoadScenario scenario;
+    private final RestTemplate restTemplate;
+
+    public LoadGenerator(LoadScenario scenario) {
+        this.scenario = scenario;
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(5000);
+        factory.setReadTimeout(30000);
+        this.restTemplate = new RestTemplate(factory);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: LoadGenerator <scenario.json> [--base-url=http://host:port] [--report=out.json]");
+            System.exit(2);
+        }
+        LoadScenario scenario = LoadScenario.read(new File(args[0]));
+        String reportPath = null;
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            if (arg.startsWith("--base-url=")) {
+                scenario.setBaseUrl(arg.substring("--base-url=".length()));
+            } else if (arg.startsWith("--report=")) {
+                reportPath = arg.substring("--report=".length());
+            }
+        }
+
+        ConfigurableApplicationContext server = null;
+        String baseUrl = scenario.getBaseUrl();
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            String root = scenario.getStorageRoot() != null
+                ? scenario.getStorageRoot()
+                : Files.createTempDirectory("loadgen").toString();
+            server = SpringApplication.run(PromptRecorderServerApplication.class,
+                "--server.port=0", "--storage.root=" + root);
+            int port = ((WebServerApplicationContext) server).getWebServer().getPort();
+            baseUrl = "http://localhost:" + port;
+        }
+
+        try {
+            LoadReport report = new LoadGenerator(scenario).run(baseUrl);
+            System.out.print(report.format());
+            if (reportPath != null) {
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(new File(reportPath), report.toMap());
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    public LoadReport run(String baseUrl) throws InterruptedException {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        LoadReport report = new LoadReport(scenario.getName());
+        Random seedRandom = new Random(scenario.getSeed());
+
+        List<Device> devices = new ArrayList<>();
+        for (int s = 0; s < scenario.getSpaces(); s++) {
+            long start = System.nanoTime();
+            SpaceCreateResponse space;
+            try {
+                space = restTemplate.postForObject(base + "/spaces",
+                    new SpaceCreateRequest("loadgen-" + s), SpaceCreateResponse.class);
+            } catch (RuntimeException e) {
+                report.op("create_space").failure(classify(e));
+                continue;
+            }
+            report.op("create_space").success((System.nanoTime() - start) / 1000);
+            for (int d = 0; d < scenario.getDevicesPerSpace(); d++) {
+                devices.add(new Device(space.getSpaceId(), space.getSpaceSecret(),
+                    "loadgen-" + s + "-" + d, new Random(seedRandom.nextLong())));
+            }
+        }
+
+        long now = System.nanoTime();
+        long measureFrom = now + secondsToNanos(scenario.getWarmupSeconds());
+        long deadline = measureFrom + secondsToNanos(scenario.getDurationSeconds());
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(Math.max(1, scenario.getThreads()));
+        Run run = new Run(base, report, executor, measureFrom, deadline);
+        for (Device device : devices) {
+            run.schedulePush(device);
+            run.schedulePull(device);
+        }
+
+        long waitMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        Thread.sleep(waitMillis);
+        executor.shutdown();
+        executor.awaitTermination(60, TimeUnit.SECONDS);
+        report.setMeasuredNanos(Math.min(System.nanoTime(), deadline) - measureFrom);
+        return report;
+    }
+
+    private static long secondsToNanos(double seconds) {
+        return (long) (seconds * 1_000_000_000L);
+    }
+
+    private static long exponentialDelay(Random random, long meanMillis) {
+        if (meanMillis <= 0) {
+            return 0;
+        }
+        return (long) (-Math.log(1.0 - random.nextDouble()) * meanMillis);
+    }
+
+    static String classify(Exception e) {
+        if (e instanceof HttpStatusCodeException) {
+            HttpStatusCodeException http = (HttpStatusCodeException) e;
+            if (http.getRawStatusCode() == 503 && http.getResponseBodyAsString().contains("database_busy")) {
+                return "sqlite_busy";
+            }
+            return "http_" + http.getRawStatusCode();
+        }
+        if (e instanceof ResourceAccessException) {
+            return "io";
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private class Run {
+        private final String base;
+        private final LoadReport report;
+        private final ScheduledExecutorService executor;
+        private final long measureFrom;
+        private final long deadline;
+
+        Run(String base, LoadReport report, ScheduledExecutorService executor, long measureFrom, long deadline) {
+            this.base = base;
+            this.report = report;
+            this.executor = executor;
+            this.measureFrom = measureFrom;
+            this.deadline = deadline;
+        }
+
+        void schedulePush(Device device) {
+            long delay = exponentialDelay(device.random, scenario.getPushIntervalMs());
+            schedule(delay, () -> {
+                timed("push", () -> push(device));
+                schedulePush(device);
+            });
+        }
+
+        void schedulePull(Device device) {
+            long delay = exponentialDelay(device.random, scenario.getPullIntervalMs());
+            schedule(delay, () -> {
+                timed("pull", () -> pull(device));
+                schedulePull(device);
+            });
+        }
+
+        private void schedule(long delayMillis, Runnable task) {
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) >= deadline || executor.isShutdown()) {
+                return;
+            }
+            try {
+                executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // run is over
+            }
+        }
+
+        private void timed(String op, Runnable action) {
+            long start = System.nanoTime();
+            boolean measured = start >= measureFrom && start < deadline;
+            try {
+                action.run();
+                if (measured) {
+                    report.op(op).success((System.nanoTime() - start) / 1000);
+                }
+            } catch (RuntimeException e) {
+                if (measured) {
+                    report.op(op).failure(classify(e));
+                }
+            }
+        }
+
+        private void push(Device device) {
+            PushRequest request;
+            synchronized (device) {
+                request = device.nextPush();
+            }
+            PushResponse response = restTemplate.postForObject(base + "/sync/push", request, PushResponse.class);
+            if (response != null && response.getResults() != null) {
+                synchronized (device) {
+                    for (PushResult result : response.getResults()) {
+                        device.knownRevs.put(result.getId(), result.getServerRev());
+                    }
+                }
+            }
+        }
+
+        private void pull(Device device) {
+            PullRequest request = new PullRequest();
+            request.setSpaceId(device.spaceId);
+            request.setSpaceSecret(device.spaceSecret);
+            request.setDeviceId(device.deviceId);
+            synchronized (device) {
+                request.setSinceRev(device.cursor);
+            }
+            request.setLimit(scenario.getPullLimit());
+            PullResponse response = restTemplate.postForObject(base + "/sync/pull", request, PullResponse.class);
+            if (response == null) {
+                return;
+            }
+            synchronized (device) {
+                if (response.getChanges() != null) {
+                    for (PullChange change : response.getChanges()) {
+                        device.knownRevs.put(change.getId(), change.getServerRev());
+                    }
+                }
+                // a full page stops short of the head; the rest comes on the next pull. After a reset
+                // next_since_rev is 0 and the device resyncs from scratch.
+                device.cursor = response.getNextSinceRev();
+            }
+        }
+    }
+
+    private class Device {
+        private final String spaceId;
+        private final String spaceSecret;
+        private final String deviceId;
+        private final Random random;
+        private final Map<String, Long> knownRevs = new HashMap<>();
+        private final List<String> knownIds = new ArrayList<>();
+        private long cursor;
+
+        Device(String spaceId, String spaceSecret, String deviceId, Random random) {
+            this.spaceId = spaceId;
+            this.spaceSecret = spaceSecret;
+            this.deviceId = deviceId;
+            this.random = random;
+        }
+
+        PushRequest nextPush() {
+            int count = 1 + random.nextInt(Math.max(1, scenario.getChangesPerPush()));
+            String now = Instant.now().toString();
+            List<ChangeRequest> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ChangeRequest change = new ChangeRequest();
+                boolean edit = !knownIds.isEmpty() && random.nextDouble() < scenario.getEditRatio();
+                String id = edit
+                    ? knownIds.get(random.nextInt(knownIds.size()))
+                    : new UUID(random.nextLong(), random.nextLong()).toString();
+                if (!edit) {
+                    knownIds.add(id);
+                }
+                String tag = "#t" + random.nextInt(Math.max(1, scenario.getTagPool()));
+                int length = SyntheticText.logNormalLength(random, scenario.getPromptMedianChars(),
+                    scenario.getPromptSigma(), scenario.getPromptMaxChars());
+                change.setId(id);
+                change.setContent(SyntheticText.prompt(random, length, tag));
+                change.setSystemTags(Collections.<String>emptyList());
+                change.setUserTags(Collections.singletonList(tag));
+                change.setCreatedAt(now);
+                change.setUpdatedAt(now);
+                change.setDeleted(edit && random.nextDouble() < scenario.getDeleteRatio());
+                change.setBaseRev(knownRevs.get(id));
+                changes.add(change);
+            }
+            PushRequest request = new PushRequest();
+            request.setSpaceId(spaceId);
+            request.setSpaceSecret(spaceSecret);
+            request.setDeviceId(deviceId);
+            request.setChanges(changes);
+            return request;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.anymind.promptrecorder.bench;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadReport {
+    private final String scenario;
+    private final Map<String, OpStats> ops = new ConcurrentHashMap<>();
+    private volatile long measuredNanos;
+
+    public LoadReport(String scenario) {
+        this.scenario = scenario;
+    }
+
+    public OpStats op(String name) {
+        return ops.computeIfAbsent(name, key -> new OpStats());
+    }
+
+    public void setMeasuredNanos(long measuredNanos) {
+        this.measuredNanos = measuredNanos;
+    }
+
+    public double measuredSeconds() {
+        return measuredNanos / 1_000_000_000.0;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("scenario", scenario);
+        out.put("measured_seconds", measuredSeconds());
+        Map<String, Object> byOp = new TreeMap<>();
+        for (Map.Entry<String, OpStats> entry : ops.entrySet()) {
+            byOp.put(entry.getKey(), entry.getValue().toMap(measuredSeconds()));
+        }
+        out.put("ops", byOp);
+        return out;
+    }
+
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("scenario %s, measured %.1fs%n", scenario, measuredSeconds()));
+        builder.append(String.format("%-14s %9s %9s %9s %9s %9s %9s  %s%n",
+            "op", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "errors"));
+        for (String name : new TreeMap<>(ops).keySet()) {
+            OpStats stats = ops.get(name);
+            long[] sorted = stats.sortedLatencies();
+            builder.append(String.format("%-14s %9d %9.1f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                name,
+                stats.count(),
+                measuredSeconds() > 0 ? stats.count() / measuredSeconds() : 0.0,
+                percentile(sorted, 0.50) / 1000.0,
+                percentile(sorted, 0.95) / 1000.0,
+                percentile(sorted, 0.99) / 1000.0,
+                sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0,
+                stats.errors()));
+        }
+        return builder.toString();
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public static class OpStats {
+        private final AtomicLong count = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+        private long[] latencies = new long[1024];
+        private int size;
+
+        public synchronized void success(long micros) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = micros;
+            count.incrementAndGet();
+        }
+
+        public void failure(String category) {
+            errors.computeIfAbsent(category, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public long errorCount(String category) {
+            AtomicLong value = errors.get(category);
+            return value == null ? 0 : value.get();
+        }
+
+        public Map<String, Long> errors() {
+            Map<String, Long> out = new TreeMap<>();
+            for (Map.Entry<String, AtomicLong> entry : errors.entrySet()) {
+                out.put(entry.getKey(), entry.getValue().get());
+            }
+            return out;
+        }
+
+        public synchronized double totalSeconds() {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += latencies[i];
+            }
+            return total / 1_000_000.0;
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] copy = Arrays.copyOf(latencies, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        Map<String, Object> toMap(double seconds) {
+            long[] sorted = sortedLatencies();
+            long total = count();
+            for (Long value : errors().values()) {
+                total += value;
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("count", count());
+            out.put("throughput_per_sec", seconds > 0 ? count() / seconds : 0.0);
+            out.put("p50_ms", percentile(sorted, 0.50) / 1000.0);
+            out.put("p95_ms", percentile(sorted, 0.95) / 1000.0);
+            out.put("p99_ms", percentile(sorted, 0.99) / 1000.0);
+            out.put("max_ms", sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+            out.put("error_rate", total == 0 ? 0.0 : (double) (total - count()) / total);
+            out.put("errors", errors());
+            return out;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.anymind.promptrecorder.bench;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+
+public class LoadScenario {
+    @JsonProperty("name")
+    private String name = "default";
+    @JsonProperty("base_url")
+    private String baseUrl;
+    @JsonProperty("storage_root")
+    private String storageRoot;
+    @JsonProperty("seed")
+    private long seed = 42L;
+    @JsonProperty("spaces")
+    private int spaces = 10;
+    @JsonProperty("devices_per_space")
+    private int devicesPerSpace = 3;
+    @JsonProperty("threads")
+    private int threads = 16;
+    @JsonProperty("duration_seconds")
+    private double durationSeconds = 60;
+    @JsonProperty("warmup_seconds")
+    private double warmupSeconds = 5;
+    @JsonProperty("push_interval_ms")
+    private long pushIntervalMs = 5000;
+    @JsonProperty("pull_interval_ms")
+    private long pullIntervalMs = 2000;
+    @JsonProperty("changes_per_push")
+    private int changesPerPush = 3;
+    @JsonProperty("edit_ratio")
+    private double editRatio = 0.3;
+    @JsonProperty("delete_ratio")
+    private double deleteRatio = 0.02;
+    @JsonProperty("pull_limit")
+    private int pullLimit = 200;
+    @JsonProperty("prompt_median_chars")
+    private int promptMedianChars = 400;
+    @JsonProperty("prompt_sigma")
+    private double promptSigma = 1.0;
+    @JsonProperty("prompt_max_chars")
+    private int promptMaxChars = 20000;
+    @JsonProperty("tag_pool")
+    private int tagPool = 50;
+
+    public LoadScenario() {}
+
+    public static LoadScenario read(File file) throws IOException {
+        return new ObjectMapper().readValue(file, LoadScenario.class);
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getBaseUrl() { return baseUrl; }
+    public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+    public String getStorageRoot() { return storageRoot; }
+    public void setStorageRoot(String storageRoot) { this.storageRoot = storageRoot; }
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+    public int getSpaces() { return spaces; }
+    public void setSpaces(int spaces) { this.spaces = spaces; }
+    public int getDevicesPerSpace() { return devicesPerSpace; }
+    public void setDevicesPerSpace(int devicesPerSpace) { this.devicesPerSpace = devicesPerSpace; }
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public double getDurationSeconds() { return durationSeconds; }
+    public void setDurationSeconds(double durationSeconds) { this.durationSeconds = durationSeconds; }
+    public double getWarmupSeconds() { return warmupSeconds; }
+    public void setWarmupSeconds(double warmupSeconds) { this.warmupSeconds = warmupSeconds; }
+    public long getPushIntervalMs() { return pushIntervalMs; }
+    public void setPushIntervalMs(long pushIntervalMs) { this.pushIntervalMs = pushIntervalMs; }
+    public long getPullIntervalMs() { return pullIntervalMs; }
+    public void setPullIntervalMs(long pullIntervalMs) { this.pullIntervalMs = pullIntervalMs; }
+    public int getChangesPerPush() { return changesPerPush; }
+    public void setChangesPerPush(int changesPerPush) { this.changesPerPush = changesPerPush; }
+    public double getEditRatio() { return editRatio; }
+    public void setEditRatio(double editRatio) { this.editRatio = editRatio; }
+    public double getDeleteRatio() { return deleteRatio; }
+    public void setDeleteRatio(double deleteRatio) { this.deleteRatio = deleteRatio; }
+    public int getPullLimit() { return pullLimit; }
+    public void setPullLimit(int pullLimit) { this.pullLimit = pullLimit; }
+    public int getPromptMedianChars() { return promptMedianChars; }
+    public void setPromptMedianChars(int promptMedianChars) { this.promptMedianChars = promptMedianChars; }
+    public double getPromptSigma() { return promptSigma; }
+    public void setPromptSigma(double promptSigma) { this.promptSigma = promptSigma; }
+    public int getPromptMaxChars() { return promptMaxChars; }
+    public void setPromptMaxChars(int promptMaxChars) { this.promptMaxChars = promptMaxChars; }
+    public int getTagPool() { return tagPool; }
+    public void setTagPool(int tagPool) { this.tagPool = tagPool; }
+}
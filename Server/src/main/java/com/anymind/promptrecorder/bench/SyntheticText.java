@@ -0,0 +1,37 @@
+package com.anymind.promptrecorder.bench;
+
+import java.util.Random;
+
+public final class SyntheticText {
+    private static final String[] WORDS = {
+        "prompt", "summarize", "the", "following", "code", "and", "explain", "why", "it", "fails",
+        "write", "a", "unit", "test", "for", "this", "function", "refactor", "into", "smaller",
+        "steps", "translate", "to", "english", "list", "edge", "cases", "compare", "two", "options",
+        "draft", "an", "email", "about", "project", "status", "review", "pull", "request", "with",
+        "focus", "on", "performance", "memory", "usage", "give", "me", "examples", "in", "java"
+    };
+
+    private SyntheticText() {}
+
+    public static int logNormalLength(Random random, int medianChars, double sigma, int maxChars) {
+        double length = medianChars * Math.exp(sigma * random.nextGaussian());
+        return (int) Math.max(1, Math.min(maxChars, Math.round(length)));
+    }
+
+    public static String prompt(Random random, int length, String... tags) {
+        StringBuilder builder = new StringBuilder(length + 32);
+        for (String tag : tags) {
+            builder.append(tag).append(' ');
+        }
+        if (tags.length > 0) {
+            builder.append('\n');
+        }
+        int target = builder.length() + length;
+        while (builder.length() < target) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+            builder.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        builder.setLength(target);
+        return builder.toString();
+    }
+}
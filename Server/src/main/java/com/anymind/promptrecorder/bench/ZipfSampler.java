@@ -0,0 +1,43 @@
+package com.anymind.promptrecorder.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ZipfSampler {
+    private final double[] cdf;
+
+    public ZipfSampler(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        cdf = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= total;
+        }
+    }
+
+    public int size() {
+        return cdf.length;
+    }
+
+    public int next(Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cdf.length - 1);
+    }
+
+    public int nextBelow(Random random, int bound) {
+        if (bound >= cdf.length) {
+            return next(random);
+        }
+        double limit = cdf[bound - 1];
+        int index = Arrays.binarySearch(cdf, 0, bound, random.nextDouble() * limit);
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, bound - 1);
+    }
+}
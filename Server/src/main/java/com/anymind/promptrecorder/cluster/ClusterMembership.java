@@ -0,0 +1,112 @@
+package com.anymind.promptrecorder.cluster;
+
+import com.anymind.promptrecorder.util.HashRing;
+import com.anymind.promptrecorder.util.TokenGenerator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ClusterMembership {
+    private final HashRing<ClusterNode> ring = new HashRing<>();
+    private final ClusterNode self;
+    private final boolean redirect;
+    private final AtomicLong local = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong redirected = new AtomicLong();
+    private final AtomicLong misrouted = new AtomicLong();
+
+    public ClusterMembership(@Value("${cluster.nodes:}") String nodesSpec,
+                             @Value("${cluster.self:}") String selfId,
+                             @Value("${cluster.routing:proxy}") String routing) {
+        ClusterNode found = null;
+        for (String entry : nodesSpec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("cluster node must be id=url: " + trimmed);
+            }
+            ClusterNode node = new ClusterNode(trimmed.substring(0, eq).trim(), trimmed.substring(eq + 1).trim());
+            ring.add(node.getId(), node, 1);
+            if (node.getId().equals(selfId)) {
+                found = node;
+            }
+        }
+        if (!ring.members().isEmpty() && found == null) {
+            throw new IllegalArgumentException("cluster.self must name one of cluster.nodes");
+        }
+        if (!"proxy".equals(routing) && !"redirect".equals(routing)) {
+            throw new IllegalArgumentException("cluster.routing must be proxy or redirect");
+        }
+        this.self = found;
+        this.redirect = "redirect".equals(routing);
+    }
+
+    public boolean enabled() {
+        return self != null && ring.members().size() > 1;
+    }
+
+    public boolean redirect() {
+        return redirect;
+    }
+
+    public ClusterNode self() {
+        return self;
+    }
+
+    public ClusterNode ownerOf(String spaceId) {
+        return enabled() ? ring.owner(spaceId) : self;
+    }
+
+    public boolean isLocal(String spaceId) {
+        return !enabled() || ring.owner(spaceId) == self;
+    }
+
+    public String newLocalSpaceId() {
+        String spaceId = TokenGenerator.spaceId();
+        while (!isLocal(spaceId)) {
+            spaceId = TokenGenerator.spaceId();
+        }
+        return spaceId;
+    }
+
+    void recordLocal() {
+        local.incrementAndGet();
+    }
+
+    void recordForwarded() {
+        forwarded.incrementAndGet();
+    }
+
+    void recordRedirected() {
+        redirected.incrementAndGet();
+    }
+
+    void recordMisrouted() {
+        misrouted.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled());
+        out.put("self", self == null ? null : self.getId());
+        List<String> nodes = new ArrayList<>();
+        for (ClusterNode node : ring.members()) {
+            nodes.add(node.getId() + "=" + node.getBaseUrl());
+        }
+        out.put("nodes", nodes);
+        out.put("routing", redirect ? "redirect" : "proxy");
+        out.put("local", local.get());
+        out.put("forwarded", forwarded.get());
+        out.put("redirected", redirected.get());
+        out.put("misrouted", misrouted.get());
+        return out;
+    }
+}
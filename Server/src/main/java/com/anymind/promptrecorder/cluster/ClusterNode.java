@@ -0,0 +1,14 @@
+package com.anymind.promptrecorder.cluster;
+
+public class ClusterNode {
+    private final String id;
+    private final String baseUrl;
+
+    public ClusterNode(String id, String baseUrl) {
+        this.id = id;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public String getId() { return id; }
+    public String getBaseUrl() { return baseUrl; }
+}
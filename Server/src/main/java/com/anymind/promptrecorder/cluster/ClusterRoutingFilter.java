@@ -0,0 +1,192 @@
+package com.anymind.promptrecorder.cluster;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+@Component
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+    static final String FORWARDED_HEADER = "X-Cluster-Forwarded-By";
+    private static final int MISDIRECTED_REQUEST = 421;
+    private static final String[] RESPONSE_HEADERS = {
+        "Content-Type", "Content-Disposition", "Content-Encoding", "Cache-Control", "Retry-After", "WWW-Authenticate"
+    };
+
+    private final ClusterMembership membership;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int timeoutMillis;
+
+    public ClusterRoutingFilter(ClusterMembership membership,
+                                @Value("${cluster.forward-timeout-ms:30000}") int timeoutMillis) {
+        this.membership = membership;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !membership.enabled() || !request.getRequestURI().startsWith("/sync/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException {
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        String spaceId = spaceId(body);
+        if (spaceId == null || membership.isLocal(spaceId)) {
+            membership.recordLocal();
+            chain.doFilter(new CachedBodyRequest(request, body), response);
+            return;
+        }
+
+        ClusterNode owner = membership.ownerOf(spaceId);
+        if (request.getHeader(FORWARDED_HEADER) != null) {
+            membership.recordMisrouted();
+            response.sendError(MISDIRECTED_REQUEST, "space is owned by " + owner.getId());
+            return;
+        }
+        String target = owner.getBaseUrl() + request.getRequestURI()
+            + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+        if (membership.redirect()) {
+            membership.recordRedirected();
+            response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+            response.setHeader("Location", target);
+            return;
+        }
+        membership.recordForwarded();
+        forward(request, response, target, body);
+    }
+
+    private void forward(HttpServletRequest request, HttpServletResponse response, String target, byte[] body)
+        throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(target).openConnection();
+        // no disconnect on success: a fully read and closed stream hands the socket back to the keep-alive cache
+        try {
+            conn.setConnectTimeout(timeoutMillis);
+            conn.setReadTimeout(timeoutMillis);
+            conn.setRequestMethod(request.getMethod());
+            conn.setDoOutput(body.length > 0);
+            copyHeader(request, conn, "Content-Type");
+            copyHeader(request, conn, "Accept");
+            copyHeader(request, conn, "Authorization");
+            conn.setRequestProperty(FORWARDED_HEADER, membership.self().getId());
+            if (body.length > 0) {
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = conn.getResponseCode();
+            response.setStatus(status);
+            for (String name : RESPONSE_HEADERS) {
+                String value = conn.getHeaderField(name);
+                if (value != null) {
+                    response.setHeader(name, value);
+                }
+            }
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in != null) {
+                try (InputStream stream = in) {
+                    StreamUtils.copy(stream, response.getOutputStream());
+                }
+            }
+        } catch (IOException e) {
+            conn.disconnect();
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_BAD_GATEWAY, "owner node unreachable");
+            }
+        }
+    }
+
+    private static void copyHeader(HttpServletRequest request, HttpURLConnection conn, String name) {
+        String value = request.getHeader(name);
+        if (value != null) {
+            conn.setRequestProperty(name, value);
+        }
+    }
+
+    String spaceId(byte[] body) throws IOException {
+        if (body.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("space_id".equals(field) && value == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
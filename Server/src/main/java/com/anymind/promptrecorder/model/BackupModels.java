@@ -0,0 +1,98 @@
+package com.anymind.promptrecorder.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+public final class BackupModels {
+    private BackupModels() {}
+
+    public static class ExportRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("since_rev")
+        private Long sinceRev;
+
+        public ExportRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public Long getSinceRev() { return sinceRev; }
+        public void setSinceRev(Long sinceRev) { this.sinceRev = sinceRev; }
+    }
+
+    public static class ExportedSpace {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("from_rev")
+        private long fromRev;
+        @JsonProperty("to_rev")
+        private long toRev;
+        @JsonProperty("full")
+        private boolean full;
+        @JsonProperty("records")
+        private long records;
+
+        public ExportedSpace() {}
+
+        public ExportedSpace(String spaceId, long fromRev, long toRev, boolean full, long records) {
+            this.spaceId = spaceId;
+            this.fromRev = fromRev;
+            this.toRev = toRev;
+            this.full = full;
+            this.records = records;
+        }
+
+        public String getSpaceId() {
+            return spaceId;
+        }
+
+        public long getFromRev() {
+            return fromRev;
+        }
+
+        public long getToRev() {
+            return toRev;
+        }
+
+        public boolean isFull() {
+            return full;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+    }
+
+    public static class BackupManifest {
+        @JsonProperty("format")
+        private int format;
+        @JsonProperty("created_at")
+        private String createdAt;
+        @JsonProperty("spaces")
+        private List<ExportedSpace> spaces;
+
+        public BackupManifest() {}
+
+        public BackupManifest(int format, String createdAt, List<ExportedSpace> spaces) {
+            this.format = format;
+            this.createdAt = createdAt;
+            this.spaces = spaces;
+        }
+
+        public int getFormat() {
+            return format;
+        }
+
+        public String getCreatedAt() {
+            return createdAt;
+        }
+
+        public List<ExportedSpace> getSpaces() {
+            return spaces;
+        }
+    }
+}
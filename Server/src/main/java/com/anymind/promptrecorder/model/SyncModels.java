@@ -1,5 +1,6 @@
 package com.anymind.promptrecorder.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
@@ -51,6 +52,8 @@ public final class SyncModels {
         private String spaceSecret;
         @JsonProperty("device_id")
         private String deviceId;
+        @JsonProperty("request_id")
+        private String requestId;
         @JsonProperty("changes")
         private List<ChangeRequest> changes;
 
@@ -62,6 +65,8 @@ public final class SyncModels {
         public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
         public String getDeviceId() { return deviceId; }
         public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
+        public String getRequestId() { return requestId; }
+        public void setRequestId(String requestId) { this.requestId = requestId; }
         public List<ChangeRequest> getChanges() { return changes; }
         public void setChanges(List<ChangeRequest> changes) { this.changes = changes; }
     }
@@ -107,12 +112,20 @@ public final class SyncModels {
         private List<PushResult> results;
         @JsonProperty("server_rev_max")
         private long serverRevMax;
+        @JsonProperty("durability")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String durability;
 
         public PushResponse() {}
 
         public PushResponse(List<PushResult> results, long serverRevMax) {
+            this(results, serverRevMax, null);
+        }
+
+        public PushResponse(List<PushResult> results, long serverRevMax, String durability) {
             this.results = results;
             this.serverRevMax = serverRevMax;
+            this.durability = durability;
         }
 
         public List<PushResult> getResults() {
@@ -122,6 +135,10 @@ public final class SyncModels {
         public long getServerRevMax() {
             return serverRevMax;
         }
+
+        public String getDurability() {
+            return durability;
+        }
     }
 
     public static class PullRequest {
@@ -129,10 +146,16 @@ public final class SyncModels {
         private String spaceId;
         @JsonProperty("space_secret")
         private String spaceSecret;
+        @JsonProperty("device_id")
+        private String deviceId;
         @JsonProperty("since_rev")
         private Long sinceRev;
         @JsonProperty("limit")
         private Integer limit;
+        @JsonProperty("tags")
+        private List<String> tags;
+        @JsonProperty("projection")
+        private String projection;
 
         public PullRequest() {}
 
@@ -140,17 +163,27 @@ public final class SyncModels {
         public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
         public String getSpaceSecret() { return spaceSecret; }
         public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public String getDeviceId() { return deviceId; }
+        public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
         public Long getSinceRev() { return sinceRev; }
         public void setSinceRev(Long sinceRev) { this.sinceRev = sinceRev; }
         public Integer getLimit() { return limit; }
         public void setLimit(Integer limit) { this.limit = limit; }
+        public List<String> getTags() { return tags; }
+        public void setTags(List<String> tags) { this.tags = tags; }
+        public String getProjection() { return projection; }
+        public void setProjection(String projection) { this.projection = projection; }
     }
 
     public static class PullChange {
         @JsonProperty("id")
         private String id;
         @JsonProperty("content")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private String content;
+        @JsonProperty("preview")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String preview;
         @JsonProperty("system_tags")
         private List<String> systemTags;
         @JsonProperty("user_tags")
@@ -170,8 +203,14 @@ public final class SyncModels {
 
         public PullChange(String id, String content, List<String> systemTags, List<String> userTags,
                           String createdAt, String updatedAt, boolean deleted, long serverRev, String serverUpdatedAt) {
+            this(id, content, null, systemTags, userTags, createdAt, updatedAt, deleted, serverRev, serverUpdatedAt);
+        }
+
+        public PullChange(String id, String content, String preview, List<String> systemTags, List<String> userTags,
+                          String createdAt, String updatedAt, boolean deleted, long serverRev, String serverUpdatedAt) {
             this.id = id;
             this.content = content;
+            this.preview = preview;
             this.systemTags = systemTags;
             this.userTags = userTags;
             this.createdAt = createdAt;
@@ -189,6 +228,10 @@ public final class SyncModels {
             return content;
         }
 
+        public String getPreview() {
+            return preview;
+        }
+
         public List<String> getSystemTags() {
             return systemTags;
         }
@@ -223,12 +266,30 @@ public final class SyncModels {
         private List<PullChange> changes;
         @JsonProperty("server_rev_max")
         private long serverRevMax;
+        @JsonProperty("reset_required")
+        private boolean resetRequired;
+        @JsonProperty("next_since_rev")
+        private long nextSinceRev;
+        @JsonProperty("has_more")
+        private boolean hasMore;
 
         public PullResponse() {}
 
         public PullResponse(List<PullChange> changes, long serverRevMax) {
+            this(changes, serverRevMax, false);
+        }
+
+        public PullResponse(List<PullChange> changes, long serverRevMax, boolean resetRequired) {
+            this(changes, serverRevMax, resetRequired, resetRequired ? 0 : serverRevMax, false);
+        }
+
+        public PullResponse(List<PullChange> changes, long serverRevMax, boolean resetRequired,
+                            long nextSinceRev, boolean hasMore) {
             this.changes = changes;
             this.serverRevMax = serverRevMax;
+            this.resetRequired = resetRequired;
+            this.nextSinceRev = nextSinceRev;
+            this.hasMore = hasMore;
         }
 
         public List<PullChange> getChanges() {
@@ -238,5 +299,398 @@ public final class SyncModels {
         public long getServerRevMax() {
             return serverRevMax;
         }
+
+        public boolean isResetRequired() {
+            return resetRequired;
+        }
+
+        public long getNextSinceRev() {
+            return nextSinceRev;
+        }
+
+        public boolean isHasMore() {
+            return hasMore;
+        }
+    }
+
+    public static class FetchRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("ids")
+        private List<String> ids;
+
+        public FetchRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public List<String> getIds() { return ids; }
+        public void setIds(List<String> ids) { this.ids = ids; }
+    }
+
+    public static class FetchResponse {
+        @JsonProperty("records")
+        private List<PullChange> records;
+        @JsonProperty("missing")
+        private List<String> missing;
+
+        public FetchResponse() {}
+
+        public FetchResponse(List<PullChange> records, List<String> missing) {
+            this.records = records;
+            this.missing = missing;
+        }
+
+        public List<PullChange> getRecords() {
+            return records;
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+    }
+
+    public static class TreeRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("prefixes")
+        private List<String> prefixes;
+
+        public TreeRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public List<String> getPrefixes() { return prefixes; }
+        public void setPrefixes(List<String> prefixes) { this.prefixes = prefixes; }
+    }
+
+    public static class TreeNode {
+        @JsonProperty("prefix")
+        private String prefix;
+        @JsonProperty("hash")
+        private String hash;
+        @JsonProperty("count")
+        private int count;
+        @JsonProperty("children")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private List<TreeNode> children;
+        @JsonProperty("records")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private List<RecordVersion> records;
+
+        public TreeNode() {}
+
+        public TreeNode(String prefix, String hash, int count, List<TreeNode> children, List<RecordVersion> records) {
+            this.prefix = prefix;
+            this.hash = hash;
+            this.count = count;
+            this.children = children;
+            this.records = records;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public List<TreeNode> getChildren() {
+            return children;
+        }
+
+        public List<RecordVersion> getRecords() {
+            return records;
+        }
+    }
+
+    public static class RecordVersion {
+        @JsonProperty("id")
+        private String id;
+        @JsonProperty("server_rev")
+        private long serverRev;
+
+        public RecordVersion() {}
+
+        public RecordVersion(String id, long serverRev) {
+            this.id = id;
+            this.serverRev = serverRev;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getServerRev() {
+            return serverRev;
+        }
+    }
+
+    public static class TreeResponse {
+        @JsonProperty("nodes")
+        private List<TreeNode> nodes;
+
+        public TreeResponse() {}
+
+        public TreeResponse(List<TreeNode> nodes) {
+            this.nodes = nodes;
+        }
+
+        public List<TreeNode> getNodes() {
+            return nodes;
+        }
+    }
+
+    public static class ExchangeRequest extends PullRequest {
+        @JsonProperty("request_id")
+        private String requestId;
+        @JsonProperty("changes")
+        private List<ChangeRequest> changes;
+
+        public ExchangeRequest() {}
+
+        public String getRequestId() { return requestId; }
+        public void setRequestId(String requestId) { this.requestId = requestId; }
+        public List<ChangeRequest> getChanges() { return changes; }
+        public void setChanges(List<ChangeRequest> changes) { this.changes = changes; }
+    }
+
+    public static class ExchangeResponse {
+        @JsonProperty("push")
+        private PushResponse push;
+        @JsonProperty("pull")
+        private PullResponse pull;
+
+        public ExchangeResponse() {}
+
+        public ExchangeResponse(PushResponse push, PullResponse pull) {
+            this.push = push;
+            this.pull = pull;
+        }
+
+        public PushResponse getPush() {
+            return push;
+        }
+
+        public PullResponse getPull() {
+            return pull;
+        }
+    }
+
+    public static class SessionRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("device_id")
+        private String deviceId;
+
+        public SessionRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public String getDeviceId() { return deviceId; }
+        public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
+    }
+
+    public static class SessionResponse {
+        @JsonProperty("session_token")
+        private String sessionToken;
+        @JsonProperty("expires_in")
+        private long expiresIn;
+
+        public SessionResponse() {}
+
+        public SessionResponse(String sessionToken, long expiresIn) {
+            this.sessionToken = sessionToken;
+            this.expiresIn = expiresIn;
+        }
+
+        public String getSessionToken() {
+            return sessionToken;
+        }
+
+        public long getExpiresIn() {
+            return expiresIn;
+        }
+    }
+
+    public static class SummaryRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("grouping")
+        private String grouping;
+
+        public SummaryRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public String getGrouping() { return grouping; }
+        public void setGrouping(String grouping) { this.grouping = grouping; }
+    }
+
+    public static class SummaryCount {
+        @JsonProperty("key")
+        private String key;
+        @JsonProperty("count")
+        private long count;
+
+        public SummaryCount() {}
+
+        public SummaryCount(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static class SummaryResponse {
+        @JsonProperty("grouping")
+        private String grouping;
+        @JsonProperty("groups")
+        private List<SummaryCount> groups;
+        @JsonProperty("tags")
+        private List<SummaryCount> tags;
+
+        public SummaryResponse() {}
+
+        public SummaryResponse(String grouping, List<SummaryCount> groups, List<SummaryCount> tags) {
+            this.grouping = grouping;
+            this.groups = groups;
+            this.tags = tags;
+        }
+
+        public String getGrouping() {
+            return grouping;
+        }
+
+        public List<SummaryCount> getGroups() {
+            return groups;
+        }
+
+        public List<SummaryCount> getTags() {
+            return tags;
+        }
+    }
+
+    public static class HistoryRequest {
+        @JsonProperty("space_id")
+        private String spaceId;
+        @JsonProperty("space_secret")
+        private String spaceSecret;
+        @JsonProperty("record_id")
+        private String recordId;
+        @JsonProperty("rev")
+        private Long rev;
+
+        public HistoryRequest() {}
+
+        public String getSpaceId() { return spaceId; }
+        public void setSpaceId(String spaceId) { this.spaceId = spaceId; }
+        public String getSpaceSecret() { return spaceSecret; }
+        public void setSpaceSecret(String spaceSecret) { this.spaceSecret = spaceSecret; }
+        public String getRecordId() { return recordId; }
+        public void setRecordId(String recordId) { this.recordId = recordId; }
+        public Long getRev() { return rev; }
+        public void setRev(Long rev) { this.rev = rev; }
+    }
+
+    public static class RevisionEntry {
+        @JsonProperty("rev")
+        private long rev;
+        @JsonProperty("content")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String content;
+        @JsonProperty("deleted")
+        private boolean deleted;
+        @JsonProperty("updated_at")
+        private String updatedAt;
+        @JsonProperty("server_updated_at")
+        private String serverUpdatedAt;
+        @JsonProperty("last_device_id")
+        private String lastDeviceId;
+
+        public RevisionEntry() {}
+
+        public RevisionEntry(long rev, String content, boolean deleted, String updatedAt, String serverUpdatedAt,
+                             String lastDeviceId) {
+            this.rev = rev;
+            this.content = content;
+            this.deleted = deleted;
+            this.updatedAt = updatedAt;
+            this.serverUpdatedAt = serverUpdatedAt;
+            this.lastDeviceId = lastDeviceId;
+        }
+
+        public long getRev() {
+            return rev;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        public String getUpdatedAt() {
+            return updatedAt;
+        }
+
+        public String getServerUpdatedAt() {
+            return serverUpdatedAt;
+        }
+
+        public String getLastDeviceId() {
+            return lastDeviceId;
+        }
+    }
+
+    public static class HistoryResponse {
+        @JsonProperty("record_id")
+        private String recordId;
+        @JsonProperty("revisions")
+        private List<RevisionEntry> revisions;
+
+        public HistoryResponse() {}
+
+        public HistoryResponse(String recordId, List<RevisionEntry> revisions) {
+            this.recordId = recordId;
+            this.revisions = revisions;
+        }
+
+        public String getRecordId() {
+            return recordId;
+        }
+
+        public List<RevisionEntry> getRevisions() {
+            return revisions;
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ChangePage {
+    private final List<StoredChange> changes;
+    private final long headRev;
+    private final boolean resetRequired;
+
+    public ChangePage(List<StoredChange> changes, long headRev) {
+        this(changes, headRev, false);
+    }
+
+    private ChangePage(List<StoredChange> changes, long headRev, boolean resetRequired) {
+        this.changes = changes;
+        this.headRev = headRev;
+        this.resetRequired = resetRequired;
+    }
+
+    public static ChangePage resetRequired(long headRev) {
+        return new ChangePage(Collections.<StoredChange>emptyList(), headRev, true);
+    }
+
+    public List<StoredChange> getChanges() { return changes; }
+    public long getHeadRev() { return headRev; }
+    public boolean isResetRequired() { return resetRequired; }
+}
@@ -0,0 +1,40 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ColdStarts {
+    private final Set<String> hibernated = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hibernations = new AtomicLong();
+    private final AtomicLong rehydrations = new AtomicLong();
+    private final AtomicLong rehydrateNanos = new AtomicLong();
+    private final AtomicLong maxRehydrateNanos = new AtomicLong();
+
+    void hibernated(String spaceId) {
+        hibernated.add(spaceId);
+        hibernations.incrementAndGet();
+    }
+
+    void opened(String spaceId, long nanos) {
+        if (!hibernated.remove(spaceId)) {
+            return;
+        }
+        rehydrations.incrementAndGet();
+        rehydrateNanos.addAndGet(nanos);
+        maxRehydrateNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    Map<String, Object> stats() {
+        long count = rehydrations.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("hibernated_spaces", hibernated.size());
+        out.put("hibernations", hibernations.get());
+        out.put("rehydrations", count);
+        out.put("rehydrate_avg_ms", count == 0 ? 0.0 : rehydrateNanos.get() / (double) count / 1_000_000.0);
+        out.put("rehydrate_max_ms", maxRehydrateNanos.get() / 1_000_000.0);
+        return out;
+    }
+}
@@ -0,0 +1,53 @@
+package com.anymind.promptrecorder.storage;
+
+// One text version expressed against another: keep the base's first `prefix` and last `suffix`
+// chars and put `middle` between them. Prompt edits are usually one contiguous change, so the
+// delta is about as long as the edit.
+class ContentDelta {
+    private final int prefix;
+    private final int suffix;
+    private final String middle;
+
+    private ContentDelta(int prefix, int suffix, String middle) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.middle = middle;
+    }
+
+    // the delta that rebuilds target from base
+    static ContentDelta between(String base, String target) {
+        int max = Math.min(base.length(), target.length());
+        int prefix = 0;
+        while (prefix < max && base.charAt(prefix) == target.charAt(prefix)) {
+            prefix++;
+        }
+        // never split a surrogate pair: a lone surrogate in middle would not survive UTF-8 storage
+        if (prefix > 0 && Character.isHighSurrogate(base.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+            && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(base.charAt(base.length() - suffix))) {
+            suffix--;
+        }
+        return new ContentDelta(prefix, suffix, target.substring(prefix, target.length() - suffix));
+    }
+
+    static ContentDelta decode(String encoded) {
+        int first = encoded.indexOf(',');
+        int second = encoded.indexOf(',', first + 1);
+        return new ContentDelta(Integer.parseInt(encoded.substring(0, first)),
+            Integer.parseInt(encoded.substring(first + 1, second)), encoded.substring(second + 1));
+    }
+
+    String encode() {
+        return prefix + "," + suffix + "," + middle;
+    }
+
+    String applyTo(String base) {
+        return base.substring(0, prefix) + middle + base.substring(base.length() - suffix);
+    }
+}
@@ -0,0 +1,53 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+final class ContentHash {
+    private ContentHash() {}
+
+    static String of(ChangeRequest change) {
+        return of(change.getContent(), change.getSystemTags(), change.getUserTags(), change.isDeleted());
+    }
+
+    static String of(StoredChange change) {
+        return of(change.getContent(), change.getSystemTags(), change.getUserTags(), change.isDeleted());
+    }
+
+    static String of(String content, List<String> systemTags, List<String> userTags, boolean deleted) {
+        MessageDigest digest = sha256();
+        update(digest, content);
+        updateList(digest, systemTags);
+        updateList(digest, userTags);
+        digest.update((byte) (deleted ? 1 : 0));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static void updateList(MessageDigest digest, List<String> values) {
+        int size = values == null ? 0 : values.size();
+        digest.update(ByteBuffer.allocate(4).putInt(size).array());
+        for (int i = 0; i < size; i++) {
+            update(digest, values.get(i));
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // length-prefixed so that field boundaries cannot shift between two different records
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(value == null ? -1 : bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
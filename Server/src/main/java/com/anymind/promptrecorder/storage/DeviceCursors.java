@@ -0,0 +1,79 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+class DeviceCursors {
+    private final Map<String, long[]> cursors = new HashMap<>();
+    // every puller seen since this time is in the map; before it, pullers may have gone unrecorded
+    private final long knownSinceMillis;
+
+    DeviceCursors() {
+        this(0);
+    }
+
+    private DeviceCursors(long knownSinceMillis) {
+        this.knownSinceMillis = knownSinceMillis;
+    }
+
+    // the first line is knownSinceMillis, then one line per device: acked_rev, last_seen_ms and the
+    // device id as a JSON string
+    static DeviceCursors load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        DeviceCursors loaded = new DeviceCursors(Long.parseLong(lines.get(0).trim()));
+        for (String line : lines.subList(1, lines.size())) {
+            String[] parts = line.split(" ", 3);
+            loaded.cursors.put(JsonUtils.read(parts[2], String.class),
+                new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])});
+        }
+        return loaded;
+    }
+
+    static DeviceCursors unknownBefore(long millis) {
+        return new DeviceCursors(millis);
+    }
+
+    void save(Path file) throws IOException {
+        List<String> lines = new ArrayList<>(cursors.size() + 1);
+        lines.add(Long.toString(knownSinceMillis));
+        for (Map.Entry<String, long[]> entry : cursors.entrySet()) {
+            lines.add(entry.getValue()[0] + " " + entry.getValue()[1] + " " + JsonUtils.write(entry.getKey()));
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void ack(String deviceId, long sinceRev, long nowMillis) {
+        if (deviceId == null) {
+            // anonymous pullers cannot be tracked, so they pin the horizon at zero
+            cursors.put("", new long[] {0, nowMillis});
+        } else {
+            cursors.put(deviceId, new long[] {sinceRev, nowMillis});
+        }
+    }
+
+    long horizon(long activeAfterMillis) {
+        long horizon = -1;
+        Iterator<long[]> it = cursors.values().iterator();
+        while (it.hasNext()) {
+            long[] cursor = it.next();
+            if (cursor[1] < activeAfterMillis) {
+                it.remove();
+                continue;
+            }
+            horizon = horizon < 0 ? cursor[0] : Math.min(horizon, cursor[0]);
+        }
+        // a device still inside the TTL may have pulled while nothing was recording it
+        return knownSinceMillis > activeAfterMillis ? -1 : horizon;
+    }
+}
@@ -0,0 +1,20 @@
+package com.anymind.promptrecorder.storage;
+
+public enum DurabilityMode {
+    STRICT,
+    GROUPED,
+    RELAXED;
+
+    public String wireName() {
+        return name().toLowerCase();
+    }
+
+    public static DurabilityMode parse(String value) {
+        for (DurabilityMode mode : values()) {
+            if (mode.wireName().equals(value.trim().toLowerCase())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("durability mode must be strict, grouped or relaxed: " + value);
+    }
+}
@@ -0,0 +1,162 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class DurabilityPolicy {
+    private final DurabilityMode defaultMode;
+    private final Map<String, DurabilityMode> overrides = new HashMap<>();
+    private final long groupedFlushMillis;
+    private final long relaxedCheckpointMillis;
+    private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<DurabilityMode, AtomicLong> commits = new EnumMap<>(DurabilityMode.class);
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong maxWindowMillis = new AtomicLong();
+    private ScheduledExecutorService flusher;
+    private Flusher target;
+
+    @Autowired
+    public DurabilityPolicy(@Value("${storage.durability.mode:strict}") String mode,
+                            @Value("${storage.durability.spaces:}") String spacesSpec,
+                            @Value("${storage.durability.grouped-flush-ms:100}") long groupedFlushMillis,
+                            @Value("${storage.durability.relaxed-checkpoint-ms:1000}") long relaxedCheckpointMillis) {
+        this.defaultMode = DurabilityMode.parse(mode);
+        this.groupedFlushMillis = groupedFlushMillis;
+        this.relaxedCheckpointMillis = relaxedCheckpointMillis;
+        for (String entry : spacesSpec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("durability override must be spaceId=mode: " + trimmed);
+            }
+            overrides.put(trimmed.substring(0, eq).trim(), DurabilityMode.parse(trimmed.substring(eq + 1)));
+        }
+        for (DurabilityMode value : DurabilityMode.values()) {
+            commits.put(value, new AtomicLong());
+        }
+    }
+
+    public static DurabilityPolicy strict() {
+        return new DurabilityPolicy("strict", "", 100, 1000);
+    }
+
+    public DurabilityMode modeFor(String spaceId) {
+        DurabilityMode mode = overrides.get(spaceId);
+        return mode == null ? defaultMode : mode;
+    }
+
+    public synchronized void start(Flusher target) {
+        if (flusher != null) {
+            return;
+        }
+        this.target = target;
+        long tick = Math.max(1, Math.min(groupedFlushMillis, relaxedCheckpointMillis) / 2);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "durability-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> flushDue(target, false), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordCommit(String spaceId, DurabilityMode mode) {
+        commits.get(mode).incrementAndGet();
+        if (mode == DurabilityMode.STRICT) {
+            return;
+        }
+        pending.computeIfAbsent(spaceId, key -> new Pending(mode, System.nanoTime())).commits.incrementAndGet();
+    }
+
+    public void flushDue(Flusher target, boolean all) {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            Pending window = entry.getValue();
+            long ageMillis = TimeUnit.NANOSECONDS.toMillis(now - window.sinceNanos);
+            long interval = window.mode == DurabilityMode.GROUPED ? groupedFlushMillis : relaxedCheckpointMillis;
+            if (!all && ageMillis < interval) {
+                continue;
+            }
+            if (!pending.remove(entry.getKey(), window)) {
+                continue;
+            }
+            try {
+                target.flush(entry.getKey(), window.mode);
+                flushes.incrementAndGet();
+                long closed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - window.sinceNanos);
+                maxWindowMillis.accumulateAndGet(closed, Math::max);
+            } catch (Exception e) {
+                flushFailures.incrementAndGet();
+                Pending retry = pending.putIfAbsent(entry.getKey(), window);
+                if (retry != null) {
+                    retry.commits.addAndGet(window.commits.get());
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.nanoTime();
+        long unflushedCommits = 0;
+        long oldestMillis = 0;
+        for (Pending window : pending.values()) {
+            unflushedCommits += window.commits.get();
+            oldestMillis = Math.max(oldestMillis, TimeUnit.NANOSECONDS.toMillis(now - window.sinceNanos));
+        }
+        Map<String, Object> byMode = new LinkedHashMap<>();
+        for (Map.Entry<DurabilityMode, AtomicLong> entry : commits.entrySet()) {
+            byMode.put(entry.getKey().wireName(), entry.getValue().get());
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("default_mode", defaultMode.wireName());
+        out.put("space_overrides", overrides.size());
+        out.put("commits", byMode);
+        out.put("unflushed_spaces", pending.size());
+        out.put("unflushed_commits", unflushedCommits);
+        out.put("oldest_unflushed_ms", oldestMillis);
+        out.put("max_window_ms", maxWindowMillis.get());
+        out.put("flushes", flushes.get());
+        out.put("flush_failures", flushFailures.get());
+        return out;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+            flushDue(target, true);
+        }
+    }
+
+    public interface Flusher {
+        void flush(String spaceId, DurabilityMode mode) throws Exception;
+    }
+
+    private static class Pending {
+        private final DurabilityMode mode;
+        private final long sinceNanos;
+        private final AtomicLong commits = new AtomicLong();
+
+        private Pending(DurabilityMode mode, long sinceNanos) {
+            this.mode = mode;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+}
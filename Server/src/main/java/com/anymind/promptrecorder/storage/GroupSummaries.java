@@ -0,0 +1,97 @@
+package com.anymind.promptrecorder.storage;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Live-record counts per day, ISO week and month of created_at, and per tag. The keys are the ones the
+// Android client groups by (substr(created_at, 1, 10), WeekKey, substr(created_at, 1, 7)), so a
+// dashboard gets the same list without pulling every record. Pushes apply +1/-1 deltas.
+public class GroupSummaries {
+    public static final String DAY = "day";
+    public static final String WEEK = "week";
+    public static final String MONTH = "month";
+    public static final String TAG = "tag";
+    public static final List<String> GROUPINGS = Collections.unmodifiableList(Arrays.asList(DAY, WEEK, MONTH));
+    static final List<String> KINDS = Collections.unmodifiableList(Arrays.asList(DAY, WEEK, MONTH, TAG));
+
+    private final Map<String, Map<String, Long>> counts = new HashMap<>();
+
+    public static String dayKey(String createdAt) {
+        return prefix(createdAt, 10);
+    }
+
+    public static String monthKey(String createdAt) {
+        return prefix(createdAt, 7);
+    }
+
+    public static String weekKey(String createdAt) {
+        Instant instant;
+        try {
+            instant = Instant.parse(createdAt);
+        } catch (DateTimeParseException | NullPointerException e) {
+            // the client files unparseable timestamps under the epoch
+            instant = Instant.EPOCH;
+        }
+        LocalDate date = instant.atZone(ZoneOffset.UTC).toLocalDate();
+        return String.format("%04d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    void add(String createdAt, Collection<String> tags) {
+        apply(createdAt, tags, 1);
+    }
+
+    void remove(String createdAt, Collection<String> tags) {
+        apply(createdAt, tags, -1);
+    }
+
+    private void apply(String createdAt, Collection<String> tags, long delta) {
+        apply(DAY, dayKey(createdAt), delta);
+        apply(WEEK, weekKey(createdAt), delta);
+        apply(MONTH, monthKey(createdAt), delta);
+        for (String tag : tags) {
+            apply(TAG, tag, delta);
+        }
+    }
+
+    void apply(String kind, String key, long delta) {
+        Map<String, Long> byKey = counts.computeIfAbsent(kind, k -> new HashMap<>());
+        long count = byKey.getOrDefault(key, 0L) + delta;
+        if (count == 0) {
+            byKey.remove(key);
+        } else {
+            byKey.put(key, count);
+        }
+    }
+
+    public Map<String, Long> counts(String kind) {
+        Map<String, Long> byKey = counts.get(kind);
+        return byKey == null ? Collections.<String, Long>emptyMap() : Collections.unmodifiableMap(byKey);
+    }
+
+    GroupSummaries copy(String... kinds) {
+        GroupSummaries copy = new GroupSummaries();
+        for (String kind : kinds) {
+            Map<String, Long> byKey = counts.get(kind);
+            if (byKey != null) {
+                copy.counts.put(kind, new HashMap<>(byKey));
+            }
+        }
+        return copy;
+    }
+
+    private static String prefix(String createdAt, int length) {
+        if (createdAt == null) {
+            return "";
+        }
+        return createdAt.length() <= length ? createdAt : createdAt.substring(0, length);
+    }
+}
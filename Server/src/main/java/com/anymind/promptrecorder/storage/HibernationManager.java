@@ -0,0 +1,72 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class HibernationManager {
+    private final SpaceStore spaceStore;
+    private final long idleMillis;
+    private final ScheduledExecutorService scanner;
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong hibernated = new AtomicLong();
+    private volatile double lastScanMillis;
+
+    public HibernationManager(SpaceStore spaceStore,
+                              @Value("${storage.hibernate.idle-seconds:900}") long idleSeconds,
+                              @Value("${storage.hibernate.scan-interval-seconds:60}") long scanIntervalSeconds) {
+        this.spaceStore = spaceStore;
+        this.idleMillis = TimeUnit.SECONDS.toMillis(idleSeconds);
+        if (idleSeconds > 0 && scanIntervalSeconds > 0) {
+            scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "space-hibernator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scanner.scheduleWithFixedDelay(this::scanQuietly, scanIntervalSeconds, scanIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scanner = null;
+        }
+    }
+
+    public int scan() {
+        long start = System.nanoTime();
+        int count = spaceStore.hibernateIdle(idleMillis);
+        lastScanMillis = (System.nanoTime() - start) / 1_000_000.0;
+        scans.incrementAndGet();
+        hibernated.addAndGet(count);
+        return count;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", scanner != null);
+        out.put("idle_seconds", TimeUnit.MILLISECONDS.toSeconds(idleMillis));
+        out.put("scans", scans.get());
+        out.put("hibernated", hibernated.get());
+        out.put("last_scan_ms", lastScanMillis);
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+        }
+    }
+
+    private void scanQuietly() {
+        try {
+            scan();
+        } catch (Exception e) {
+            // the next scan retries; a failing scan must not cancel the schedule
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The most recent committed changes of each active space, appended by push after commit. A ring covers
+// every rev after its floor, so an unfiltered pull whose since_rev is at or past the floor is answered
+// from memory with exactly what the changes/records join would return. Rings are capped per space by
+// entry count and across spaces by estimated bytes; the least recently used rings go first.
+class HotTails {
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final int perSpace;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Ring> rings = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    HotTails(int perSpace, long maxBytes) {
+        this.perSpace = perSpace;
+        this.maxBytes = maxBytes;
+    }
+
+    boolean enabled() {
+        return perSpace > 0 && maxBytes > 0;
+    }
+
+    // changes must be the push's written rows in rev order, called while the space's writer is held
+    synchronized void append(String spaceId, List<StoredChange> changes) {
+        if (!enabled() || changes.isEmpty()) {
+            return;
+        }
+        Ring ring = rings.get(spaceId);
+        long first = changes.get(0).getRev();
+        if (ring == null || ring.head != first - 1) {
+            // a gap means revs were written around this store; start over from here
+            drop(spaceId);
+            ring = new Ring(first - 1);
+            rings.put(spaceId, ring);
+        }
+        for (StoredChange change : changes) {
+            bytes += ring.add(change);
+            while (ring.entries.size() > perSpace) {
+                bytes -= ring.removeOldest();
+            }
+        }
+        Iterator<Map.Entry<String, Ring>> eldest = rings.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Ring> entry = eldest.next();
+            if (entry.getValue() == ring) {
+                continue;
+            }
+            bytes -= entry.getValue().bytes;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+        while (bytes > maxBytes && !ring.entries.isEmpty()) {
+            bytes -= ring.removeOldest();
+        }
+    }
+
+    // null when the ring does not reach back to the query's cursor
+    synchronized ChangePage pull(String spaceId, PullQuery query) {
+        Ring ring = query.isFiltered() ? null : rings.get(spaceId);
+        if (ring == null || query.getSinceRev() < ring.floor) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        List<StoredChange> changes = new ArrayList<>();
+        for (Entry entry : ring.entries) {
+            if (changes.size() >= query.getLimit()) {
+                break;
+            }
+            if (entry.rev > query.getSinceRev()) {
+                changes.add(ring.latest.get(entry.recordId).atRev(entry.rev));
+            }
+        }
+        return new ChangePage(changes, ring.head);
+    }
+
+    synchronized void drop(String spaceId) {
+        Ring ring = rings.remove(spaceId);
+        if (ring != null) {
+            bytes -= ring.bytes;
+        }
+    }
+
+    // a hibernated space gives its ring back along with its connections
+    synchronized void retain(Set<String> spaceIds) {
+        Iterator<Map.Entry<String, Ring>> it = rings.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Ring> entry = it.next();
+            if (!spaceIds.contains(entry.getKey())) {
+                bytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("rings", rings.size());
+        out.put("bytes", bytes);
+        out.put("hits", hits.get());
+        out.put("misses", misses.get());
+        out.put("evictions", evictions.get());
+        return out;
+    }
+
+    private static long estimate(StoredChange change) {
+        return ENTRY_OVERHEAD_BYTES + 2L * length(change.getContent()) + 2L * length(change.getId())
+            + estimate(change.getSystemTags()) + estimate(change.getUserTags());
+    }
+
+    private static long estimate(List<String> tags) {
+        long size = 0;
+        for (String tag : tags == null ? Collections.<String>emptyList() : tags) {
+            size += 48 + 2L * length(tag);
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static class Ring {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private final Map<String, StoredChange> latest = new HashMap<>();
+        private final Map<String, Integer> refs = new HashMap<>();
+        private long floor;
+        private long head;
+        private long bytes;
+
+        private Ring(long floor) {
+            this.floor = floor;
+            this.head = floor;
+        }
+
+        private long add(StoredChange change) {
+            long size = estimate(change);
+            entries.addLast(new Entry(change.getRev(), change.getId(), size));
+            latest.put(change.getId(), change);
+            refs.merge(change.getId(), 1, Integer::sum);
+            head = change.getRev();
+            bytes += size;
+            return size;
+        }
+
+        private long removeOldest() {
+            Entry oldest = entries.removeFirst();
+            floor = oldest.rev;
+            if (refs.merge(oldest.recordId, -1, Integer::sum) == 0) {
+                refs.remove(oldest.recordId);
+                latest.remove(oldest.recordId);
+            }
+            bytes -= oldest.bytes;
+            return oldest.bytes;
+        }
+    }
+
+    private static class Entry {
+        private final long rev;
+        private final String recordId;
+        private final long bytes;
+
+        private Entry(long rev, String recordId, long bytes) {
+            this.rev = rev;
+            this.recordId = recordId;
+            this.bytes = bytes;
+        }
+    }
+}
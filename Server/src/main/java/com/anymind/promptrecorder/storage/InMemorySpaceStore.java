@@ -0,0 +1,291 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushResult;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "memory")
+public class InMemorySpaceStore implements SpaceStore {
+    private final ConcurrentMap<String, MemorySpace> spaces = new ConcurrentHashMap<>();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong noops = new AtomicLong();
+
+    @Override
+    public String engine() {
+        return "memory";
+    }
+
+    @Override
+    public PushResponse push(String spaceId, String deviceId, String requestId, List<ChangeRequest> changes) {
+        MemorySpace space = spaces.computeIfAbsent(spaceId, key -> new MemorySpace());
+        String now = Instant.now().toString();
+        List<PushResult> results = new ArrayList<>();
+        synchronized (space) {
+            PushResponse receipt = requestId == null ? null : space.receipts.get(deviceId, requestId);
+            if (receipt != null) {
+                replays.incrementAndGet();
+                return receipt;
+            }
+            if (changes != null) {
+                for (ChangeRequest change : changes) {
+                    StoredChange existing = space.records.get(change.getId());
+                    if (existing != null && ContentHash.of(existing).equals(ContentHash.of(change))) {
+                        noops.incrementAndGet();
+                        results.add(new PushResult(change.getId(), existing.getServerRev(),
+                            existing.getServerUpdatedAt(), false));
+                        continue;
+                    }
+                    boolean conflict = change.getBaseRev() != null
+                        && existing != null
+                        && existing.getServerRev() > change.getBaseRev();
+                    if (existing != null) {
+                        Set<String> former = RecordTags.former(RecordTags.of(existing),
+                            space.formerTags.get(change.getId()), RecordTags.of(change.getSystemTags(), change.getUserTags()));
+                        if (former.isEmpty()) {
+                            space.formerTags.remove(change.getId());
+                        } else {
+                            space.formerTags.put(change.getId(), former);
+                        }
+                    }
+                    long rev = space.changeLog.size() + 1;
+                    space.changeLog.add(change.getId());
+                    if (existing != null) {
+                        space.history.computeIfAbsent(change.getId(), id -> new RevisionChain())
+                            .supersede(existing, change.getContent());
+                    }
+                    String createdAt = existing == null ? change.getCreatedAt() : existing.getCreatedAt();
+                    if (existing != null && !existing.isDeleted()) {
+                        space.tree.remove(change.getId(), existing.getServerRev());
+                        space.summaries.remove(existing.getCreatedAt(), RecordTags.of(existing));
+                    }
+                    if (!change.isDeleted()) {
+                        space.tree.add(change.getId(), rev);
+                        space.summaries.add(createdAt, RecordTags.of(change.getSystemTags(), change.getUserTags()));
+                    }
+                    space.records.put(change.getId(), new StoredChange(
+                        rev,
+                        change.getId(),
+                        change.getContent(),
+                        copy(change.getSystemTags()),
+                        copy(change.getUserTags()),
+                        createdAt,
+                        change.getUpdatedAt(),
+                        change.isDeleted(),
+                        rev,
+                        now,
+                        deviceId
+                    ));
+                    results.add(new PushResult(change.getId(), rev, now, conflict));
+                }
+            }
+            PushResponse response = new PushResponse(results, space.changeLog.size());
+            if (requestId != null) {
+                space.receipts.put(deviceId, requestId, response);
+            }
+            return response;
+        }
+    }
+
+    @Override
+    public ChangePage pull(String spaceId, PullQuery query) {
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return new ChangePage(Collections.<StoredChange>emptyList(), 0);
+        }
+        synchronized (space) {
+            int head = space.changeLog.size();
+            space.cursors.ack(query.getDeviceId(), query.getSinceRev(), System.currentTimeMillis());
+            if (query.getSinceRev() > 0 && query.getSinceRev() < space.purgedThrough) {
+                return ChangePage.resetRequired(head);
+            }
+            List<StoredChange> changes = new ArrayList<>();
+            long start = Math.max(0, query.getSinceRev());
+            for (long rev = start + 1; rev <= head && changes.size() < query.getLimit(); rev++) {
+                String recordId = space.changeLog.get((int) (rev - 1));
+                if (recordId == null) {
+                    continue;
+                }
+                StoredChange record = space.records.get(recordId);
+                if (query.matches(RecordTags.of(record), space.formerTags.get(recordId))) {
+                    changes.add(record.atRev(rev));
+                }
+            }
+            return new ChangePage(changes, head);
+        }
+    }
+
+    @Override
+    public List<StoredChange> fetch(String spaceId, Collection<String> recordIds) {
+        MemorySpace space = spaces.get(spaceId);
+        List<StoredChange> found = new ArrayList<>();
+        if (space == null) {
+            return found;
+        }
+        synchronized (space) {
+            for (String recordId : recordIds) {
+                StoredChange record = space.records.get(recordId);
+                if (record != null) {
+                    found.add(record);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public <T> T withSpaceLocked(String spaceId, Supplier<T> work) {
+        MemorySpace space = spaces.computeIfAbsent(spaceId, key -> new MemorySpace());
+        synchronized (space) {
+            return work.get();
+        }
+    }
+
+    @Override
+    public MerkleTree merkleTree(String spaceId) {
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return new MerkleTree();
+        }
+        synchronized (space) {
+            return space.tree.copy();
+        }
+    }
+
+    @Override
+    public Map<String, Long> bucketEntries(String spaceId, int bucket) {
+        Map<String, Long> entries = new TreeMap<>();
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return entries;
+        }
+        synchronized (space) {
+            for (StoredChange record : space.records.values()) {
+                if (!record.isDeleted() && MerkleTree.bucketOf(record.getId()) == bucket) {
+                    entries.put(record.getId(), record.getServerRev());
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public GroupSummaries summaries(String spaceId, String grouping) {
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return new GroupSummaries();
+        }
+        synchronized (space) {
+            return space.summaries.copy(grouping, GroupSummaries.TAG);
+        }
+    }
+
+    @Override
+    public boolean keepsHistory() {
+        return true;
+    }
+
+    @Override
+    public List<Revision> revisions(String spaceId, String recordId) {
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return Collections.emptyList();
+        }
+        synchronized (space) {
+            StoredChange current = space.records.get(recordId);
+            if (current == null) {
+                return Collections.emptyList();
+            }
+            return space.history.getOrDefault(recordId, new RevisionChain()).revisions(current);
+        }
+    }
+
+    @Override
+    public Revision revisionAt(String spaceId, String recordId, long rev) {
+        MemorySpace space = spaces.get(spaceId);
+        if (space == null) {
+            return null;
+        }
+        synchronized (space) {
+            StoredChange current = space.records.get(recordId);
+            if (current == null) {
+                return null;
+            }
+            return space.history.getOrDefault(recordId, new RevisionChain()).at(rev, current);
+        }
+    }
+
+    @Override
+    public int collectTombstones(long activeAfterMillis) {
+        int purged = 0;
+        for (MemorySpace space : spaces.values()) {
+            synchronized (space) {
+                long horizon = space.cursors.horizon(activeAfterMillis);
+                List<String> dead = new ArrayList<>();
+                for (StoredChange record : space.records.values()) {
+                    if (record.isDeleted() && record.getServerRev() <= horizon) {
+                        dead.add(record.getId());
+                    }
+                }
+                if (dead.isEmpty()) {
+                    continue;
+                }
+                for (String id : dead) {
+                    space.records.remove(id);
+                    space.formerTags.remove(id);
+                    space.history.remove(id);
+                }
+                for (int i = 0; i < horizon; i++) {
+                    String recordId = space.changeLog.get(i);
+                    if (recordId != null && !space.records.containsKey(recordId)) {
+                        space.changeLog.set(i, null);
+                    }
+                }
+                space.purgedThrough = Math.max(space.purgedThrough, horizon);
+                purged += dead.size();
+            }
+        }
+        return purged;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("spaces", spaces.size());
+        out.put("push_replays", replays.get());
+        out.put("unchanged_skipped", noops.get());
+        return out;
+    }
+
+    private static List<String> copy(List<String> values) {
+        return values == null ? Collections.<String>emptyList() : new ArrayList<>(values);
+    }
+
+    private static class MemorySpace {
+        private final List<String> changeLog = new ArrayList<>();
+        private final Map<String, StoredChange> records = new HashMap<>();
+        private final Map<String, Set<String>> formerTags = new HashMap<>();
+        private final Map<String, RevisionChain> history = new HashMap<>();
+        private final DeviceCursors cursors = new DeviceCursors();
+        private final PushReceipts receipts = new PushReceipts();
+        private final MerkleTree tree = new MerkleTree();
+        private final GroupSummaries summaries = new GroupSummaries();
+        private long purgedThrough;
+    }
+}
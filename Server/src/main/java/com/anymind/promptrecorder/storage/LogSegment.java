@@ -0,0 +1,335 @@
+package com.anymind.promptrecorder.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+class LogSegment {
+    static final int HEADER_BYTES = 8;
+    private static final int SPARSE_EVERY = 32;
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePos;
+    private int entries;
+    private long firstRev = -1;
+    private long lastRev = -1;
+    private long[] sparseRevs = new long[16];
+    private int[] sparseOffsets = new int[16];
+    private int sparseSize;
+
+    private LogSegment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static LogSegment create(int id, Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new LogSegment(id, path, channel, buffer);
+    }
+
+    static LogSegment open(int id, Path path, EntryVisitor visitor) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        LogSegment segment = new LogSegment(id, path, channel, buffer);
+        segment.recover(visitor);
+        return segment;
+    }
+
+    private void recover(EntryVisitor visitor) {
+        int pos = 0;
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = slice(pos + HEADER_BYTES, length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                break;
+            }
+            long rev = revAt(pos);
+            track(rev, pos);
+            visitor.visit(this, pos, rev, idAt(pos));
+            pos += HEADER_BYTES + length;
+        }
+        writePos = pos;
+        for (int i = pos; i < Math.min(buffer.capacity(), pos + HEADER_BYTES); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    int size() {
+        return writePos;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    long firstRev() {
+        return firstRev;
+    }
+
+    long lastRev() {
+        return lastRev;
+    }
+
+    boolean hasRoom(int payloadBytes) {
+        return writePos + HEADER_BYTES + payloadBytes <= buffer.capacity();
+    }
+
+    int append(long rev, byte[] payload) {
+        int offset = writePos;
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer out = buffer.duplicate();
+        out.position(offset + HEADER_BYTES);
+        out.put(payload);
+        if (offset + HEADER_BYTES + payload.length + 4 <= buffer.capacity()) {
+            buffer.putInt(offset + HEADER_BYTES + payload.length, 0);
+        }
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, payload.length);
+        writePos = offset + HEADER_BYTES + payload.length;
+        track(rev, offset);
+        return offset;
+    }
+
+    private void track(long rev, int offset) {
+        if (entries % SPARSE_EVERY == 0) {
+            if (sparseSize == sparseRevs.length) {
+                sparseRevs = Arrays.copyOf(sparseRevs, sparseSize * 2);
+                sparseOffsets = Arrays.copyOf(sparseOffsets, sparseSize * 2);
+            }
+            sparseRevs[sparseSize] = rev;
+            sparseOffsets[sparseSize] = offset;
+            sparseSize++;
+        }
+        if (firstRev < 0) {
+            firstRev = rev;
+        }
+        lastRev = rev;
+        entries++;
+    }
+
+    int seek(long sinceRev) {
+        int index = Arrays.binarySearch(sparseRevs, 0, sparseSize, sinceRev);
+        int slot = index >= 0 ? index : -index - 2;
+        int pos = slot < 0 ? 0 : sparseOffsets[slot];
+        while (pos < writePos && revAt(pos) <= sinceRev) {
+            pos = next(pos);
+        }
+        return pos;
+    }
+
+    int next(int offset) {
+        return offset + HEADER_BYTES + buffer.getInt(offset);
+    }
+
+    long revAt(int offset) {
+        return buffer.getLong(offset + HEADER_BYTES);
+    }
+
+    boolean deletedAt(int offset) {
+        return buffer.get(offset + HEADER_BYTES + 8) != 0;
+    }
+
+    String idAt(int offset) {
+        ByteBuffer in = slice(offset + HEADER_BYTES, buffer.getInt(offset));
+        in.position(9);
+        return readString(in);
+    }
+
+    byte[] payloadAt(int offset) {
+        byte[] payload = new byte[buffer.getInt(offset)];
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset + HEADER_BYTES);
+        in.get(payload);
+        return payload;
+    }
+
+    StoredChange read(int offset) {
+        return decode(slice(offset + HEADER_BYTES, buffer.getInt(offset)));
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    // Java 8 has no public unmap: the mapping goes when the buffer is garbage collected, so the segment
+    // drops its only reference here and must not be read after close
+    void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    List<String> formerTagsAt(int offset) {
+        ByteBuffer in = slice(offset + HEADER_BYTES, buffer.getInt(offset));
+        decode(in);
+        // entries written before tag filtering end after the user tags
+        return in.hasRemaining() ? readList(in) : Collections.<String>emptyList();
+    }
+
+    static byte[] encode(StoredChange change) {
+        return encode(change, Collections.<String>emptySet());
+    }
+
+    static byte[] encode(StoredChange change, Collection<String> formerTags) {
+        byte[][] strings = {
+            utf8(change.getId()), utf8(change.getContent()), utf8(change.getCreatedAt()),
+            utf8(change.getUpdatedAt()), utf8(change.getServerUpdatedAt()), utf8(change.getLastDeviceId())
+        };
+        List<byte[]> systemTags = utf8(change.getSystemTags());
+        List<byte[]> userTags = utf8(change.getUserTags());
+        int size = 8 + 1 + 8;
+        for (byte[] value : strings) {
+            size += 4 + (value == null ? 0 : value.length);
+        }
+        size += 8;
+        for (byte[] value : systemTags) {
+            size += 4 + value.length;
+        }
+        for (byte[] value : userTags) {
+            size += 4 + value.length;
+        }
+        List<byte[]> former = utf8(formerTags.isEmpty() ? null : new ArrayList<>(formerTags));
+        if (!former.isEmpty()) {
+            size += 4;
+            for (byte[] value : former) {
+                size += 4 + value.length;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putLong(change.getRev());
+        out.put((byte) (change.isDeleted() ? 1 : 0));
+        writeString(out, strings[0]);
+        out.putLong(change.getServerRev());
+        for (int i = 1; i < strings.length; i++) {
+            writeString(out, strings[i]);
+        }
+        writeList(out, systemTags);
+        writeList(out, userTags);
+        if (!former.isEmpty()) {
+            writeList(out, former);
+        }
+        return out.array();
+    }
+
+    private static StoredChange decode(ByteBuffer in) {
+        long rev = in.getLong();
+        boolean deleted = in.get() != 0;
+        String id = readString(in);
+        long serverRev = in.getLong();
+        String content = readString(in);
+        String createdAt = readString(in);
+        String updatedAt = readString(in);
+        String serverUpdatedAt = readString(in);
+        String lastDeviceId = readString(in);
+        List<String> systemTags = readList(in);
+        List<String> userTags = readList(in);
+        return new StoredChange(rev, id, content, systemTags, userTags, createdAt, updatedAt, deleted,
+            serverRev, serverUpdatedAt, lastDeviceId);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<byte[]> utf8(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<byte[]> out = new ArrayList<>(values.size());
+        for (String value : values) {
+            out.add(utf8(value == null ? "" : value));
+        }
+        return out;
+    }
+
+    private static void writeString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(value.length);
+        out.put(value);
+    }
+
+    private static void writeList(ByteBuffer out, List<byte[]> values) {
+        out.putInt(values.size());
+        for (byte[] value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static List<String> readList(ByteBuffer in) {
+        int count = in.getInt();
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    interface EntryVisitor {
+        void visit(LogSegment segment, int offset, long rev, String recordId);
+    }
+}
@@ -0,0 +1,401 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushResult;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+class LogSpace {
+    private static final String SUFFIX = ".seg";
+    private static final String PURGED_FILE = "purged_through";
+    private static final String CURSORS_FILE = "device_cursors";
+    private static final String RECEIPTS_FILE = "push_receipts";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final List<LogSegment> segments = new ArrayList<>();
+    private final Map<Integer, LogSegment> segmentsById = new HashMap<>();
+    private final Map<String, Long> index = new HashMap<>();
+    private final DeviceCursors cursors;
+    private final PushReceipts receipts;
+    private MerkleTree tree;
+    private GroupSummaries summaries;
+    private long purgedThrough;
+    private int nextSegmentId;
+    private long headRev;
+    private boolean closed;
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    LogSpace(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            LogSegment segment = LogSegment.open(nextSegmentId++, file, (seg, offset, rev, recordId) -> {
+                index.put(recordId, location(seg, offset));
+                headRev = Math.max(headRev, rev);
+            });
+            register(segment);
+        }
+        Path purged = dir.resolve(PURGED_FILE);
+        if (Files.exists(purged)) {
+            purgedThrough = Long.parseLong(new String(Files.readAllBytes(purged), StandardCharsets.UTF_8).trim());
+            for (String id : tombstones(purgedThrough)) {
+                index.remove(id);
+            }
+        }
+        // cursors are saved on close and consumed here, so after a crash the file is simply absent and
+        // no purge happens until every device inside the TTL has had the chance to pull again
+        Path saved = dir.resolve(CURSORS_FILE);
+        if (Files.exists(saved)) {
+            cursors = DeviceCursors.load(saved);
+            Files.delete(saved);
+        } else {
+            cursors = files.isEmpty() ? new DeviceCursors() : DeviceCursors.unknownBefore(System.currentTimeMillis());
+        }
+        receipts = PushReceipts.open(dir.resolve(RECEIPTS_FILE));
+    }
+
+    synchronized PushResponse push(String deviceId, List<ChangeRequest> changes, boolean fsync) throws IOException {
+        lastUsedNanos = System.nanoTime();
+        String now = Instant.now().toString();
+        List<PushResult> results = new ArrayList<>();
+        // a batch can roll over into a new segment, so every segment it wrote to is forced
+        List<LogSegment> touched = new ArrayList<>(1);
+        if (changes != null) {
+            for (ChangeRequest change : changes) {
+                Long existing = index.get(change.getId());
+                StoredChange previous = existing == null ? null : read(existing);
+                if (previous != null && ContentHash.of(previous).equals(ContentHash.of(change))) {
+                    results.add(new PushResult(change.getId(), previous.getServerRev(), previous.getServerUpdatedAt(), false));
+                    continue;
+                }
+                boolean conflict = change.getBaseRev() != null
+                    && previous != null
+                    && previous.getServerRev() > change.getBaseRev();
+                Set<String> former = previous == null
+                    ? Collections.<String>emptySet()
+                    : RecordTags.former(RecordTags.of(previous), formerTags(existing),
+                        RecordTags.of(change.getSystemTags(), change.getUserTags()));
+                long rev = headRev + 1;
+                StoredChange stored = new StoredChange(
+                    rev,
+                    change.getId(),
+                    change.getContent(),
+                    change.getSystemTags(),
+                    change.getUserTags(),
+                    previous == null ? change.getCreatedAt() : previous.getCreatedAt(),
+                    change.getUpdatedAt(),
+                    change.isDeleted(),
+                    rev,
+                    now,
+                    deviceId
+                );
+                byte[] payload = LogSegment.encode(stored, former);
+                LogSegment active = activeFor(rev, payload.length);
+                int offset = active.append(rev, payload);
+                index.put(change.getId(), location(active, offset));
+                if (tree != null) {
+                    if (previous != null && !previous.isDeleted()) {
+                        tree.remove(change.getId(), previous.getServerRev());
+                    }
+                    if (!change.isDeleted()) {
+                        tree.add(change.getId(), rev);
+                    }
+                }
+                if (summaries != null) {
+                    if (previous != null && !previous.isDeleted()) {
+                        summaries.remove(previous.getCreatedAt(), RecordTags.of(previous));
+                    }
+                    if (!change.isDeleted()) {
+                        summaries.add(stored.getCreatedAt(), RecordTags.of(stored));
+                    }
+                }
+                headRev = rev;
+                if (!touched.contains(active)) {
+                    touched.add(active);
+                }
+                results.add(new PushResult(change.getId(), rev, now, conflict));
+            }
+        }
+        if (fsync) {
+            for (LogSegment segment : touched) {
+                segment.force();
+            }
+        }
+        return new PushResponse(results, headRev);
+    }
+
+    synchronized ChangePage pull(PullQuery query) {
+        lastUsedNanos = System.nanoTime();
+        cursors.ack(query.getDeviceId(), query.getSinceRev(), System.currentTimeMillis());
+        if (query.getSinceRev() > 0 && query.getSinceRev() < purgedThrough) {
+            return ChangePage.resetRequired(headRev);
+        }
+        List<StoredChange> changes = new ArrayList<>();
+        for (LogSegment segment : segments) {
+            if (changes.size() >= query.getLimit()) {
+                break;
+            }
+            if (segment.entries() == 0 || segment.lastRev() <= query.getSinceRev()) {
+                continue;
+            }
+            int pos = segment.seek(query.getSinceRev());
+            while (pos < segment.size() && changes.size() < query.getLimit()) {
+                long rev = segment.revAt(pos);
+                long here = location(segment, pos);
+                Long latest = index.get(segment.idAt(pos));
+                if (latest != null) {
+                    StoredChange record = latest == here ? segment.read(pos) : read(latest).atRev(rev);
+                    if (!query.isFiltered() || query.matches(RecordTags.of(record), formerTags(latest))) {
+                        changes.add(record);
+                    }
+                }
+                pos = segment.next(pos);
+            }
+        }
+        return new ChangePage(changes, headRev);
+    }
+
+    synchronized List<StoredChange> fetch(Collection<String> recordIds) {
+        lastUsedNanos = System.nanoTime();
+        List<StoredChange> found = new ArrayList<>();
+        for (String recordId : recordIds) {
+            Long latest = index.get(recordId);
+            if (latest != null) {
+                found.add(read(latest));
+            }
+        }
+        return found;
+    }
+
+    synchronized MerkleTree merkleTree() {
+        lastUsedNanos = System.nanoTime();
+        if (tree == null) {
+            // built on first use so that reopening a hibernated space stays cheap
+            tree = new MerkleTree();
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                long location = entry.getValue();
+                LogSegment segment = segmentsById.get((int) (location >>> 32));
+                if (!segment.deletedAt((int) location)) {
+                    tree.add(entry.getKey(), segment.revAt((int) location));
+                }
+            }
+        }
+        return tree.copy();
+    }
+
+    synchronized GroupSummaries summaries(String grouping) {
+        lastUsedNanos = System.nanoTime();
+        if (summaries == null) {
+            // like the tree, counted once per open and then kept current by push
+            summaries = new GroupSummaries();
+            for (long location : index.values()) {
+                StoredChange record = read(location);
+                if (!record.isDeleted()) {
+                    summaries.add(record.getCreatedAt(), RecordTags.of(record));
+                }
+            }
+        }
+        return summaries.copy(grouping, GroupSummaries.TAG);
+    }
+
+    synchronized Map<String, Long> bucketEntries(int bucket) {
+        lastUsedNanos = System.nanoTime();
+        Map<String, Long> entries = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : index.entrySet()) {
+            long location = entry.getValue();
+            LogSegment segment = segmentsById.get((int) (location >>> 32));
+            if (!segment.deletedAt((int) location) && MerkleTree.bucketOf(entry.getKey()) == bucket) {
+                entries.put(entry.getKey(), segment.revAt((int) location));
+            }
+        }
+        return entries;
+    }
+
+    synchronized int collectTombstones(long activeAfterMillis) throws IOException {
+        long horizon = cursors.horizon(activeAfterMillis);
+        List<String> dead = tombstones(horizon);
+        if (dead.isEmpty()) {
+            return 0;
+        }
+        if (horizon > purgedThrough) {
+            Path tmp = dir.resolve(PURGED_FILE + ".tmp");
+            Files.write(tmp, Long.toString(horizon).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, dir.resolve(PURGED_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            purgedThrough = horizon;
+        }
+        for (String id : dead) {
+            index.remove(id);
+        }
+        return dead.size();
+    }
+
+    synchronized void force() {
+        for (LogSegment segment : segments) {
+            segment.force();
+        }
+    }
+
+    synchronized int compact(double maxLiveRatio) throws IOException {
+        int compacted = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            LogSegment segment = segments.get(i);
+            List<Integer> live = liveOffsets(segment, i == 0);
+            if (segment.entries() == 0 || live.size() > segment.entries() * maxLiveRatio) {
+                continue;
+            }
+            if (live.isEmpty()) {
+                segment.close();
+                Files.delete(segment.path());
+                segmentsById.remove(segment.id());
+                segments.remove(i--);
+                compacted++;
+                continue;
+            }
+            Path tmp = segment.path().resolveSibling(segment.path().getFileName() + ".tmp");
+            Files.deleteIfExists(tmp);
+            int capacity = LogSegment.HEADER_BYTES;
+            for (int offset : live) {
+                capacity += LogSegment.HEADER_BYTES + segment.payloadAt(offset).length;
+            }
+            LogSegment replacement = LogSegment.create(nextSegmentId++, tmp, Math.max(capacity, LogSegment.HEADER_BYTES));
+            Map<String, Long> moved = new HashMap<>();
+            for (int offset : live) {
+                int newOffset = replacement.append(segment.revAt(offset), segment.payloadAt(offset));
+                moved.put(segment.idAt(offset), location(replacement, newOffset));
+            }
+            replacement.force();
+            replacement.close();
+            segment.close();
+            Files.move(tmp, segment.path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LogSegment reopened = LogSegment.open(replacement.id(), segment.path(), (seg, offset, rev, recordId) -> { });
+            segmentsById.remove(segment.id());
+            segmentsById.put(reopened.id(), reopened);
+            segments.set(i, reopened);
+            for (Map.Entry<String, Long> entry : moved.entrySet()) {
+                index.put(entry.getKey(), entry.getValue());
+            }
+            compacted++;
+        }
+        return compacted;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> out = new HashMap<>();
+        long bytes = 0;
+        for (LogSegment segment : segments) {
+            bytes += segment.size();
+        }
+        out.put("segments", segments.size());
+        out.put("records", index.size());
+        out.put("bytes", bytes);
+        out.put("head_rev", headRev);
+        return out;
+    }
+
+    synchronized long headRev() {
+        return headRev;
+    }
+
+    PushReceipts receipts() {
+        return receipts;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    synchronized void close() throws IOException {
+        closed = true;
+        for (LogSegment segment : segments) {
+            segment.force();
+            segment.close();
+        }
+        segments.clear();
+        segmentsById.clear();
+        index.clear();
+        cursors.save(dir.resolve(CURSORS_FILE));
+    }
+
+    private List<String> tombstones(long horizon) {
+        List<String> dead = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : index.entrySet()) {
+            long location = entry.getValue();
+            LogSegment segment = segmentsById.get((int) (location >>> 32));
+            int offset = (int) location;
+            if (segment.deletedAt(offset) && segment.revAt(offset) <= horizon) {
+                dead.add(entry.getKey());
+            }
+        }
+        return dead;
+    }
+
+    private List<Integer> liveOffsets(LogSegment segment, boolean oldest) {
+        List<Integer> live = new ArrayList<>();
+        for (int pos = 0; pos < segment.size(); pos = segment.next(pos)) {
+            Long latest = index.get(segment.idAt(pos));
+            if (latest != null && latest == location(segment, pos)) {
+                live.add(pos);
+            } else if (latest == null && !oldest && segment.deletedAt(pos)) {
+                // a purged tombstone must outlive older entries of its record, or a restart would revive them
+                live.add(pos);
+            }
+        }
+        return live;
+    }
+
+    private LogSegment activeFor(long rev, int payloadBytes) throws IOException {
+        LogSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active != null && active.hasRoom(payloadBytes)) {
+            return active;
+        }
+        int capacity = Math.max(segmentBytes, payloadBytes + 2 * LogSegment.HEADER_BYTES);
+        Path file = dir.resolve(String.format("%020d%s", rev, SUFFIX));
+        LogSegment created = LogSegment.create(nextSegmentId++, file, capacity);
+        register(created);
+        return created;
+    }
+
+    private void register(LogSegment segment) {
+        segments.add(segment);
+        segmentsById.put(segment.id(), segment);
+    }
+
+    private List<String> formerTags(long location) {
+        return segmentsById.get((int) (location >>> 32)).formerTagsAt((int) location);
+    }
+
+    private StoredChange read(long location) {
+        return segmentsById.get((int) (location >>> 32)).read((int) location);
+    }
+
+    private static long location(LogSegment segment, int offset) {
+        return ((long) segment.id() << 32) | (offset & 0xffffffffL);
+    }
+}
@@ -0,0 +1,288 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushResult;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "log")
+public class LogSpaceStore implements SpaceStore {
+    private final StoragePaths paths;
+    private final DurabilityPolicy durability;
+    private final int segmentBytes;
+    private final double compactLiveRatio;
+    private final ConcurrentMap<String, LogSpace> spaces = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong compactions = new AtomicLong();
+    private final ColdStarts coldStarts = new ColdStarts();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong noops = new AtomicLong();
+
+    public LogSpaceStore(StoragePaths paths) {
+        this(paths, DurabilityPolicy.strict(), 64 * 1024 * 1024, 0.5, 0);
+    }
+
+    @Autowired
+    public LogSpaceStore(StoragePaths paths,
+                         DurabilityPolicy durability,
+                         @Value("${storage.log.segment-bytes:67108864}") int segmentBytes,
+                         @Value("${storage.log.compact-live-ratio:0.5}") double compactLiveRatio,
+                         @Value("${storage.log.compact-interval-seconds:60}") long compactIntervalSeconds) {
+        this.paths = paths;
+        this.durability = durability;
+        this.segmentBytes = segmentBytes;
+        this.compactLiveRatio = compactLiveRatio;
+        if (compactIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactAll, compactIntervalSeconds, compactIntervalSeconds,
+                TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+        durability.start(this::flush);
+    }
+
+    @Override
+    public String engine() {
+        return "log";
+    }
+
+    @Override
+    public PushResponse push(String spaceId, String deviceId, String requestId, List<ChangeRequest> changes) {
+        DurabilityMode mode = durability.modeFor(spaceId);
+        try {
+            return withSpace(spaceId, space -> {
+                PushResponse receipt = requestId == null ? null : space.receipts().get(deviceId, requestId);
+                if (receipt != null) {
+                    replays.incrementAndGet();
+                    return receipt;
+                }
+                long headBefore = space.headRev();
+                PushResponse pushed = space.push(deviceId, changes, mode == DurabilityMode.STRICT);
+                int written = 0;
+                for (PushResult result : pushed.getResults()) {
+                    if (result.getServerRev() > headBefore) {
+                        written++;
+                    }
+                }
+                noops.addAndGet(pushed.getResults().size() - written);
+                durability.recordCommit(spaceId, mode);
+                paths.rootFor(spaceId).recordWrite(written);
+                PushResponse response = new PushResponse(pushed.getResults(), pushed.getServerRevMax(), mode.wireName());
+                if (requestId != null) {
+                    space.receipts().put(deviceId, requestId, response, mode == DurabilityMode.STRICT);
+                }
+                return response;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Push failed", e);
+        }
+    }
+
+    @Override
+    public ChangePage pull(String spaceId, PullQuery query) {
+        try {
+            ChangePage page = withSpace(spaceId, space -> space.pull(query));
+            paths.rootFor(spaceId).recordRead(page.getChanges().size());
+            return page;
+        } catch (Exception e) {
+            throw new IllegalStateException("Pull failed", e);
+        }
+    }
+
+    @Override
+    public List<StoredChange> fetch(String spaceId, Collection<String> recordIds) {
+        try {
+            List<StoredChange> found = withSpace(spaceId, space -> space.fetch(recordIds));
+            paths.rootFor(spaceId).recordRead(found.size());
+            return found;
+        } catch (Exception e) {
+            throw new IllegalStateException("Fetch failed", e);
+        }
+    }
+
+    @Override
+    public <T> T withSpaceLocked(String spaceId, Supplier<T> work) {
+        try {
+            return withSpace(spaceId, space -> work.get());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Space lock failed", e);
+        }
+    }
+
+    @Override
+    public MerkleTree merkleTree(String spaceId) {
+        try {
+            return withSpace(spaceId, LogSpace::merkleTree);
+        } catch (Exception e) {
+            throw new IllegalStateException("Tree read failed", e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> bucketEntries(String spaceId, int bucket) {
+        try {
+            return withSpace(spaceId, space -> space.bucketEntries(bucket));
+        } catch (Exception e) {
+            throw new IllegalStateException("Tree read failed", e);
+        }
+    }
+
+    @Override
+    public GroupSummaries summaries(String spaceId, String grouping) {
+        try {
+            return withSpace(spaceId, space -> space.summaries(grouping));
+        } catch (Exception e) {
+            throw new IllegalStateException("Summary read failed", e);
+        }
+    }
+
+    public int compactAll() {
+        int total = 0;
+        for (LogSpace space : spaces.values()) {
+            try {
+                total += space.compact(compactLiveRatio);
+            } catch (Exception e) {
+                // leave the segment as it is and retry on the next pass
+            }
+        }
+        compactions.addAndGet(total);
+        return total;
+    }
+
+    @Override
+    public int collectTombstones(long activeAfterMillis) {
+        int purged = 0;
+        for (LogSpace space : spaces.values()) {
+            try {
+                purged += space.collectTombstones(activeAfterMillis);
+            } catch (Exception e) {
+                // the purge marker is written before anything leaves the index, so nothing was lost
+            }
+        }
+        return purged;
+    }
+
+    @Override
+    public int hibernateIdle(long idleMillis) {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        int count = 0;
+        for (Map.Entry<String, LogSpace> entry : spaces.entrySet()) {
+            LogSpace space = entry.getValue();
+            if (space.lastUsedNanos() > cutoff) {
+                continue;
+            }
+            synchronized (space) {
+                if (space.isClosed() || space.lastUsedNanos() > cutoff) {
+                    continue;
+                }
+                try {
+                    space.close();
+                } catch (Exception e) {
+                    // segments are flushed on every append; a failed close only leaks the mapping
+                }
+                spaces.remove(entry.getKey(), space);
+                coldStarts.hibernated(entry.getKey());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long segments = 0;
+        long bytes = 0;
+        for (LogSpace space : spaces.values()) {
+            Map<String, Object> spaceStats = space.stats();
+            segments += ((Number) spaceStats.get("segments")).longValue();
+            bytes += ((Number) spaceStats.get("bytes")).longValue();
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("open_spaces", spaces.size());
+        out.put("segments", segments);
+        out.put("log_bytes", bytes);
+        out.put("compacted_segments", compactions.get());
+        out.put("push_replays", replays.get());
+        out.put("unchanged_skipped", noops.get());
+        out.putAll(coldStarts.stats());
+        return out;
+    }
+
+    private void flush(String spaceId, DurabilityMode mode) {
+        LogSpace space = spaces.get(spaceId);
+        if (space != null) {
+            space.force();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        for (LogSpace space : spaces.values()) {
+            try {
+                space.close();
+            } catch (Exception e) {
+                // closing is best effort on shutdown
+            }
+        }
+        spaces.clear();
+    }
+
+    private <T> T withSpace(String spaceId, SpaceWork<T> work) throws Exception {
+        while (true) {
+            LogSpace space = space(spaceId);
+            synchronized (space) {
+                if (!space.isClosed()) {
+                    return work.apply(space);
+                }
+            }
+        }
+    }
+
+    private LogSpace space(String spaceId) {
+        LogSpace space = spaces.get(spaceId);
+        if (space != null) {
+            return space;
+        }
+        return spaces.computeIfAbsent(spaceId, key -> {
+            try {
+                long start = System.nanoTime();
+                paths.rootFor(key).recordOpen();
+                LogSpace opened = new LogSpace(paths.spaceDir(key).resolve("log"), segmentBytes);
+                coldStarts.opened(key, System.nanoTime() - start);
+                return opened;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to open log space", e);
+            }
+        });
+    }
+
+    private interface SpaceWork<T> {
+        T apply(LogSpace space) throws Exception;
+    }
+}
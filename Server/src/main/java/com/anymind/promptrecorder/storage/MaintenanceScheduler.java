@@ -0,0 +1,331 @@
+package com.anymind.promptrecorder.storage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MaintenanceScheduler {
+    private static final int VACUUM_CHUNK_PAGES = 32;
+
+    private final SpaceDatabase spaceDatabase;
+    private final Settings settings;
+    private final ScheduledExecutorService worker;
+    private final ConcurrentMap<String, TaskStats> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skippedBusy = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong vacuumUnavailable = new AtomicLong();
+    private volatile int backlog;
+    private volatile double lastRunMillis;
+
+    @Autowired
+    public MaintenanceScheduler(SpaceDatabase spaceDatabase,
+                                @Value("${storage.maintenance.interval-seconds:30}") long intervalSeconds,
+                                @Value("${storage.maintenance.budget-ms:200}") long budgetMillis,
+                                @Value("${storage.maintenance.pause-ms:5}") long pauseMillis,
+                                @Value("${storage.maintenance.checkpoint-wal-bytes:1048576}") long checkpointWalBytes,
+                                @Value("${storage.maintenance.truncate-wal-bytes:16777216}") long truncateWalBytes,
+                                @Value("${storage.maintenance.vacuum-min-free-pages:256}") long vacuumMinFreePages,
+                                @Value("${storage.maintenance.vacuum-pages-per-step:512}") long vacuumPagesPerStep,
+                                @Value("${storage.maintenance.analyze-after-writes:1000}") long analyzeAfterWrites) {
+        this(spaceDatabase, new Settings(budgetMillis, pauseMillis, checkpointWalBytes, truncateWalBytes,
+            vacuumMinFreePages, vacuumPagesPerStep, analyzeAfterWrites), intervalSeconds);
+    }
+
+    public MaintenanceScheduler(SpaceDatabase spaceDatabase, Settings settings, long intervalSeconds) {
+        this.spaceDatabase = spaceDatabase;
+        this.settings = settings;
+        if (intervalSeconds > 0) {
+            worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "space-maintenance");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            worker.scheduleWithFixedDelay(this::runQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            worker = null;
+        }
+    }
+
+    public int runOnce() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.budgetMillis);
+        List<Candidate> candidates = new ArrayList<>();
+        for (SpaceConnection handle : spaceDatabase.openHandles()) {
+            Path db = spaceDatabase.dbPath(handle.spaceId());
+            candidates.add(new Candidate(handle, size(SpaceDatabase.walPath(db)), size(db)));
+        }
+        candidates.sort(Comparator.comparingLong((Candidate c) -> c.walBytes).reversed()
+            .thenComparing(Comparator.comparingLong((Candidate c) -> c.dbBytes).reversed()));
+
+        int done = 0;
+        int remaining = candidates.size();
+        for (Candidate candidate : candidates) {
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+            SpaceConnection handle = candidate.handle;
+            if (!handle.tryLock()) {
+                skippedBusy.incrementAndGet();
+                continue;
+            }
+            long vacuumPages;
+            boolean analyze;
+            try {
+                if (!handle.isOpen()) {
+                    remaining--;
+                    continue;
+                }
+                boolean incremental = handle.incrementalVacuum();
+                if (!incremental) {
+                    vacuumUnavailable.incrementAndGet();
+                }
+                long freePages = incremental ? freePages(handle) : 0;
+                vacuumPages = freePages >= settings.vacuumMinFreePages
+                    ? Math.min(freePages, settings.vacuumPagesPerStep) : 0;
+                analyze = handle.writesSinceAnalyze() >= settings.analyzeAfterWrites;
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                remaining--;
+                continue;
+            } finally {
+                handle.unlock();
+            }
+            try {
+                int before = done;
+                boolean finished = true;
+                if (vacuumPages > 0) {
+                    long vacuumStart = System.nanoTime();
+                    finished = vacuum(handle, vacuumPages, deadline);
+                    task("incremental_vacuum").record(System.nanoTime() - vacuumStart);
+                    done++;
+                }
+                if (finished && analyze) {
+                    finished = analyze(handle, deadline);
+                    done += finished ? 1 : 0;
+                }
+                if (finished && candidate.walBytes >= settings.checkpointWalBytes) {
+                    finished = checkpoint(handle, candidate.walBytes, deadline);
+                    done += finished ? 1 : 0;
+                }
+                if (finished) {
+                    remaining--;
+                } else if (done == before) {
+                    skippedBusy.incrementAndGet();
+                }
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                remaining--;
+            }
+            if (settings.pauseMillis > 0) {
+                Thread.sleep(settings.pauseMillis);
+            }
+        }
+        backlog = remaining;
+        lastRunMillis = (System.nanoTime() - start) / 1_000_000.0;
+        runs.incrementAndGet();
+        return done;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> byTask = new LinkedHashMap<>();
+        for (Map.Entry<String, TaskStats> entry : tasks.entrySet()) {
+            byTask.put(entry.getKey(), entry.getValue().toMap());
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", worker != null);
+        out.put("runs", runs.get());
+        out.put("backlog", backlog);
+        out.put("skipped_busy", skippedBusy.get());
+        out.put("failures", failures.get());
+        // passes over spaces whose DB could not be switched to auto_vacuum=INCREMENTAL
+        out.put("vacuum_unavailable", vacuumUnavailable.get());
+        out.put("last_run_ms", lastRunMillis);
+        out.put("tasks", byTask);
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    // each step takes the writer lock on its own, so a push waits for at most one vacuum chunk, one
+    // ANALYZE or one checkpoint; false when the step was cut short and the space stays in the backlog
+    private boolean vacuum(SpaceConnection handle, long pages, long deadline) throws Exception {
+        long left = pages;
+        while (left > 0) {
+            if (System.nanoTime() > deadline || !lockOpen(handle)) {
+                return false;
+            }
+            try {
+                // a plain Statement runs the pragma to completion; a prepared one is stepped once and frees one page
+                long chunk = Math.min(left, VACUUM_CHUNK_PAGES);
+                try (Statement stmt = handle.connection().createStatement()) {
+                    stmt.executeUpdate("PRAGMA incremental_vacuum(" + chunk + ");");
+                }
+                left -= chunk;
+                // tryLock would barge ahead of a queued writer, so hand the space back instead
+                if (left > 0 && handle.contended()) {
+                    return false;
+                }
+            } finally {
+                handle.unlock();
+            }
+        }
+        return true;
+    }
+
+    private boolean analyze(SpaceConnection handle, long deadline) throws Exception {
+        if (System.nanoTime() > deadline || !lockOpen(handle)) {
+            return false;
+        }
+        try {
+            long start = System.nanoTime();
+            execute(handle, "PRAGMA analysis_limit=400;");
+            execute(handle, "ANALYZE;");
+            handle.analyzed();
+            task("analyze").record(System.nanoTime() - start);
+            return true;
+        } finally {
+            handle.unlock();
+        }
+    }
+
+    private boolean checkpoint(SpaceConnection handle, long walBytes, long deadline) throws Exception {
+        if (System.nanoTime() > deadline || !lockOpen(handle)) {
+            return false;
+        }
+        try {
+            // TRUNCATE waits on every open read snapshot, so it only runs while no reader is out
+            boolean truncate = walBytes >= settings.truncateWalBytes
+                && !spaceDatabase.readersActive(handle.spaceId());
+            long start = System.nanoTime();
+            execute(handle, truncate ? "PRAGMA wal_checkpoint(TRUNCATE);" : "PRAGMA wal_checkpoint(PASSIVE);");
+            task(truncate ? "checkpoint_truncate" : "checkpoint_passive").record(System.nanoTime() - start);
+            return true;
+        } finally {
+            handle.unlock();
+        }
+    }
+
+    private static boolean lockOpen(SpaceConnection handle) {
+        if (!handle.tryLock()) {
+            return false;
+        }
+        if (!handle.isOpen()) {
+            handle.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    private static long freePages(SpaceConnection handle) throws Exception {
+        try (Statement stmt = handle.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA freelist_count")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void execute(SpaceConnection handle, String sql) throws Exception {
+        try (Statement stmt = handle.connection().createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private TaskStats task(String name) {
+        return tasks.computeIfAbsent(name, key -> new TaskStats());
+    }
+
+    private void runQuietly() {
+        try {
+            runOnce();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // the next run starts over from a fresh candidate list
+        }
+    }
+
+    public static class Settings {
+        private final long budgetMillis;
+        private final long pauseMillis;
+        private final long checkpointWalBytes;
+        private final long truncateWalBytes;
+        private final long vacuumMinFreePages;
+        private final long vacuumPagesPerStep;
+        private final long analyzeAfterWrites;
+
+        public Settings(long budgetMillis, long pauseMillis, long checkpointWalBytes, long truncateWalBytes,
+                        long vacuumMinFreePages, long vacuumPagesPerStep, long analyzeAfterWrites) {
+            this.budgetMillis = budgetMillis;
+            this.pauseMillis = pauseMillis;
+            this.checkpointWalBytes = checkpointWalBytes;
+            this.truncateWalBytes = truncateWalBytes;
+            this.vacuumMinFreePages = vacuumMinFreePages;
+            this.vacuumPagesPerStep = vacuumPagesPerStep;
+            this.analyzeAfterWrites = analyzeAfterWrites;
+        }
+    }
+
+    private static class Candidate {
+        private final SpaceConnection handle;
+        private final long walBytes;
+        private final long dbBytes;
+
+        private Candidate(SpaceConnection handle, long walBytes, long dbBytes) {
+            this.handle = handle;
+            this.walBytes = walBytes;
+            this.dbBytes = dbBytes;
+        }
+    }
+
+    private static class TaskStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long n = count.get();
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("count", n);
+            out.put("avg_ms", n == 0 ? 0.0 : totalNanos.get() / (double) n / 1_000_000.0);
+            out.put("max_ms", maxNanos.get() / 1_000_000.0);
+            return out;
+        }
+    }
+}
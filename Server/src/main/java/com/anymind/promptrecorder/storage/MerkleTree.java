@@ -0,0 +1,105 @@
+package com.anymind.promptrecorder.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Hash tree over (record_id, server_rev) of live records. Leaves are the 4096 buckets named by the
+// first three hex digits of sha256(record_id); a node's hash is the XOR of the entries below it,
+// so a push updates one leaf in constant time and any prefix can be summed on demand.
+public class MerkleTree {
+    public static final int LEAF_DEPTH = 3;
+    public static final int LEAVES = 1 << (4 * LEAF_DEPTH);
+
+    private final long[] hashes;
+    private final int[] counts;
+
+    public MerkleTree() {
+        this(new long[LEAVES], new int[LEAVES]);
+    }
+
+    private MerkleTree(long[] hashes, int[] counts) {
+        this.hashes = hashes;
+        this.counts = counts;
+    }
+
+    public static int bucketOf(String recordId) {
+        byte[] digest = sha256(recordId);
+        return ((digest[0] & 0xff) << 4) | ((digest[1] & 0xff) >>> 4);
+    }
+
+    public static long entryHash(String recordId, long serverRev) {
+        byte[] digest = sha256(recordId + "\n" + serverRev);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (digest[i] & 0xff);
+        }
+        return value;
+    }
+
+    public static String hex(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    public static String bucketPrefix(int bucket) {
+        return String.format("%03x", bucket);
+    }
+
+    void add(String recordId, long serverRev) {
+        apply(bucketOf(recordId), entryHash(recordId, serverRev), 1);
+    }
+
+    void remove(String recordId, long serverRev) {
+        apply(bucketOf(recordId), entryHash(recordId, serverRev), -1);
+    }
+
+    void apply(int bucket, long hash, int count) {
+        hashes[bucket] ^= hash;
+        counts[bucket] += count;
+    }
+
+    void set(int bucket, long hash, int count) {
+        hashes[bucket] = hash;
+        counts[bucket] = count;
+    }
+
+    MerkleTree copy() {
+        return new MerkleTree(Arrays.copyOf(hashes, LEAVES), Arrays.copyOf(counts, LEAVES));
+    }
+
+    public long hash(String prefix) {
+        int[] range = range(prefix);
+        long hash = 0;
+        for (int i = range[0]; i < range[1]; i++) {
+            hash ^= hashes[i];
+        }
+        return hash;
+    }
+
+    public int count(String prefix) {
+        int[] range = range(prefix);
+        int count = 0;
+        for (int i = range[0]; i < range[1]; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    private static int[] range(String prefix) {
+        if (prefix.length() > LEAF_DEPTH) {
+            throw new IllegalArgumentException("prefix longer than " + LEAF_DEPTH + " hex digits: " + prefix);
+        }
+        int start = prefix.isEmpty() ? 0 : Integer.parseInt(prefix, 16);
+        int width = 1 << (4 * (LEAF_DEPTH - prefix.length()));
+        return new int[] {start * width, (start + 1) * width};
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
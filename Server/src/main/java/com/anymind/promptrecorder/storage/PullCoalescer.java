@@ -0,0 +1,169 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single flight for page queries. A push wakes every device of a space at once and they all ask for
+// nearly the same page; a pull that arrives while another pull of the same space and tag filter is
+// running from the same or an earlier rev waits for that query and cuts its own page out of the result.
+// When the shared page cannot cover it (the leader's page was full before reaching this caller's
+// limit), the caller runs its own query. A flight only takes followers until the space's next commit:
+// a device woken by a push must not get a page read before that push landed.
+public class PullCoalescer {
+    private final Map<String, List<Flight>> inFlight = new HashMap<>();
+    private final Map<String, Long> commits = new HashMap<>();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public ChangePage pull(String spaceId, PullQuery query, PageLoader loader) throws Exception {
+        String key = spaceId + "\n" + new TreeSet<>(query.getTags());
+        Flight flight;
+        boolean leader = false;
+        synchronized (this) {
+            Long committed = commits.get(spaceId);
+            long epoch = committed == null ? 0 : committed;
+            flight = joinable(inFlight.get(key), query, epoch);
+            if (flight == null) {
+                flight = new Flight(query.getSinceRev(), query.getLimit(), epoch);
+                inFlight.computeIfAbsent(key, k -> new ArrayList<>()).add(flight);
+                leader = true;
+            }
+        }
+        if (leader) {
+            return lead(key, flight, loader);
+        }
+        ChangePage page = null;
+        waiting.incrementAndGet();
+        try {
+            page = slice(flight.result.get(), flight, query);
+        } catch (ExecutionException e) {
+            // the leader's failure is its own; this caller retries on its own connection
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (page == null) {
+            queries.incrementAndGet();
+            return loader.load();
+        }
+        shared.incrementAndGet();
+        return page;
+    }
+
+    // called after a commit is visible to new readers
+    public synchronized void committed(String spaceId) {
+        Long count = commits.get(spaceId);
+        commits.put(spaceId, count == null ? 1 : count + 1);
+    }
+
+    // forgets commit counts of spaces outside the set that have nothing in flight
+    public synchronized void retain(Set<String> spaceIds) {
+        Set<String> flying = new HashSet<>();
+        for (String key : inFlight.keySet()) {
+            flying.add(key.substring(0, key.indexOf('\n')));
+        }
+        Iterator<String> it = commits.keySet().iterator();
+        while (it.hasNext()) {
+            String spaceId = it.next();
+            if (!spaceIds.contains(spaceId) && !flying.contains(spaceId)) {
+                it.remove();
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("page_queries", queries.get());
+        out.put("pulls_coalesced", shared.get());
+        out.put("pulls_waiting", waiting.get());
+        return out;
+    }
+
+    private ChangePage lead(String key, Flight flight, PageLoader loader) throws Exception {
+        queries.incrementAndGet();
+        try {
+            ChangePage page = loader.load();
+            flight.result.complete(page);
+            return page;
+        } catch (Exception e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                List<Flight> flights = inFlight.get(key);
+                flights.remove(flight);
+                if (flights.isEmpty()) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+    }
+
+    private static Flight joinable(List<Flight> flights, PullQuery query, long epoch) {
+        if (flights == null) {
+            return null;
+        }
+        Flight best = null;
+        for (Flight flight : flights) {
+            if (flight.epoch != epoch) {
+                continue;
+            }
+            // a leader from rev 0 never checks the purge horizon, so it cannot vouch for a later cursor
+            boolean covers = flight.sinceRev == query.getSinceRev()
+                || (flight.sinceRev > 0 && flight.sinceRev < query.getSinceRev());
+            if (covers && (best == null || flight.sinceRev > best.sinceRev)) {
+                best = flight;
+            }
+        }
+        return best;
+    }
+
+    private static ChangePage slice(ChangePage page, Flight flight, PullQuery query) {
+        if (flight.sinceRev == query.getSinceRev() && flight.limit == query.getLimit()) {
+            return page;
+        }
+        if (page.isResetRequired()) {
+            return null;
+        }
+        List<StoredChange> after = new ArrayList<>();
+        for (StoredChange change : page.getChanges()) {
+            if (change.getRev() > query.getSinceRev()) {
+                after.add(change);
+            }
+        }
+        boolean complete = page.getChanges().size() < flight.limit || after.size() >= query.getLimit();
+        if (!complete) {
+            return null;
+        }
+        return new ChangePage(after.size() > query.getLimit() ? after.subList(0, query.getLimit()) : after,
+            page.getHeadRev());
+    }
+
+    public interface PageLoader {
+        ChangePage load() throws Exception;
+    }
+
+    private static class Flight {
+        private final long sinceRev;
+        private final int limit;
+        private final long epoch;
+        private final CompletableFuture<ChangePage> result = new CompletableFuture<>();
+
+        private Flight(long sinceRev, int limit, long epoch) {
+            this.sinceRev = sinceRev;
+            this.limit = limit;
+            this.epoch = epoch;
+        }
+    }
+}
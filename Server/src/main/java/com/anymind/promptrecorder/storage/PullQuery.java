@@ -0,0 +1,51 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PullQuery {
+    private final long sinceRev;
+    private final int limit;
+    private final String deviceId;
+    private final Set<String> tags;
+
+    public PullQuery(long sinceRev, int limit) {
+        this(sinceRev, limit, null);
+    }
+
+    public PullQuery(long sinceRev, int limit, String deviceId) {
+        this(sinceRev, limit, deviceId, null);
+    }
+
+    public PullQuery(long sinceRev, int limit, String deviceId, List<String> tags) {
+        this.sinceRev = sinceRev;
+        this.limit = limit;
+        this.deviceId = deviceId;
+        this.tags = tags == null || tags.isEmpty() ? Collections.<String>emptySet() : new HashSet<>(tags);
+    }
+
+    public long getSinceRev() { return sinceRev; }
+    public int getLimit() { return limit; }
+    public String getDeviceId() { return deviceId; }
+    public Set<String> getTags() { return tags; }
+    public boolean isFiltered() { return !tags.isEmpty(); }
+
+    // a record that lost a matching tag stays visible, so devices holding it learn it left the filter
+    public boolean matches(Collection<String> currentTags, Collection<String> formerTags) {
+        return !isFiltered() || intersects(currentTags) || intersects(formerTags);
+    }
+
+    private boolean intersects(Collection<String> values) {
+        if (values != null) {
+            for (String value : values) {
+                if (tags.contains(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,119 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class PushReceipts {
+    static final int PER_DEVICE = 64;
+
+    private final Map<String, LinkedHashMap<String, PushResponse>> byDevice = new HashMap<>();
+    // null keeps the receipts in memory only
+    private final Path journal;
+    private int journaled;
+
+    PushReceipts() {
+        this(null);
+    }
+
+    private PushReceipts(Path journal) {
+        this.journal = journal;
+    }
+
+    // the journal has one line per receipt in the order they were taken: device id, request id and
+    // response as JSON, tab separated. Replaying it through the per-device cap leaves the newest ones.
+    static PushReceipts open(Path journal) throws IOException {
+        PushReceipts receipts = new PushReceipts(journal);
+        if (Files.exists(journal)) {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t", 3);
+                try {
+                    receipts.remember(JsonUtils.read(parts[0], String.class), JsonUtils.read(parts[1], String.class),
+                        JsonUtils.read(parts[2], PushResponse.class));
+                } catch (RuntimeException e) {
+                    // a crash mid-append leaves a torn last line; that receipt was never acknowledged
+                }
+            }
+            receipts.compact();
+        }
+        return receipts;
+    }
+
+    PushResponse get(String deviceId, String requestId) {
+        Map<String, PushResponse> receipts = byDevice.get(key(deviceId));
+        return receipts == null ? null : receipts.get(requestId);
+    }
+
+    void put(String deviceId, String requestId, PushResponse response) {
+        remember(key(deviceId), requestId, response);
+    }
+
+    // appends to the journal after the batch itself is written; fsync matches the batch's own
+    void put(String deviceId, String requestId, PushResponse response, boolean fsync) throws IOException {
+        remember(key(deviceId), requestId, response);
+        if (++journaled > 2 * PER_DEVICE * byDevice.size()) {
+            compact();
+            return;
+        }
+        String line = JsonUtils.write(key(deviceId)) + "\t" + JsonUtils.write(requestId) + "\t"
+            + JsonUtils.write(response) + "\n";
+        try (FileChannel channel = FileChannel.open(journal,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    // rewrites the journal with only the receipts still kept
+    private void compact() throws IOException {
+        StringBuilder out = new StringBuilder();
+        journaled = 0;
+        for (Map.Entry<String, LinkedHashMap<String, PushResponse>> device : byDevice.entrySet()) {
+            for (Map.Entry<String, PushResponse> receipt : device.getValue().entrySet()) {
+                out.append(JsonUtils.write(device.getKey())).append('\t').append(JsonUtils.write(receipt.getKey()))
+                    .append('\t').append(JsonUtils.write(receipt.getValue())).append('\n');
+                journaled++;
+            }
+        }
+        Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void remember(String device, String requestId, PushResponse response) {
+        LinkedHashMap<String, PushResponse> receipts = byDevice.computeIfAbsent(device,
+            key -> new LinkedHashMap<String, PushResponse>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PushResponse> eldest) {
+                    return size() > PER_DEVICE;
+                }
+            });
+        receipts.put(requestId, response);
+    }
+
+    private static String key(String deviceId) {
+        return deviceId == null ? "" : deviceId;
+    }
+}
@@ -0,0 +1,106 @@
+package com.anymind.promptrecorder.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-only connections to one space DB, opened on demand up to a fixed size. Each connection runs
+// with auto-commit off, so everything a caller reads between take and release comes from one WAL
+// snapshot; release commits, which ends the snapshot before the connection goes back to the pool.
+class ReaderPool {
+    private final String spaceId;
+    private final int statementCacheSize;
+    private final Callable<Connection> opener;
+    private final Semaphore permits;
+    private final Deque<SpaceConnection> idle = new ArrayDeque<>();
+    private final List<SpaceConnection> all = new ArrayList<>();
+    private final AtomicLong waits = new AtomicLong();
+    private volatile long lastUsedNanos = System.nanoTime();
+    private boolean closed;
+
+    ReaderPool(String spaceId, int size, int statementCacheSize, Callable<Connection> opener) {
+        this.spaceId = spaceId;
+        this.statementCacheSize = statementCacheSize;
+        this.opener = opener;
+        this.permits = new Semaphore(size, true);
+    }
+
+    // null once the pool is closed; the caller opens a fresh pool
+    SpaceConnection take() throws Exception {
+        if (!permits.tryAcquire()) {
+            waits.incrementAndGet();
+            permits.acquire();
+        }
+        try {
+            synchronized (this) {
+                if (closed) {
+                    permits.release();
+                    return null;
+                }
+                SpaceConnection reader = idle.pollFirst();
+                if (reader != null) {
+                    return reader;
+                }
+            }
+            SpaceConnection reader = new SpaceConnection(spaceId, opener.call(), statementCacheSize, this);
+            synchronized (this) {
+                all.add(reader);
+            }
+            return reader;
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(SpaceConnection reader) {
+        lastUsedNanos = System.nanoTime();
+        boolean healthy = true;
+        try {
+            reader.connection().commit();
+        } catch (SQLException e) {
+            healthy = false;
+        }
+        synchronized (this) {
+            if (closed || !healthy) {
+                reader.closeHandle();
+                all.remove(reader);
+            } else {
+                idle.addFirst(reader);
+            }
+        }
+        permits.release();
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (SpaceConnection reader : idle) {
+            reader.closeHandle();
+            all.remove(reader);
+        }
+        idle.clear();
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    // connections handed out and not yet released
+    synchronized int active() {
+        return all.size() - idle.size();
+    }
+
+    long waits() {
+        return waits.get();
+    }
+
+    synchronized List<SpaceConnection> connections() {
+        return new ArrayList<>(all);
+    }
+}
@@ -0,0 +1,38 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+final class RecordTags {
+    private RecordTags() {}
+
+    static Set<String> of(StoredChange record) {
+        return of(record.getSystemTags(), record.getUserTags());
+    }
+
+    static Set<String> of(List<String> systemTags, List<String> userTags) {
+        Set<String> tags = new HashSet<>();
+        if (systemTags != null) {
+            tags.addAll(systemTags);
+        }
+        if (userTags != null) {
+            tags.addAll(userTags);
+        }
+        return tags;
+    }
+
+    static Set<String> former(Collection<String> previous, Collection<String> previousFormer, Set<String> next) {
+        if (previous.isEmpty() && (previousFormer == null || previousFormer.isEmpty())) {
+            return Collections.emptySet();
+        }
+        Set<String> former = new HashSet<>(previous);
+        if (previousFormer != null) {
+            former.addAll(previousFormer);
+        }
+        former.removeAll(next);
+        return former;
+    }
+}
@@ -0,0 +1,37 @@
+package com.anymind.promptrecorder.storage;
+
+// One version of a record as history keeps it; content is null in revision listings.
+public class Revision {
+    private final long rev;
+    private final boolean deleted;
+    private final String updatedAt;
+    private final String serverUpdatedAt;
+    private final String lastDeviceId;
+    private final String content;
+
+    public Revision(long rev, boolean deleted, String updatedAt, String serverUpdatedAt, String lastDeviceId,
+                    String content) {
+        this.rev = rev;
+        this.deleted = deleted;
+        this.updatedAt = updatedAt;
+        this.serverUpdatedAt = serverUpdatedAt;
+        this.lastDeviceId = lastDeviceId;
+        this.content = content;
+    }
+
+    static Revision of(StoredChange record, boolean withContent) {
+        return new Revision(record.getServerRev(), record.isDeleted(), record.getUpdatedAt(),
+            record.getServerUpdatedAt(), record.getLastDeviceId(), withContent ? record.getContent() : null);
+    }
+
+    Revision withContent(String content) {
+        return new Revision(rev, deleted, updatedAt, serverUpdatedAt, lastDeviceId, content);
+    }
+
+    public long getRev() { return rev; }
+    public boolean isDeleted() { return deleted; }
+    public String getUpdatedAt() { return updatedAt; }
+    public String getServerUpdatedAt() { return serverUpdatedAt; }
+    public String getLastDeviceId() { return lastDeviceId; }
+    public String getContent() { return content; }
+}
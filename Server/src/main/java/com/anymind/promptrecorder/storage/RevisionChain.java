@@ -0,0 +1,84 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Superseded versions of one record, oldest first. A link keeps its content as a delta against the
+// version after it (the next link, or the record's current content for the newest link). Once the
+// KEYFRAME_INTERVAL - 1 newest links are all deltas, the next link keeps its full text instead, so
+// rebuilding any version applies fewer than KEYFRAME_INTERVAL deltas.
+class RevisionChain {
+    static final int KEYFRAME_INTERVAL = 16;
+
+    private final List<Link> links = new ArrayList<>();
+
+    void supersede(StoredChange previous, String next) {
+        int deltas = 0;
+        for (int i = links.size() - 1; i >= 0 && !links.get(i).keyframe; i--) {
+            deltas++;
+        }
+        links.add(Link.of(Revision.of(previous, false), previous.getContent(), next, keyframeDue(deltas)));
+    }
+
+    // newest first, starting with the current version
+    List<Revision> revisions(StoredChange current) {
+        List<Revision> out = new ArrayList<>(links.size() + 1);
+        out.add(Revision.of(current, false));
+        for (int i = links.size() - 1; i >= 0; i--) {
+            out.add(links.get(i).revision);
+        }
+        return out;
+    }
+
+    // the version in effect at rev, or null when the record is younger than rev
+    Revision at(long rev, StoredChange current) {
+        if (current.getServerRev() <= rev) {
+            return Revision.of(current, true);
+        }
+        for (int i = links.size() - 1; i >= 0; i--) {
+            if (links.get(i).revision.getRev() <= rev) {
+                return links.get(i).revision.withContent(contentAt(links.subList(i, links.size()), current.getContent()));
+            }
+        }
+        return null;
+    }
+
+    static boolean keyframeDue(int deltasSinceKeyframe) {
+        return deltasSinceKeyframe >= KEYFRAME_INTERVAL - 1;
+    }
+
+    // upward starts at the wanted version and may stop at the first keyframe above it
+    static String contentAt(List<Link> upward, String current) {
+        int top = upward.size();
+        for (int i = 0; i < upward.size(); i++) {
+            if (upward.get(i).keyframe) {
+                top = i;
+                break;
+            }
+        }
+        String content = top < upward.size() ? upward.get(top).body : current;
+        for (int i = top - 1; i >= 0; i--) {
+            content = ContentDelta.decode(upward.get(i).body).applyTo(content);
+        }
+        return content;
+    }
+
+    static class Link {
+        final Revision revision;
+        final boolean keyframe;
+        final String body;
+
+        Link(Revision revision, boolean keyframe, String body) {
+            this.revision = revision;
+            this.keyframe = keyframe;
+            this.body = body;
+        }
+
+        static Link of(Revision revision, String content, String next, boolean keyframe) {
+            if (keyframe || content == null || next == null) {
+                return new Link(revision, true, content);
+            }
+            return new Link(revision, false, ContentDelta.between(next, content).encode());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.anymind.promptrecorder.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SpaceConnection implements AutoCloseable {
+    private final String spaceId;
+    private final Connection connection;
+    private final int statementCacheSize;
+    private final ReaderPool pool;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile boolean open = true;
+    private volatile long lastUsedNanos = System.nanoTime();
+    private String synchronous;
+    private volatile long writesSinceAnalyze;
+    private Boolean incrementalVacuum;
+
+    SpaceConnection(String spaceId, Connection connection, int statementCacheSize) {
+        this(spaceId, connection, statementCacheSize, null);
+    }
+
+    SpaceConnection(String spaceId, Connection connection, int statementCacheSize, ReaderPool pool) {
+        this.spaceId = spaceId;
+        this.connection = connection;
+        this.statementCacheSize = statementCacheSize;
+        this.pool = pool;
+    }
+
+    // readers are read-only pool connections; they are never locked, the pool hands each to one caller
+    public boolean isReader() {
+        return pool != null;
+    }
+
+    public String spaceId() {
+        return spaceId;
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "keys:" + sql : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null) {
+            hits.incrementAndGet();
+            return stmt;
+        }
+        misses.incrementAndGet();
+        stmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, stmt);
+        if (statements.size() > statementCacheSize) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            closeQuietly(eldest.next());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+        return stmt;
+    }
+
+    public void setSynchronous(String level) throws SQLException {
+        if (level.equals(synchronous)) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA synchronous=" + level + ";");
+        }
+        synchronous = level;
+    }
+
+    void recordWrites(int rows) {
+        writesSinceAnalyze += rows;
+    }
+
+    long writesSinceAnalyze() {
+        return writesSinceAnalyze;
+    }
+
+    void analyzed() {
+        writesSinceAnalyze = 0;
+    }
+
+    boolean incrementalVacuum() throws SQLException {
+        if (incrementalVacuum == null) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                incrementalVacuum = rs.next() && rs.getInt(1) == 2;
+            }
+        }
+        return incrementalVacuum;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    int cachedStatements() {
+        return statements.size();
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    boolean tryLock() {
+        return lock.tryLock();
+    }
+
+    // another caller is queued on the lock
+    boolean contended() {
+        return lock.hasQueuedThreads();
+    }
+
+    void unlock() {
+        lastUsedNanos = System.nanoTime();
+        lock.unlock();
+    }
+
+    void closeHandle() {
+        open = false;
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // the handle is discarded either way
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.release(this);
+            return;
+        }
+        unlock();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // a statement that fails to close is dropped from the cache anyway
+        }
+    }
+}
@@ -1,21 +1,58 @@
 package com.anymind.promptrecorder.storage;
 
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.sqlite.SQLiteConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class SpaceDatabase {
     private final StoragePaths paths;
+    private final int statementCacheSize;
+    private final int readersPerSpace;
+    private final ConcurrentMap<String, SpaceConnection> handles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ReaderPool> readers = new ConcurrentHashMap<>();
+    private final ColdStarts coldStarts = new ColdStarts();
 
     public SpaceDatabase(StoragePaths paths) {
+        this(paths, 32, 2);
+    }
+
+    @Autowired
+    public SpaceDatabase(StoragePaths paths,
+                         @Value("${storage.sqlite.statement-cache-size:32}") int statementCacheSize,
+                         @Value("${storage.sqlite.readers-per-space:2}") int readersPerSpace) {
         this.paths = paths;
+        this.statementCacheSize = statementCacheSize;
+        this.readersPerSpace = readersPerSpace;
+    }
+
+    public StorageRoot rootFor(String spaceId) {
+        return paths.rootFor(spaceId);
     }
 
     public Connection open(String spaceId) throws Exception {
+        paths.rootFor(spaceId).recordOpen();
         Path dir = paths.spaceDir(spaceId);
         Files.createDirectories(dir);
         Path dbPath = paths.spaceDb(spaceId);
@@ -25,8 +62,294 @@ public class SpaceDatabase {
         return conn;
     }
 
+    public SpaceConnection acquire(String spaceId) throws Exception {
+        while (true) {
+            SpaceConnection handle = handles.get(spaceId);
+            if (handle == null) {
+                long start = System.nanoTime();
+                SpaceConnection created = new SpaceConnection(spaceId, open(spaceId), statementCacheSize);
+                handle = handles.putIfAbsent(spaceId, created);
+                if (handle == null) {
+                    handle = created;
+                    coldStarts.opened(spaceId, System.nanoTime() - start);
+                } else {
+                    created.closeHandle();
+                }
+            }
+            handle.lock();
+            if (handle.isOpen()) {
+                return handle;
+            }
+            handle.unlock();
+        }
+    }
+
+    // a read-only connection with its own snapshot, so reads never wait for the writer's lock;
+    // with no readers configured this is the writer itself
+    public SpaceConnection acquireReader(String spaceId) throws Exception {
+        if (readersPerSpace <= 0) {
+            return acquire(spaceId);
+        }
+        while (true) {
+            ReaderPool pool = readers.get(spaceId);
+            if (pool == null) {
+                if (!handles.containsKey(spaceId)) {
+                    // the writer opens first: it creates the file and brings the schema up to date
+                    acquire(spaceId).close();
+                }
+                pool = readers.computeIfAbsent(spaceId,
+                    key -> new ReaderPool(key, readersPerSpace, statementCacheSize, () -> openReader(key)));
+            }
+            SpaceConnection reader = pool.take();
+            if (reader != null) {
+                return reader;
+            }
+            readers.remove(spaceId, pool);
+        }
+    }
+
+    // the writer if it is open and free right now, otherwise null
+    public SpaceConnection tryAcquire(String spaceId) {
+        SpaceConnection handle = handles.get(spaceId);
+        if (handle == null || !handle.tryLock()) {
+            return null;
+        }
+        if (!handle.isOpen()) {
+            handle.unlock();
+            return null;
+        }
+        return handle;
+    }
+
+    public boolean hasDatabase(String spaceId) {
+        return Files.exists(paths.spaceDb(spaceId));
+    }
+
+    // a read-only connection outside the reader pool for long reads such as exports; its first query
+    // starts one WAL snapshot that lasts until it is closed. It never opens the writer, so it is safe
+    // from another process, and it refuses a DB the server has not yet brought up to date. Null when
+    // the space has no DB yet.
+    public Connection openSnapshot(String spaceId) throws Exception {
+        Path dbPath = paths.spaceDb(spaceId);
+        if (!Files.exists(dbPath)) {
+            return null;
+        }
+        Connection conn = openReader(spaceId);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name IN " +
+                 "('records', 'changes', 'space_meta', 'record_revisions')")) {
+            if (!rs.next() || rs.getInt(1) < 4) {
+                throw new IllegalStateException("space " + spaceId + " at " + dbPath +
+                    " has an older schema; let the server open it once before exporting");
+            }
+        } catch (Exception e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private Connection openReader(String spaceId) throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + paths.spaceDb(spaceId), config.toProperties());
+        conn.setAutoCommit(false);
+        return conn;
+    }
+
+    public int hibernateIdle(long idleMillis) {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        int count = 0;
+        for (SpaceConnection handle : handles.values()) {
+            ReaderPool pool = readers.get(handle.spaceId());
+            if (handle.lastUsedNanos() > cutoff || (pool != null && pool.lastUsedNanos() > cutoff) || !handle.tryLock()) {
+                continue;
+            }
+            try {
+                if (!handle.isOpen() || handle.lastUsedNanos() > cutoff) {
+                    continue;
+                }
+                if (pool != null) {
+                    // readers still in use close when they are released
+                    readers.remove(handle.spaceId(), pool);
+                    pool.close();
+                }
+                try (Statement stmt = handle.connection().createStatement()) {
+                    stmt.execute("PRAGMA wal_checkpoint(TRUNCATE);");
+                } catch (Exception e) {
+                    // a failed checkpoint leaves the WAL for the next open to replay
+                }
+                handle.closeHandle();
+                handles.remove(handle.spaceId(), handle);
+                coldStarts.hibernated(handle.spaceId());
+                count++;
+            } finally {
+                handle.unlock();
+            }
+        }
+        return count;
+    }
+
+    public Map<String, Object> stats() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        long cached = 0;
+        List<SpaceConnection> all = new ArrayList<>(handles.values());
+        int openReaders = 0;
+        long readerWaits = 0;
+        for (ReaderPool pool : readers.values()) {
+            List<SpaceConnection> connections = pool.connections();
+            all.addAll(connections);
+            openReaders += connections.size();
+            readerWaits += pool.waits();
+        }
+        for (SpaceConnection handle : all) {
+            hits += handle.hits();
+            misses += handle.misses();
+            evictions += handle.evictions();
+            cached += handle.cachedStatements();
+        }
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("hits", hits);
+        cache.put("misses", misses);
+        cache.put("hit_rate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        cache.put("evictions", evictions);
+        cache.put("cached_statements", cached);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("open_connections", handles.size());
+        out.put("open_readers", openReaders);
+        out.put("reader_waits", readerWaits);
+        out.put("statement_cache", cache);
+        out.putAll(coldStarts.stats());
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (ReaderPool pool : readers.values()) {
+            pool.close();
+        }
+        readers.clear();
+        for (SpaceConnection handle : handles.values()) {
+            handle.lock();
+            try {
+                handle.closeHandle();
+            } finally {
+                handle.unlock();
+            }
+        }
+        handles.clear();
+    }
+
+    public void sync(String spaceId) throws Exception {
+        Path dbPath = paths.spaceDb(spaceId);
+        force(walPath(dbPath));
+        force(dbPath);
+    }
+
+    // runs on the writer, whose synchronous level the push already set. A busy space is skipped rather than
+    // waited on; its next commit reopens the window, and maintenance checkpoints a WAL that keeps growing.
+    // A hibernated space was checkpointed when it closed.
+    public boolean checkpoint(String spaceId) throws Exception {
+        SpaceConnection handle = tryAcquire(spaceId);
+        if (handle == null) {
+            return false;
+        }
+        try (Statement stmt = handle.connection().createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(PASSIVE);");
+        } finally {
+            handle.unlock();
+        }
+        return true;
+    }
+
+    Collection<SpaceConnection> openHandles() {
+        return handles.values();
+    }
+
+    boolean readersActive(String spaceId) {
+        ReaderPool pool = readers.get(spaceId);
+        return pool != null && pool.active() > 0;
+    }
+
+    boolean isOpen(String spaceId) {
+        return handles.containsKey(spaceId);
+    }
+
+    // every space with a DB file on any storage root, open or hibernated
+    List<String> spacesOnDisk() throws Exception {
+        List<Path> spaceRoots = new ArrayList<>();
+        for (StorageRoot storageRoot : paths.roots()) {
+            spaceRoots.add(storageRoot.path().resolve("spaces"));
+        }
+        Path primary = paths.root().resolve("spaces");
+        if (!spaceRoots.contains(primary)) {
+            spaceRoots.add(primary);
+        }
+        List<String> ids = new ArrayList<>();
+        for (Path spaceRoot : spaceRoots) {
+            if (!Files.isDirectory(spaceRoot)) {
+                continue;
+            }
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(spaceRoot)) {
+                for (Path dir : dirs) {
+                    String spaceId = dir.getFileName().toString();
+                    if (Files.exists(dir.resolve("space.sqlite")) && !ids.contains(spaceId)) {
+                        ids.add(spaceId);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    // a read-only connection that neither opens the writer nor touches the schema
+    Connection openReadOnly(String spaceId) throws Exception {
+        return openReader(spaceId);
+    }
+
+    Path dbPath(String spaceId) {
+        return paths.spaceDb(spaceId);
+    }
+
+    static Path walPath(Path dbPath) {
+        return dbPath.resolveSibling(dbPath.getFileName() + "-wal");
+    }
+
+    private static void force(Path file) throws Exception {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // recomputes what push keeps beside each record, for tools such as the dataset generator that
+    // write the records and changes tables directly
+    public void rebuildDerived(Connection conn) throws Exception {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            fillContentHashes(conn);
+            stmt.execute("DELETE FROM record_tags;");
+            fillRecordTags(conn);
+            stmt.execute("DELETE FROM merkle_leaves;");
+            fillMerkleLeaves(conn);
+            stmt.execute("DELETE FROM group_summaries;");
+            fillGroupSummaries(conn);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
     private void ensureSchema(Connection conn) throws Exception {
         try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL;");
             stmt.execute("PRAGMA journal_mode=WAL;");
             String recordsSql = "CREATE TABLE IF NOT EXISTS records (" +
                 "id TEXT PRIMARY KEY, " +
@@ -38,7 +361,9 @@ public class SpaceDatabase {
                 "deleted INTEGER NOT NULL DEFAULT 0, " +
                 "server_rev INTEGER NOT NULL, " +
                 "server_updated_at TEXT NOT NULL, " +
-                "last_device_id TEXT" +
+                "last_device_id TEXT, " +
+                "content_hash TEXT, " +
+                "bucket INTEGER" +
                 ");";
             stmt.execute(recordsSql);
             String changesSql = "CREATE TABLE IF NOT EXISTS changes (" +
@@ -49,6 +374,248 @@ public class SpaceDatabase {
                 ");";
             stmt.execute(changesSql);
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_changes_rev ON changes(rev);");
+            String cursorsSql = "CREATE TABLE IF NOT EXISTS device_cursors (" +
+                "device_id TEXT PRIMARY KEY, " +
+                "acked_rev INTEGER NOT NULL, " +
+                "last_seen_ms INTEGER NOT NULL" +
+                ");";
+            stmt.execute(cursorsSql);
+            String metaSql = "CREATE TABLE IF NOT EXISTS space_meta (" +
+                "key TEXT PRIMARY KEY, " +
+                "value INTEGER NOT NULL" +
+                ");";
+            stmt.execute(metaSql);
+            String receiptsSql = "CREATE TABLE IF NOT EXISTS push_receipts (" +
+                "device_id TEXT NOT NULL, " +
+                "request_id TEXT NOT NULL, " +
+                "response_json TEXT NOT NULL, " +
+                "PRIMARY KEY (device_id, request_id)" +
+                ");";
+            stmt.execute(receiptsSql);
+            // superseded versions only; the current one is the records row. Spaces upgraded from
+            // before this table start their history at the upgrade.
+            String revisionsSql = "CREATE TABLE IF NOT EXISTS record_revisions (" +
+                "record_id TEXT NOT NULL, " +
+                "rev INTEGER NOT NULL, " +
+                "deleted INTEGER NOT NULL, " +
+                "updated_at_client TEXT NOT NULL, " +
+                "server_updated_at TEXT NOT NULL, " +
+                "last_device_id TEXT, " +
+                "keyframe INTEGER NOT NULL, " +
+                "body TEXT NOT NULL, " +
+                "PRIMARY KEY (record_id, rev)" +
+                ") WITHOUT ROWID;";
+            stmt.execute(revisionsSql);
+        }
+        convertToIncrementalVacuum(conn);
+        backfillContentHashes(conn);
+        backfillRecordTags(conn);
+        backfillMerkleLeaves(conn);
+        backfillGroupSummaries(conn);
+    }
+
+    // auto_vacuum only takes effect on an empty DB, so one created before it was set needs a one-time
+    // VACUUM to switch. A failed attempt (an open read snapshot, too little disk for the copy) is
+    // retried on the next open; until then maintenance reports the space as vacuum_unavailable.
+    private static void convertToIncrementalVacuum(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+                if (!rs.next() || rs.getInt(1) != 0) {
+                    return;
+                }
+            }
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL;");
+            stmt.execute("VACUUM;");
+        } catch (Exception e) {
+            // the space keeps working without incremental vacuum
+        }
+    }
+
+    private void backfillGroupSummaries(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'group_summaries'")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            String summariesSql = "CREATE TABLE IF NOT EXISTS group_summaries (" +
+                "kind TEXT NOT NULL, " +
+                "key TEXT NOT NULL, " +
+                "count INTEGER NOT NULL, " +
+                "PRIMARY KEY (kind, key)" +
+                ") WITHOUT ROWID;";
+            stmt.execute(summariesSql);
+            fillGroupSummaries(conn);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void fillGroupSummaries(Connection conn) throws Exception {
+        GroupSummaries summaries = new GroupSummaries();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT created_at, system_tags_json, user_tags_json FROM records WHERE deleted = 0")) {
+            while (rs.next()) {
+                summaries.add(rs.getString("created_at"), RecordTags.of(JsonUtils.toList(rs.getString("system_tags_json")),
+                    JsonUtils.toList(rs.getString("user_tags_json"))));
+            }
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                 "INSERT OR REPLACE INTO group_summaries (kind, key, count) VALUES (?, ?, ?)")) {
+            for (String kind : GroupSummaries.KINDS) {
+                for (Map.Entry<String, Long> entry : summaries.counts(kind).entrySet()) {
+                    insert.setString(1, kind);
+                    insert.setString(2, entry.getKey());
+                    insert.setLong(3, entry.getValue());
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private void backfillMerkleLeaves(Connection conn) throws Exception {
+        boolean hasBucket;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM pragma_table_info('records') WHERE name = 'bucket'")) {
+            hasBucket = rs.next();
+        }
+        try (Statement stmt = conn.createStatement()) {
+            String leavesSql = "CREATE TABLE IF NOT EXISTS merkle_leaves (" +
+                "bucket INTEGER PRIMARY KEY, " +
+                "hash INTEGER NOT NULL, " +
+                "count INTEGER NOT NULL" +
+                ");";
+            stmt.execute(leavesSql);
+        }
+        if (!hasBucket) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE records ADD COLUMN bucket INTEGER;");
+                fillMerkleLeaves(conn);
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_records_bucket ON records(bucket);");
+        }
+    }
+
+    private static void fillMerkleLeaves(Connection conn) throws Exception {
+        MerkleTree tree = new MerkleTree();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, server_rev, deleted FROM records");
+             PreparedStatement update = conn.prepareStatement("UPDATE records SET bucket = ? WHERE id = ?")) {
+            while (rs.next()) {
+                String id = rs.getString("id");
+                update.setInt(1, MerkleTree.bucketOf(id));
+                update.setString(2, id);
+                update.executeUpdate();
+                if (rs.getInt("deleted") == 0) {
+                    tree.add(id, rs.getLong("server_rev"));
+                }
+            }
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                 "INSERT OR REPLACE INTO merkle_leaves (bucket, hash, count) VALUES (?, ?, ?)")) {
+            for (int bucket = 0; bucket < MerkleTree.LEAVES; bucket++) {
+                String prefix = MerkleTree.bucketPrefix(bucket);
+                if (tree.count(prefix) > 0) {
+                    insert.setInt(1, bucket);
+                    insert.setLong(2, tree.hash(prefix));
+                    insert.setInt(3, tree.count(prefix));
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private void backfillRecordTags(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'record_tags'")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            String tagsSql = "CREATE TABLE IF NOT EXISTS record_tags (" +
+                "record_id TEXT NOT NULL, " +
+                "tag TEXT NOT NULL, " +
+                "current INTEGER NOT NULL, " +
+                "PRIMARY KEY (record_id, tag)" +
+                ") WITHOUT ROWID;";
+            stmt.execute(tagsSql);
+            fillRecordTags(conn);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void fillRecordTags(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, system_tags_json, user_tags_json FROM records");
+             PreparedStatement insert = conn.prepareStatement(
+                 "INSERT OR IGNORE INTO record_tags (record_id, tag, current) VALUES (?, ?, 1)")) {
+            while (rs.next()) {
+                for (String tag : RecordTags.of(JsonUtils.toList(rs.getString("system_tags_json")),
+                    JsonUtils.toList(rs.getString("user_tags_json")))) {
+                    insert.setString(1, rs.getString("id"));
+                    insert.setString(2, tag);
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private void backfillContentHashes(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM pragma_table_info('records') WHERE name = 'content_hash'")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        // spaces created before content hashes get the column and every hash in one transaction
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE records ADD COLUMN content_hash TEXT;");
+            fillContentHashes(conn);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void fillContentHashes(Connection conn) throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, content, system_tags_json, user_tags_json, deleted FROM records");
+             PreparedStatement update = conn.prepareStatement("UPDATE records SET content_hash = ? WHERE id = ?")) {
+            while (rs.next()) {
+                update.setString(1, ContentHash.of(rs.getString("content"),
+                    JsonUtils.toList(rs.getString("system_tags_json")),
+                    JsonUtils.toList(rs.getString("user_tags_json")),
+                    rs.getInt("deleted") != 0));
+                update.setString(2, rs.getString("id"));
+                update.executeUpdate();
+            }
         }
     }
 }
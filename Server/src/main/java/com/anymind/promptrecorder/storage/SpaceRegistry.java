@@ -9,6 +9,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.stereotype.Component;
 
@@ -22,10 +24,10 @@ public class SpaceRegistry {
     }
 
     public SpaceInfo createSpace(String name) {
-        String spaceId = TokenGenerator.spaceId();
-        String spaceSecret = TokenGenerator.spaceSecret();
-        String createdAt = Instant.now().toString();
+        return registerSpace(TokenGenerator.spaceId(), TokenGenerator.spaceSecret(), name, Instant.now().toString());
+    }
 
+    public SpaceInfo registerSpace(String spaceId, String spaceSecret, String name, String createdAt) {
         String sql = "INSERT INTO spaces (space_id, space_secret, name, created_at) VALUES (?, ?, ?, ?)";
         try (Connection conn = openRegistry();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -62,6 +64,20 @@ public class SpaceRegistry {
         }
     }
 
+    public List<String> listSpaceIds() {
+        List<String> ids = new ArrayList<>();
+        try (Connection conn = openRegistry();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT space_id FROM spaces ORDER BY space_id")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to list spaces", e);
+        }
+        return ids;
+    }
+
     public boolean validateSecret(String spaceId, String secret) {
         return findSpace(spaceId)
             .map(info -> info.getSpaceSecret().equals(secret))
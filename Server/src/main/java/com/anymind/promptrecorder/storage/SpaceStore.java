@@ -0,0 +1,67 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public interface SpaceStore {
+    String engine();
+
+    PushResponse push(String spaceId, String deviceId, String requestId, List<ChangeRequest> changes);
+
+    default PushResponse push(String spaceId, String deviceId, List<ChangeRequest> changes) {
+        return push(spaceId, deviceId, null, changes);
+    }
+
+    ChangePage pull(String spaceId, PullQuery query);
+
+    // a pull from inside withSpaceLocked; it reads through the held lock, so the page includes that caller's writes
+    default ChangePage pullLocked(String spaceId, PullQuery query) {
+        return pull(spaceId, query);
+    }
+
+    List<StoredChange> fetch(String spaceId, Collection<String> recordIds);
+
+    MerkleTree merkleTree(String spaceId);
+
+    Map<String, Long> bucketEntries(String spaceId, int bucket);
+
+    // counts for one grouping (day, week or month) plus the tag counts
+    GroupSummaries summaries(String spaceId, String grouping);
+
+    // whether the engine keeps superseded versions for revisions and revisionAt
+    default boolean keepsHistory() {
+        return false;
+    }
+
+    // the current version followed by superseded ones, newest first, without content; empty when the record is unknown
+    default List<Revision> revisions(String spaceId, String recordId) {
+        return Collections.emptyList();
+    }
+
+    // the version in effect at rev, with content; null when the record did not exist yet
+    default Revision revisionAt(String spaceId, String recordId, long rev) {
+        return null;
+    }
+
+    // runs work while holding the space's write lock; engines lock reentrantly, so the work may push and pull
+    default <T> T withSpaceLocked(String spaceId, Supplier<T> work) {
+        return work.get();
+    }
+
+    default int collectTombstones(long activeAfterMillis) {
+        return 0;
+    }
+
+    default int hibernateIdle(long idleMillis) {
+        return 0;
+    }
+
+    default Map<String, Object> stats() {
+        return Collections.emptyMap();
+    }
+}
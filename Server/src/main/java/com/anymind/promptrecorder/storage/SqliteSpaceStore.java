@@ -0,0 +1,879 @@
+package com.anymind.promptrecorder.storage;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushResult;
+import com.anymind.promptrecorder.util.JsonUtils;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "sqlite", matchIfMissing = true)
+public class SqliteSpaceStore implements SpaceStore {
+    private static final long CURSOR_REFRESH_MILLIS = 60_000;
+
+    private final SpaceDatabase spaceDatabase;
+    private final DurabilityPolicy durability;
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong noops = new AtomicLong();
+    private final AtomicLong deferredAcks = new AtomicLong();
+    private final PullCoalescer coalescer = new PullCoalescer();
+    private final HotTails hotTails;
+
+    public SqliteSpaceStore(SpaceDatabase spaceDatabase) {
+        this(spaceDatabase, DurabilityPolicy.strict());
+    }
+
+    public SqliteSpaceStore(SpaceDatabase spaceDatabase, DurabilityPolicy durability) {
+        this(spaceDatabase, durability, 256, 64L * 1024 * 1024);
+    }
+
+    @Autowired
+    public SqliteSpaceStore(SpaceDatabase spaceDatabase, DurabilityPolicy durability,
+                            @Value("${storage.sqlite.hot-tail.changes-per-space:256}") int hotTailChanges,
+                            @Value("${storage.sqlite.hot-tail.max-bytes:67108864}") long hotTailBytes) {
+        this.spaceDatabase = spaceDatabase;
+        this.durability = durability;
+        this.hotTails = new HotTails(hotTailChanges, hotTailBytes);
+        durability.start(this::flush);
+    }
+
+    @Override
+    public String engine() {
+        return "sqlite";
+    }
+
+    @Override
+    public PushResponse push(String spaceId, String deviceId, String requestId, List<ChangeRequest> changes) {
+        List<PushResult> results = new ArrayList<>();
+        long maxRev = 0;
+        String now = Instant.now().toString();
+        DurabilityMode mode = durability.modeFor(spaceId);
+        PushResponse response;
+        int written = 0;
+        LeafDeltas leaves = new LeafDeltas();
+        GroupSummaries summaries = new GroupSummaries();
+        List<StoredChange> tail = new ArrayList<>();
+
+        try (SpaceConnection handle = spaceDatabase.acquire(spaceId)) {
+            if (requestId != null) {
+                PushResponse receipt = findReceipt(handle, deviceId, requestId);
+                if (receipt != null) {
+                    replays.incrementAndGet();
+                    return receipt;
+                }
+            }
+            Connection conn = handle.connection();
+            handle.setSynchronous(synchronousLevel(mode));
+            conn.setAutoCommit(false);
+            try {
+                if (changes != null) {
+                    for (ChangeRequest change : changes) {
+                        ExistingRecord existing = findExisting(handle, change.getId());
+                        String hash = ContentHash.of(change);
+                        if (existing != null && hash.equals(existing.contentHash)) {
+                            noops.incrementAndGet();
+                            results.add(new PushResult(change.getId(), existing.rev, existing.serverUpdatedAt, false));
+                            continue;
+                        }
+                        boolean conflict = change.getBaseRev() != null
+                            && existing != null
+                            && existing.rev > change.getBaseRev();
+
+                        long rev = insertChange(handle, change.getId(), change.isDeleted(), now);
+                        if (existing == null) {
+                            insertRecord(handle, change, hash, deviceId, rev, now);
+                        } else {
+                            supersede(handle, change.getId(), existing, change.getContent());
+                            updateRecord(handle, change, hash, deviceId, rev, now);
+                        }
+                        writeTags(handle, change.getId(), existing != null,
+                            RecordTags.of(change.getSystemTags(), change.getUserTags()));
+                        if (existing != null && !existing.deleted) {
+                            leaves.remove(change.getId(), existing.rev);
+                            summaries.remove(existing.createdAt, existing.tags);
+                        }
+                        if (!change.isDeleted()) {
+                            leaves.add(change.getId(), rev);
+                            summaries.add(existing == null ? change.getCreatedAt() : existing.createdAt,
+                                RecordTags.of(change.getSystemTags(), change.getUserTags()));
+                        }
+                        results.add(new PushResult(change.getId(), rev, now, conflict));
+                        tail.add(new StoredChange(rev, change.getId(), change.getContent(), copyOf(change.getSystemTags()),
+                            copyOf(change.getUserTags()), existing == null ? change.getCreatedAt() : existing.createdAt,
+                            change.getUpdatedAt(), change.isDeleted(), rev, now, deviceId));
+                        written++;
+                        maxRev = Math.max(maxRev, rev);
+                    }
+                }
+                writeLeaves(handle, leaves);
+                writeSummaries(handle, summaries);
+                maxRev = Math.max(maxRev, queryMaxRev(handle));
+                response = new PushResponse(results, maxRev, mode.wireName());
+                if (requestId != null) {
+                    saveReceipt(handle, deviceId, requestId, response);
+                }
+                conn.commit();
+                handle.recordWrites(written);
+                hotTails.append(spaceId, tail);
+                coalescer.committed(spaceId);
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Push failed", e);
+        }
+        durability.recordCommit(spaceId, mode);
+        spaceDatabase.rootFor(spaceId).recordWrite(written);
+
+        return response;
+    }
+
+    @Override
+    public ChangePage pull(String spaceId, PullQuery query) {
+        boolean[] loaded = new boolean[1];
+        ChangePage page;
+        try {
+            page = hotTails.pull(spaceId, query);
+            if (page != null) {
+                ackShared(spaceId, query);
+                spaceDatabase.rootFor(spaceId).recordRead(page.getChanges().size());
+                return page;
+            }
+            page = coalescer.pull(spaceId, query, () -> {
+                loaded[0] = true;
+                return loadPage(spaceId, query, false);
+            });
+            if (!loaded[0]) {
+                // the page came from another pull's query; this device's cursor is still its own
+                ackShared(spaceId, query);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Pull failed", e);
+        }
+        spaceDatabase.rootFor(spaceId).recordRead(page.getChanges().size());
+        return page;
+    }
+
+    // skips the ring and the coalescer: a shared flight may have taken its snapshot before the caller's push
+    @Override
+    public ChangePage pullLocked(String spaceId, PullQuery query) {
+        ChangePage page;
+        try {
+            page = loadPage(spaceId, query, true);
+        } catch (Exception e) {
+            throw new IllegalStateException("Pull failed", e);
+        }
+        spaceDatabase.rootFor(spaceId).recordRead(page.getChanges().size());
+        return page;
+    }
+
+    private ChangePage loadPage(String spaceId, PullQuery query, boolean onWriter) throws Exception {
+        List<StoredChange> changes = new ArrayList<>();
+        long maxRev;
+
+        // record_tags keeps tags a record has lost, so a filtered device still sees it leave
+        String sql = "SELECT c.rev, r.id, r.content, r.system_tags_json, r.user_tags_json, " +
+            "r.created_at, r.updated_at_client, r.deleted, r.server_rev, r.server_updated_at, r.last_device_id " +
+            "FROM changes c " +
+            "JOIN records r ON r.id = c.record_id " +
+            "WHERE c.rev > ? " +
+            (query.isFiltered()
+                ? "AND EXISTS (SELECT 1 FROM record_tags t WHERE t.record_id = c.record_id " +
+                    "AND t.tag IN (SELECT value FROM json_each(?))) "
+                : "") +
+            "ORDER BY c.rev ASC " +
+            "LIMIT ?;";
+
+        try (SpaceConnection handle = onWriter ? spaceDatabase.acquire(spaceId) : spaceDatabase.acquireReader(spaceId)) {
+            ackDevice(spaceId, handle, query.getDeviceId(), query.getSinceRev());
+            if (query.getSinceRev() > 0 && query.getSinceRev() < purgedThrough(handle)) {
+                return ChangePage.resetRequired(queryMaxRev(handle));
+            }
+            PreparedStatement stmt = handle.prepare(sql);
+            int param = 1;
+            stmt.setLong(param++, query.getSinceRev());
+            if (query.isFiltered()) {
+                stmt.setString(param++, JsonUtils.toJson(new ArrayList<>(query.getTags())));
+            }
+            stmt.setInt(param, query.getLimit());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new StoredChange(
+                        rs.getLong("rev"),
+                        rs.getString("id"),
+                        rs.getString("content"),
+                        JsonUtils.toList(rs.getString("system_tags_json")),
+                        JsonUtils.toList(rs.getString("user_tags_json")),
+                        rs.getString("created_at"),
+                        rs.getString("updated_at_client"),
+                        rs.getInt("deleted") != 0,
+                        rs.getLong("server_rev"),
+                        rs.getString("server_updated_at"),
+                        rs.getString("last_device_id")
+                    ));
+                }
+            }
+            maxRev = queryMaxRev(handle);
+        }
+        return new ChangePage(changes, maxRev);
+    }
+
+    @Override
+    public List<StoredChange> fetch(String spaceId, Collection<String> recordIds) {
+        List<StoredChange> found = new ArrayList<>();
+        String sql = "SELECT id, content, system_tags_json, user_tags_json, created_at, updated_at_client, deleted, " +
+            "server_rev, server_updated_at, last_device_id " +
+            "FROM records WHERE id IN (SELECT value FROM json_each(?))";
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId)) {
+            PreparedStatement stmt = handle.prepare(sql);
+            stmt.setString(1, JsonUtils.toJson(new ArrayList<>(recordIds)));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    found.add(new StoredChange(
+                        rs.getLong("server_rev"),
+                        rs.getString("id"),
+                        rs.getString("content"),
+                        JsonUtils.toList(rs.getString("system_tags_json")),
+                        JsonUtils.toList(rs.getString("user_tags_json")),
+                        rs.getString("created_at"),
+                        rs.getString("updated_at_client"),
+                        rs.getInt("deleted") != 0,
+                        rs.getLong("server_rev"),
+                        rs.getString("server_updated_at"),
+                        rs.getString("last_device_id")
+                    ));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Fetch failed", e);
+        }
+        spaceDatabase.rootFor(spaceId).recordRead(found.size());
+        return found;
+    }
+
+    @Override
+    public int collectTombstones(long activeAfterMillis) {
+        int purged = 0;
+        for (SpaceConnection handle : spaceDatabase.openHandles()) {
+            if (!handle.tryLock()) {
+                continue;
+            }
+            try {
+                if (handle.isOpen()) {
+                    int collected = collectTombstones(handle, activeAfterMillis);
+                    if (collected > 0) {
+                        // the ring still holds rows the purge removed
+                        hotTails.drop(handle.spaceId());
+                        coalescer.committed(handle.spaceId());
+                    }
+                    purged += collected;
+                }
+            } catch (Exception e) {
+                // the purge runs in one transaction; a failed space is retried on the next pass
+            } finally {
+                handle.unlock();
+            }
+        }
+        List<String> hibernated;
+        try {
+            hibernated = spaceDatabase.spacesOnDisk();
+        } catch (Exception e) {
+            return purged;
+        }
+        for (String spaceId : hibernated) {
+            if (spaceDatabase.isOpen(spaceId) || !hasPurgeableTombstones(spaceId, activeAfterMillis)) {
+                continue;
+            }
+            // reopened only for the purge; hibernation closes it again once it sits idle
+            try (SpaceConnection handle = spaceDatabase.acquire(spaceId)) {
+                int collected = collectTombstones(handle, activeAfterMillis);
+                if (collected > 0) {
+                    hotTails.drop(spaceId);
+                    coalescer.committed(spaceId);
+                }
+                purged += collected;
+            } catch (Exception e) {
+                // retried on the next pass
+            }
+        }
+        return purged;
+    }
+
+    // a cheap read-only probe, so a hibernated space is opened only when a purge would remove something
+    private boolean hasPurgeableTombstones(String spaceId, long activeAfterMillis) {
+        try (Connection conn = spaceDatabase.openReadOnly(spaceId)) {
+            long horizon;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*), MIN(acked_rev) FROM device_cursors WHERE last_seen_ms >= ?")) {
+                stmt.setLong(1, activeAfterMillis);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next() || rs.getLong(1) == 0) {
+                        return false;
+                    }
+                    horizon = rs.getLong(2);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT 1 FROM records WHERE deleted = 1 AND server_rev <= ? LIMIT 1")) {
+                stmt.setLong(1, horizon);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        } catch (Exception e) {
+            // a DB from before device cursors has nothing collectable yet
+            return false;
+        }
+    }
+
+    @Override
+    public <T> T withSpaceLocked(String spaceId, Supplier<T> work) {
+        SpaceConnection handle;
+        try {
+            handle = spaceDatabase.acquire(spaceId);
+        } catch (Exception e) {
+            throw new IllegalStateException("Space open failed", e);
+        }
+        try {
+            return work.get();
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public boolean keepsHistory() {
+        return true;
+    }
+
+    @Override
+    public List<Revision> revisions(String spaceId, String recordId) {
+        List<Revision> revisions = new ArrayList<>();
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId)) {
+            Revision current = currentRevision(handle, recordId);
+            if (current == null) {
+                return revisions;
+            }
+            revisions.add(current.withContent(null));
+            PreparedStatement stmt = handle.prepare("SELECT rev, deleted, updated_at_client, server_updated_at, last_device_id " +
+                "FROM record_revisions WHERE record_id = ? ORDER BY rev DESC");
+            stmt.setString(1, recordId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    revisions.add(readRevision(rs));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("History read failed", e);
+        }
+        return revisions;
+    }
+
+    @Override
+    public Revision revisionAt(String spaceId, String recordId, long rev) {
+        List<RevisionChain.Link> upward = new ArrayList<>();
+        Revision current;
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId)) {
+            current = currentRevision(handle, recordId);
+            if (current == null || current.getRev() <= rev) {
+                return current;
+            }
+            PreparedStatement stmt = handle.prepare(
+                "SELECT rev, deleted, updated_at_client, server_updated_at, last_device_id, keyframe, body " +
+                    "FROM record_revisions WHERE record_id = ? AND rev >= " +
+                    "(SELECT MAX(rev) FROM record_revisions WHERE record_id = ? AND rev <= ?) ORDER BY rev ASC");
+            stmt.setString(1, recordId);
+            stmt.setString(2, recordId);
+            stmt.setLong(3, rev);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    RevisionChain.Link link = new RevisionChain.Link(readRevision(rs), rs.getInt("keyframe") != 0,
+                        rs.getString("body"));
+                    upward.add(link);
+                    if (link.keyframe) {
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("History read failed", e);
+        }
+        if (upward.isEmpty()) {
+            return null;
+        }
+        return upward.get(0).revision.withContent(RevisionChain.contentAt(upward, current.getContent()));
+    }
+
+    @Override
+    public MerkleTree merkleTree(String spaceId) {
+        MerkleTree tree = new MerkleTree();
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId);
+             ResultSet rs = handle.prepare("SELECT bucket, hash, count FROM merkle_leaves").executeQuery()) {
+            while (rs.next()) {
+                tree.set(rs.getInt(1), rs.getLong(2), rs.getInt(3));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Tree read failed", e);
+        }
+        return tree;
+    }
+
+    @Override
+    public Map<String, Long> bucketEntries(String spaceId, int bucket) {
+        Map<String, Long> entries = new TreeMap<>();
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId)) {
+            PreparedStatement stmt = handle.prepare(
+                "SELECT id, server_rev FROM records WHERE bucket = ? AND deleted = 0");
+            stmt.setInt(1, bucket);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Tree read failed", e);
+        }
+        return entries;
+    }
+
+    @Override
+    public GroupSummaries summaries(String spaceId, String grouping) {
+        GroupSummaries summaries = new GroupSummaries();
+        try (SpaceConnection handle = spaceDatabase.acquireReader(spaceId)) {
+            PreparedStatement stmt = handle.prepare(
+                "SELECT kind, key, count FROM group_summaries WHERE kind IN (?, ?)");
+            stmt.setString(1, grouping);
+            stmt.setString(2, GroupSummaries.TAG);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    summaries.apply(rs.getString(1), rs.getString(2), rs.getLong(3));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Summary read failed", e);
+        }
+        return summaries;
+    }
+
+    @Override
+    public int hibernateIdle(long idleMillis) {
+        int hibernated = spaceDatabase.hibernateIdle(idleMillis);
+        if (hibernated > 0) {
+            Set<String> open = new HashSet<>();
+            for (SpaceConnection handle : spaceDatabase.openHandles()) {
+                open.add(handle.spaceId());
+            }
+            hotTails.retain(open);
+            coalescer.retain(open);
+        }
+        return hibernated;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>(spaceDatabase.stats());
+        out.put("push_replays", replays.get());
+        out.put("unchanged_skipped", noops.get());
+        out.put("cursor_acks_deferred", deferredAcks.get());
+        out.putAll(coalescer.stats());
+        out.put("hot_tail", hotTails.stats());
+        return out;
+    }
+
+    private PushResponse findReceipt(SpaceConnection handle, String deviceId, String requestId) throws Exception {
+        PreparedStatement stmt = handle.prepare(
+            "SELECT response_json FROM push_receipts WHERE device_id = ? AND request_id = ?");
+        stmt.setString(1, deviceId == null ? "" : deviceId);
+        stmt.setString(2, requestId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? JsonUtils.read(rs.getString(1), PushResponse.class) : null;
+        }
+    }
+
+    private void saveReceipt(SpaceConnection handle, String deviceId, String requestId, PushResponse response)
+        throws Exception {
+        String device = deviceId == null ? "" : deviceId;
+        PreparedStatement insert = handle.prepare(
+            "INSERT OR REPLACE INTO push_receipts (device_id, request_id, response_json) VALUES (?, ?, ?)");
+        insert.setString(1, device);
+        insert.setString(2, requestId);
+        insert.setString(3, JsonUtils.write(response));
+        insert.executeUpdate();
+        PreparedStatement prune = handle.prepare(
+            "DELETE FROM push_receipts WHERE device_id = ? AND rowid NOT IN " +
+                "(SELECT rowid FROM push_receipts WHERE device_id = ? ORDER BY rowid DESC LIMIT ?)");
+        prune.setString(1, device);
+        prune.setString(2, device);
+        prune.setInt(3, PushReceipts.PER_DEVICE);
+        prune.executeUpdate();
+    }
+
+    private int collectTombstones(SpaceConnection handle, long activeAfterMillis) throws Exception {
+        Connection conn = handle.connection();
+        PreparedStatement prune = handle.prepare("DELETE FROM device_cursors WHERE last_seen_ms < ?");
+        prune.setLong(1, activeAfterMillis);
+        prune.executeUpdate();
+        long horizon;
+        try (ResultSet rs = handle.prepare("SELECT COUNT(*), MIN(acked_rev) FROM device_cursors").executeQuery()) {
+            if (!rs.next() || rs.getLong(1) == 0) {
+                return 0;
+            }
+            horizon = rs.getLong(2);
+        }
+        conn.setAutoCommit(false);
+        try {
+            PreparedStatement changes = handle.prepare("DELETE FROM changes WHERE rev <= ? AND record_id IN " +
+                "(SELECT id FROM records WHERE deleted = 1 AND server_rev <= ?)");
+            changes.setLong(1, horizon);
+            changes.setLong(2, horizon);
+            changes.executeUpdate();
+            PreparedStatement revisions = handle.prepare("DELETE FROM record_revisions WHERE record_id IN " +
+                "(SELECT id FROM records WHERE deleted = 1 AND server_rev <= ?)");
+            revisions.setLong(1, horizon);
+            revisions.executeUpdate();
+            PreparedStatement tags = handle.prepare("DELETE FROM record_tags WHERE record_id IN " +
+                "(SELECT id FROM records WHERE deleted = 1 AND server_rev <= ?)");
+            tags.setLong(1, horizon);
+            tags.executeUpdate();
+            PreparedStatement records = handle.prepare("DELETE FROM records WHERE deleted = 1 AND server_rev <= ?");
+            records.setLong(1, horizon);
+            int purged = records.executeUpdate();
+            if (purged > 0) {
+                PreparedStatement marker = handle.prepare("INSERT INTO space_meta (key, value) VALUES ('purged_through', ?) " +
+                    "ON CONFLICT(key) DO UPDATE SET value = MAX(value, excluded.value)");
+                marker.setLong(1, horizon);
+                marker.executeUpdate();
+            }
+            conn.commit();
+            return purged;
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void ackShared(String spaceId, PullQuery query) throws Exception {
+        SpaceConnection writer = spaceDatabase.tryAcquire(spaceId);
+        if (writer == null) {
+            deferredAcks.incrementAndGet();
+            return;
+        }
+        try {
+            ackDevice(spaceId, writer, query.getDeviceId(), query.getSinceRev());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void ackDevice(String spaceId, SpaceConnection handle, String deviceId, long sinceRev) throws Exception {
+        // anonymous pullers cannot be tracked, so they pin the purge horizon at zero
+        String key = deviceId == null ? "" : deviceId;
+        long acked = deviceId == null ? 0 : sinceRev;
+        long now = System.currentTimeMillis();
+        PreparedStatement select = handle.prepare("SELECT acked_rev, last_seen_ms FROM device_cursors WHERE device_id = ?");
+        select.setString(1, key);
+        try (ResultSet rs = select.executeQuery()) {
+            if (rs.next() && rs.getLong(1) == acked && now - rs.getLong(2) < CURSOR_REFRESH_MILLIS) {
+                return;
+            }
+        }
+        // a pull on a reader only writes the cursor when the writer is free; a skipped refresh can hold a
+        // purge back, and a device that falls behind a purge is told to resync
+        SpaceConnection writer = handle.isReader() ? spaceDatabase.tryAcquire(spaceId) : handle;
+        if (writer == null) {
+            deferredAcks.incrementAndGet();
+            return;
+        }
+        try {
+            PreparedStatement upsert = writer.prepare("INSERT INTO device_cursors (device_id, acked_rev, last_seen_ms) VALUES (?, ?, ?) " +
+                "ON CONFLICT(device_id) DO UPDATE SET acked_rev = excluded.acked_rev, last_seen_ms = excluded.last_seen_ms");
+            upsert.setString(1, key);
+            upsert.setLong(2, acked);
+            upsert.setLong(3, now);
+            upsert.executeUpdate();
+        } finally {
+            if (writer != handle) {
+                writer.close();
+            }
+        }
+    }
+
+    private long purgedThrough(SpaceConnection handle) throws Exception {
+        try (ResultSet rs = handle.prepare("SELECT value FROM space_meta WHERE key = 'purged_through'").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void flush(String spaceId, DurabilityMode mode) throws Exception {
+        if (mode == DurabilityMode.GROUPED) {
+            spaceDatabase.sync(spaceId);
+        } else if (mode == DurabilityMode.RELAXED) {
+            spaceDatabase.checkpoint(spaceId);
+        }
+    }
+
+    private static List<String> copyOf(List<String> tags) {
+        return tags == null ? Collections.<String>emptyList() : new ArrayList<>(tags);
+    }
+
+    // OFF would skip the fsync before a checkpoint resets the WAL, so a crash could corrupt the DB file;
+    // NORMAL only risks the commits since the last flush
+    private static String synchronousLevel(DurabilityMode mode) {
+        return mode == DurabilityMode.STRICT ? "FULL" : "NORMAL";
+    }
+
+    private Revision currentRevision(SpaceConnection handle, String recordId) throws Exception {
+        PreparedStatement stmt = handle.prepare("SELECT server_rev AS rev, deleted, updated_at_client, server_updated_at, " +
+            "last_device_id, content FROM records WHERE id = ?");
+        stmt.setString(1, recordId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? readRevision(rs).withContent(rs.getString("content")) : null;
+        }
+    }
+
+    private static Revision readRevision(ResultSet rs) throws Exception {
+        return new Revision(rs.getLong("rev"), rs.getInt("deleted") != 0, rs.getString("updated_at_client"),
+            rs.getString("server_updated_at"), rs.getString("last_device_id"), null);
+    }
+
+    // keeps the version being replaced as a delta against its successor, or whole when a keyframe is due
+    private void supersede(SpaceConnection handle, String recordId, ExistingRecord existing, String next) throws Exception {
+        PreparedStatement recent = handle.prepare(
+            "SELECT keyframe FROM record_revisions WHERE record_id = ? ORDER BY rev DESC LIMIT ?");
+        recent.setString(1, recordId);
+        recent.setInt(2, RevisionChain.KEYFRAME_INTERVAL - 1);
+        int deltas = 0;
+        try (ResultSet rs = recent.executeQuery()) {
+            while (rs.next() && rs.getInt(1) == 0) {
+                deltas++;
+            }
+        }
+        RevisionChain.Link link = RevisionChain.Link.of(new Revision(existing.rev, existing.deleted, existing.updatedAt,
+            existing.serverUpdatedAt, existing.lastDeviceId, null), existing.content, next, RevisionChain.keyframeDue(deltas));
+        PreparedStatement insert = handle.prepare("INSERT OR REPLACE INTO record_revisions " +
+            "(record_id, rev, deleted, updated_at_client, server_updated_at, last_device_id, keyframe, body) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        insert.setString(1, recordId);
+        insert.setLong(2, existing.rev);
+        insert.setInt(3, existing.deleted ? 1 : 0);
+        insert.setString(4, existing.updatedAt);
+        insert.setString(5, existing.serverUpdatedAt);
+        insert.setString(6, existing.lastDeviceId);
+        insert.setInt(7, link.keyframe ? 1 : 0);
+        insert.setString(8, link.body);
+        insert.executeUpdate();
+    }
+
+    private ExistingRecord findExisting(SpaceConnection handle, String id) throws Exception {
+        PreparedStatement stmt = handle.prepare(
+            "SELECT server_rev, server_updated_at, content_hash, deleted, created_at, system_tags_json, user_tags_json, " +
+                "content, updated_at_client, last_device_id FROM records WHERE id = ?");
+        stmt.setString(1, id);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                return null;
+            }
+            return new ExistingRecord(rs.getLong("server_rev"), rs.getString("server_updated_at"),
+                rs.getString("content_hash"), rs.getInt("deleted") != 0, rs.getString("created_at"),
+                RecordTags.of(JsonUtils.toList(rs.getString("system_tags_json")),
+                    JsonUtils.toList(rs.getString("user_tags_json"))),
+                rs.getString("content"), rs.getString("updated_at_client"), rs.getString("last_device_id"));
+        }
+    }
+
+    private long insertChange(SpaceConnection handle, String recordId, boolean deleted, String now) throws Exception {
+        String sql = "INSERT INTO changes (record_id, deleted, server_updated_at) VALUES (?, ?, ?)";
+        PreparedStatement stmt = handle.prepare(sql, Statement.RETURN_GENERATED_KEYS);
+        stmt.setString(1, recordId);
+        stmt.setInt(2, deleted ? 1 : 0);
+        stmt.setString(3, now);
+        stmt.executeUpdate();
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            if (keys.next()) {
+                return keys.getLong(1);
+            }
+        }
+        throw new IllegalStateException("Failed to create change record");
+    }
+
+    private void insertRecord(SpaceConnection handle, ChangeRequest change, String hash, String deviceId, long rev, String now)
+        throws Exception {
+        String sql = "INSERT INTO records " +
+            "(id, content, system_tags_json, user_tags_json, created_at, updated_at_client, deleted, server_rev, server_updated_at, last_device_id, content_hash, bucket) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        PreparedStatement stmt = handle.prepare(sql);
+        stmt.setString(1, change.getId());
+        stmt.setString(2, change.getContent());
+        stmt.setString(3, JsonUtils.toJson(change.getSystemTags()));
+        stmt.setString(4, JsonUtils.toJson(change.getUserTags()));
+        stmt.setString(5, change.getCreatedAt());
+        stmt.setString(6, change.getUpdatedAt());
+        stmt.setInt(7, change.isDeleted() ? 1 : 0);
+        stmt.setLong(8, rev);
+        stmt.setString(9, now);
+        stmt.setString(10, deviceId);
+        stmt.setString(11, hash);
+        stmt.setInt(12, MerkleTree.bucketOf(change.getId()));
+        stmt.executeUpdate();
+    }
+
+    private void updateRecord(SpaceConnection handle, ChangeRequest change, String hash, String deviceId, long rev, String now)
+        throws Exception {
+        String sql = "UPDATE records SET " +
+            "content = ?, " +
+            "system_tags_json = ?, " +
+            "user_tags_json = ?, " +
+            "updated_at_client = ?, " +
+            "deleted = ?, " +
+            "server_rev = ?, " +
+            "server_updated_at = ?, " +
+            "last_device_id = ?, " +
+            "content_hash = ? " +
+            "WHERE id = ?";
+        PreparedStatement stmt = handle.prepare(sql);
+        stmt.setString(1, change.getContent());
+        stmt.setString(2, JsonUtils.toJson(change.getSystemTags()));
+        stmt.setString(3, JsonUtils.toJson(change.getUserTags()));
+        stmt.setString(4, change.getUpdatedAt());
+        stmt.setInt(5, change.isDeleted() ? 1 : 0);
+        stmt.setLong(6, rev);
+        stmt.setString(7, now);
+        stmt.setString(8, deviceId);
+        stmt.setString(9, hash);
+        stmt.setString(10, change.getId());
+        stmt.executeUpdate();
+    }
+
+    private void writeTags(SpaceConnection handle, String recordId, boolean existing, Set<String> tags) throws Exception {
+        if (existing) {
+            PreparedStatement retire = handle.prepare("UPDATE record_tags SET current = 0 WHERE record_id = ?");
+            retire.setString(1, recordId);
+            retire.executeUpdate();
+        }
+        PreparedStatement upsert = handle.prepare("INSERT INTO record_tags (record_id, tag, current) VALUES (?, ?, 1) " +
+            "ON CONFLICT(record_id, tag) DO UPDATE SET current = 1");
+        for (String tag : tags) {
+            upsert.setString(1, recordId);
+            upsert.setString(2, tag);
+            upsert.executeUpdate();
+        }
+    }
+
+    private void writeLeaves(SpaceConnection handle, LeafDeltas leaves) throws Exception {
+        PreparedStatement select = handle.prepare("SELECT hash, count FROM merkle_leaves WHERE bucket = ?");
+        PreparedStatement upsert = handle.prepare("INSERT OR REPLACE INTO merkle_leaves (bucket, hash, count) VALUES (?, ?, ?)");
+        for (Map.Entry<Integer, long[]> entry : leaves.entrySet()) {
+            long hash = entry.getValue()[0];
+            long count = entry.getValue()[1];
+            select.setInt(1, entry.getKey());
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    hash ^= rs.getLong(1);
+                    count += rs.getLong(2);
+                }
+            }
+            upsert.setInt(1, entry.getKey());
+            upsert.setLong(2, hash);
+            upsert.setLong(3, count);
+            upsert.executeUpdate();
+        }
+    }
+
+    private long queryMaxRev(SpaceConnection handle) throws Exception {
+        // the AUTOINCREMENT sequence survives purged change rows, unlike MAX(rev)
+        PreparedStatement stmt = handle.prepare(
+            "SELECT IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'changes'), 0) AS max_rev");
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getLong("max_rev");
+            }
+            return 0;
+        }
+    }
+
+    private void writeSummaries(SpaceConnection handle, GroupSummaries deltas) throws Exception {
+        PreparedStatement upsert = handle.prepare("INSERT INTO group_summaries (kind, key, count) VALUES (?, ?, ?) " +
+            "ON CONFLICT (kind, key) DO UPDATE SET count = count + excluded.count");
+        PreparedStatement prune = handle.prepare(
+            "DELETE FROM group_summaries WHERE kind = ? AND key = ? AND count <= 0");
+        for (String kind : GroupSummaries.KINDS) {
+            for (Map.Entry<String, Long> entry : deltas.counts(kind).entrySet()) {
+                upsert.setString(1, kind);
+                upsert.setString(2, entry.getKey());
+                upsert.setLong(3, entry.getValue());
+                upsert.executeUpdate();
+                if (entry.getValue() < 0) {
+                    prune.setString(1, kind);
+                    prune.setString(2, entry.getKey());
+                    prune.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static class ExistingRecord {
+        private final long rev;
+        private final String serverUpdatedAt;
+        private final String contentHash;
+        private final boolean deleted;
+        private final String createdAt;
+        private final Set<String> tags;
+        private final String content;
+        private final String updatedAt;
+        private final String lastDeviceId;
+
+        private ExistingRecord(long rev, String serverUpdatedAt, String contentHash, boolean deleted, String createdAt,
+                               Set<String> tags, String content, String updatedAt, String lastDeviceId) {
+            this.rev = rev;
+            this.serverUpdatedAt = serverUpdatedAt;
+            this.contentHash = contentHash;
+            this.deleted = deleted;
+            this.createdAt = createdAt;
+            this.tags = tags;
+            this.content = content;
+            this.updatedAt = updatedAt;
+            this.lastDeviceId = lastDeviceId;
+        }
+    }
+
+    private static class LeafDeltas extends HashMap<Integer, long[]> {
+        void add(String recordId, long rev) {
+            apply(recordId, rev, 1);
+        }
+
+        void remove(String recordId, long rev) {
+            apply(recordId, rev, -1);
+        }
+
+        private void apply(String recordId, long rev, int count) {
+            long[] delta = computeIfAbsent(MerkleTree.bucketOf(recordId), bucket -> new long[2]);
+            delta[0] ^= MerkleTree.entryHash(recordId, rev);
+            delta[1] += count;
+        }
+    }
+}
@@ -1,16 +1,43 @@
 package com.anymind.promptrecorder.storage;
 
+import com.anymind.promptrecorder.util.HashRing;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class StoragePaths {
     private final Path root;
+    private final StorageRoot primary;
+    private final List<StorageRoot> roots;
+    private final HashRing<StorageRoot> ring = new HashRing<>();
+    private final long minFreeBytes;
+    private final ConcurrentMap<String, StorageRoot> placements = new ConcurrentHashMap<>();
 
-    public StoragePaths(@Value("${storage.root:data}") String rootDir) {
+    public StoragePaths(String rootDir) {
+        this(rootDir, "", 0);
+    }
+
+    @Autowired
+    public StoragePaths(@Value("${storage.root:data}") String rootDir,
+                        @Value("${storage.roots:}") String rootsSpec,
+                        @Value("${storage.min-free-mb:0}") long minFreeMb) {
         this.root = Paths.get(rootDir).toAbsolutePath();
+        this.primary = new StorageRoot(root, 1);
+        this.roots = parseRoots(rootsSpec, primary);
+        this.minFreeBytes = minFreeMb * 1024 * 1024;
+        for (StorageRoot storageRoot : roots) {
+            ring.add(storageRoot.path().toString(), storageRoot, storageRoot.weight());
+        }
     }
 
     public Path root() {
@@ -21,11 +48,74 @@ public class StoragePaths {
         return root.resolve("registry.sqlite");
     }
 
+    public List<StorageRoot> roots() {
+        return roots;
+    }
+
+    public StorageRoot rootFor(String spaceId) {
+        StorageRoot cached = placements.get(spaceId);
+        if (cached != null) {
+            return cached;
+        }
+        return placements.computeIfAbsent(spaceId, this::locate);
+    }
+
     public Path spaceDir(String spaceId) {
-        return root.resolve("spaces").resolve(spaceId);
+        return rootFor(spaceId).spaceDir(spaceId);
     }
 
     public Path spaceDb(String spaceId) {
         return spaceDir(spaceId).resolve("space.sqlite");
     }
+
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (StorageRoot storageRoot : roots) {
+            out.add(storageRoot.stats());
+        }
+        return out;
+    }
+
+    private StorageRoot locate(String spaceId) {
+        List<StorageRoot> candidates = ring.candidates(spaceId);
+        for (StorageRoot candidate : candidates) {
+            if (Files.exists(candidate.spaceDir(spaceId))) {
+                return candidate;
+            }
+        }
+        if (!roots.contains(primary) && Files.exists(primary.spaceDir(spaceId))) {
+            return primary;
+        }
+        for (StorageRoot candidate : candidates) {
+            if (minFreeBytes <= 0 || candidate.usableSpace() >= minFreeBytes) {
+                return candidate;
+            }
+        }
+        return candidates.get(0);
+    }
+
+    private static List<StorageRoot> parseRoots(String spec, StorageRoot primary) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return Collections.singletonList(primary);
+        }
+        List<StorageRoot> parsed = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int weight = 1;
+            int colon = trimmed.lastIndexOf(':');
+            if (colon > 0 && trimmed.substring(colon + 1).matches("\\d+")) {
+                weight = Integer.parseInt(trimmed.substring(colon + 1));
+                trimmed = trimmed.substring(0, colon);
+            }
+            if (weight <= 0) {
+                throw new IllegalArgumentException("storage root weight must be positive: " + entry);
+            }
+            Path path = Paths.get(trimmed).toAbsolutePath();
+            parsed.add(path.equals(primary.path()) && weight == primary.weight() ? primary : new StorageRoot(path, weight));
+        }
+        return Collections.unmodifiableList(parsed);
+    }
 }
@@ -0,0 +1,83 @@
+package com.anymind.promptrecorder.storage;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StorageRoot {
+    private final Path path;
+    private final int weight;
+    private final AtomicLong opens = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    public StorageRoot(Path path, int weight) {
+        this.path = path;
+        this.weight = weight;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    public Path spaceDir(String spaceId) {
+        return path.resolve("spaces").resolve(spaceId);
+    }
+
+    public void recordOpen() {
+        opens.incrementAndGet();
+    }
+
+    public void recordRead(long rows) {
+        reads.incrementAndGet();
+        rowsRead.addAndGet(rows);
+    }
+
+    public void recordWrite(long rows) {
+        writes.incrementAndGet();
+        rowsWritten.addAndGet(rows);
+    }
+
+    public long usableSpace() {
+        try {
+            return fileStore().getUsableSpace();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("path", path.toString());
+        out.put("weight", weight);
+        out.put("usable_bytes", usableSpace());
+        try {
+            out.put("total_bytes", fileStore().getTotalSpace());
+        } catch (Exception e) {
+            out.put("total_bytes", -1L);
+        }
+        out.put("opens", opens.get());
+        out.put("reads", reads.get());
+        out.put("rows_read", rowsRead.get());
+        out.put("writes", writes.get());
+        out.put("rows_written", rowsWritten.get());
+        return out;
+    }
+
+    private FileStore fileStore() throws Exception {
+        Path existing = path;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return Files.getFileStore(existing == null ? path : existing);
+    }
+}
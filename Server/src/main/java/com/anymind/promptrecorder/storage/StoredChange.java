@@ -0,0 +1,50 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.List;
+
+public class StoredChange {
+    private final long rev;
+    private final String id;
+    private final String content;
+    private final List<String> systemTags;
+    private final List<String> userTags;
+    private final String createdAt;
+    private final String updatedAt;
+    private final boolean deleted;
+    private final long serverRev;
+    private final String serverUpdatedAt;
+    private final String lastDeviceId;
+
+    public StoredChange(long rev, String id, String content, List<String> systemTags, List<String> userTags,
+                        String createdAt, String updatedAt, boolean deleted, long serverRev,
+                        String serverUpdatedAt, String lastDeviceId) {
+        this.rev = rev;
+        this.id = id;
+        this.content = content;
+        this.systemTags = systemTags;
+        this.userTags = userTags;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.deleted = deleted;
+        this.serverRev = serverRev;
+        this.serverUpdatedAt = serverUpdatedAt;
+        this.lastDeviceId = lastDeviceId;
+    }
+
+    public StoredChange atRev(long changeRev) {
+        return new StoredChange(changeRev, id, content, systemTags, userTags, createdAt, updatedAt, deleted,
+            serverRev, serverUpdatedAt, lastDeviceId);
+    }
+
+    public long getRev() { return rev; }
+    public String getId() { return id; }
+    public String getContent() { return content; }
+    public List<String> getSystemTags() { return systemTags; }
+    public List<String> getUserTags() { return userTags; }
+    public String getCreatedAt() { return createdAt; }
+    public String getUpdatedAt() { return updatedAt; }
+    public boolean isDeleted() { return deleted; }
+    public long getServerRev() { return serverRev; }
+    public String getServerUpdatedAt() { return serverUpdatedAt; }
+    public String getLastDeviceId() { return lastDeviceId; }
+}
@@ -1,200 +1,193 @@
 package com.anymind.promptrecorder.storage;
 
-import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeResponse;
+import com.anymind.promptrecorder.model.SyncModels.FetchRequest;
+import com.anymind.promptrecorder.model.SyncModels.FetchResponse;
+import com.anymind.promptrecorder.model.SyncModels.HistoryRequest;
+import com.anymind.promptrecorder.model.SyncModels.HistoryResponse;
 import com.anymind.promptrecorder.model.SyncModels.PullChange;
 import com.anymind.promptrecorder.model.SyncModels.PullRequest;
 import com.anymind.promptrecorder.model.SyncModels.PullResponse;
 import com.anymind.promptrecorder.model.SyncModels.PushRequest;
 import com.anymind.promptrecorder.model.SyncModels.PushResponse;
 import com.anymind.promptrecorder.model.SyncModels.PushResult;
-import com.anymind.promptrecorder.util.JsonUtils;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.Statement;
-import java.time.Instant;
+import com.anymind.promptrecorder.model.SyncModels.RecordVersion;
+import com.anymind.promptrecorder.model.SyncModels.RevisionEntry;
+import com.anymind.promptrecorder.model.SyncModels.SummaryCount;
+import com.anymind.promptrecorder.model.SyncModels.SummaryRequest;
+import com.anymind.promptrecorder.model.SyncModels.SummaryResponse;
+import com.anymind.promptrecorder.model.SyncModels.TreeNode;
+import com.anymind.promptrecorder.model.SyncModels.TreeRequest;
+import com.anymind.promptrecorder.model.SyncModels.TreeResponse;
+import com.anymind.promptrecorder.util.RecordPreview;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.springframework.stereotype.Service;
 
 @Service
 public class SyncService {
-    private final SpaceDatabase spaceDatabase;
+    public static final String PROJECTION_FULL = "full";
+    public static final String PROJECTION_METADATA = "metadata";
+    public static final int MAX_FETCH_IDS = 500;
+    public static final int MAX_TREE_PREFIXES = 256;
+    public static final int MAX_PULL_LIMIT = 1000;
 
-    public SyncService(SpaceDatabase spaceDatabase) {
-        this.spaceDatabase = spaceDatabase;
+    private final SpaceStore spaceStore;
+
+    public SyncService(SpaceStore spaceStore) {
+        this.spaceStore = spaceStore;
     }
 
     public PushResponse push(PushRequest request) {
-        List<PushResult> results = new ArrayList<>();
-        long maxRev = 0;
-        String now = Instant.now().toString();
-
-        try (Connection conn = spaceDatabase.open(request.getSpaceId())) {
-            conn.setAutoCommit(false);
-            try {
-                if (request.getChanges() != null) {
-                    for (ChangeRequest change : request.getChanges()) {
-                        Long existingRev = findExistingRev(conn, change.getId());
-                        boolean conflict = change.getBaseRev() != null
-                            && existingRev != null
-                            && existingRev > change.getBaseRev();
-
-                        long rev = insertChange(conn, change.getId(), change.isDeleted(), now);
-                        if (existingRev == null) {
-                            insertRecord(conn, change, request.getDeviceId(), rev, now);
-                        } else {
-                            updateRecord(conn, change, request.getDeviceId(), rev, now);
-                        }
-                        results.add(new PushResult(change.getId(), rev, now, conflict));
-                        maxRev = Math.max(maxRev, rev);
-                    }
-                }
-                maxRev = Math.max(maxRev, queryMaxRev(conn));
-                conn.commit();
-            } catch (Exception e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
-            }
-        } catch (Exception e) {
-            throw new IllegalStateException("Push failed", e);
-        }
-
-        return new PushResponse(results, maxRev);
+        return spaceStore.push(request.getSpaceId(), request.getDeviceId(), request.getRequestId(), request.getChanges());
     }
 
     public PullResponse pull(PullRequest request) {
-        long since = request.getSinceRev() == null ? 0 : request.getSinceRev();
-        int limit = request.getLimit() == null ? 200 : request.getLimit();
-        List<PullChange> changes = new ArrayList<>();
-        long maxRev = 0;
-
-        String sql = "SELECT c.rev, r.id, r.content, r.system_tags_json, r.user_tags_json, " +
-            "r.created_at, r.updated_at_client, r.deleted, r.server_rev, r.server_updated_at " +
-            "FROM changes c " +
-            "JOIN records r ON r.id = c.record_id " +
-            "WHERE c.rev > ? " +
-            "ORDER BY c.rev ASC " +
-            "LIMIT ?;";
-
-        try (Connection conn = spaceDatabase.open(request.getSpaceId());
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, since);
-            stmt.setInt(2, limit);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String id = rs.getString("id");
-                    String content = rs.getString("content");
-                    List<String> systemTags = JsonUtils.toList(rs.getString("system_tags_json"));
-                    List<String> userTags = JsonUtils.toList(rs.getString("user_tags_json"));
-                    String createdAt = rs.getString("created_at");
-                    String updatedAt = rs.getString("updated_at_client");
-                    boolean deleted = rs.getInt("deleted") != 0;
-                    long serverRev = rs.getLong("server_rev");
-                    String serverUpdatedAt = rs.getString("server_updated_at");
-                    changes.add(new PullChange(
-                        id,
-                        content,
-                        systemTags,
-                        userTags,
-                        createdAt,
-                        updatedAt,
-                        deleted,
-                        serverRev,
-                        serverUpdatedAt
-                    ));
-                }
+        return pull(request, Collections.<String, Long>emptyMap(), false);
+    }
+
+    public ExchangeResponse exchange(ExchangeRequest request) {
+        // one space lock across both halves, so no other writer lands between the push and the page
+        return spaceStore.withSpaceLocked(request.getSpaceId(), () -> {
+            PushResponse pushed = spaceStore.push(request.getSpaceId(), request.getDeviceId(), request.getRequestId(),
+                request.getChanges());
+            Map<String, Long> justPushed = new HashMap<>();
+            for (PushResult result : pushed.getResults()) {
+                justPushed.put(result.getId(), result.getServerRev());
             }
-            maxRev = queryMaxRev(conn);
-        } catch (Exception e) {
-            throw new IllegalStateException("Pull failed", e);
+            return new ExchangeResponse(pushed, pull(request, justPushed, true));
+        });
+    }
+
+    private PullResponse pull(PullRequest request, Map<String, Long> justPushed, boolean locked) {
+        long since = request.getSinceRev() == null ? 0 : request.getSinceRev();
+        // clamped, since an empty page would read as a full one and the stores take the limit as is
+        int limit = request.getLimit() == null ? 200 : Math.max(1, Math.min(request.getLimit(), MAX_PULL_LIMIT));
+        String deviceId = request.getDeviceId();
+        PullQuery query = new PullQuery(since, limit, deviceId, request.getTags());
+        ChangePage page = locked ? spaceStore.pullLocked(request.getSpaceId(), query) : spaceStore.pull(request.getSpaceId(), query);
+        if (page.isResetRequired()) {
+            return new PullResponse(new ArrayList<PullChange>(), page.getHeadRev(), true, 0, false);
         }
 
-        return new PullResponse(changes, maxRev);
+        List<StoredChange> scanned = page.getChanges();
+        // a short page means the store reached the head, so the cursor can skip any purged gap
+        long next = scanned.size() < limit
+            ? Math.max(since, page.getHeadRev())
+            : scanned.get(scanned.size() - 1).getRev();
+        // a full resync (since 0) still returns the device's own records
+        boolean suppressEcho = deviceId != null && since > 0;
+        boolean metadataOnly = PROJECTION_METADATA.equals(request.getProjection());
+        List<PullChange> changes = new ArrayList<>(scanned.size());
+        for (StoredChange change : scanned) {
+            if (suppressEcho && deviceId.equals(change.getLastDeviceId())) {
+                continue;
+            }
+            Long pushedRev = justPushed.get(change.getId());
+            if (pushedRev != null && pushedRev == change.getServerRev()) {
+                continue;
+            }
+            changes.add(toPullChange(change, metadataOnly));
+        }
+        return new PullResponse(changes, page.getHeadRev(), false, next, next < page.getHeadRev());
     }
 
-    private Long findExistingRev(Connection conn, String id) throws Exception {
-        String sql = "SELECT server_rev FROM records WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, id);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (!rs.next()) {
-                    return null;
-                }
-                return rs.getLong("server_rev");
-            }
+    public FetchResponse fetch(FetchRequest request) {
+        Set<String> ids = new LinkedHashSet<>(request.getIds());
+        List<PullChange> records = new ArrayList<>(ids.size());
+        for (StoredChange record : spaceStore.fetch(request.getSpaceId(), ids)) {
+            records.add(toPullChange(record, false));
+            ids.remove(record.getId());
         }
+        return new FetchResponse(records, new ArrayList<>(ids));
     }
 
-    private long insertChange(Connection conn, String recordId, boolean deleted, String now) throws Exception {
-        String sql = "INSERT INTO changes (record_id, deleted, server_updated_at) VALUES (?, ?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, recordId);
-            stmt.setInt(2, deleted ? 1 : 0);
-            stmt.setString(3, now);
-            stmt.executeUpdate();
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getLong(1);
+    public TreeResponse tree(TreeRequest request) {
+        MerkleTree tree = spaceStore.merkleTree(request.getSpaceId());
+        List<TreeNode> nodes = new ArrayList<>(request.getPrefixes().size());
+        for (String prefix : request.getPrefixes()) {
+            List<TreeNode> children = null;
+            List<RecordVersion> records = null;
+            if (prefix.length() < MerkleTree.LEAF_DEPTH) {
+                children = new ArrayList<>(16);
+                for (int digit = 0; digit < 16; digit++) {
+                    String child = prefix + Integer.toHexString(digit);
+                    children.add(new TreeNode(child, MerkleTree.hex(tree.hash(child)), tree.count(child), null, null));
+                }
+            } else {
+                records = new ArrayList<>();
+                int bucket = Integer.parseInt(prefix, 16);
+                for (Map.Entry<String, Long> entry : spaceStore.bucketEntries(request.getSpaceId(), bucket).entrySet()) {
+                    records.add(new RecordVersion(entry.getKey(), entry.getValue()));
                 }
             }
+            nodes.add(new TreeNode(prefix, MerkleTree.hex(tree.hash(prefix)), tree.count(prefix), children, records));
         }
-        throw new IllegalStateException("Failed to create change record");
+        return new TreeResponse(nodes);
     }
 
-    private void insertRecord(Connection conn, ChangeRequest change, String deviceId, long rev, String now) throws Exception {
-        String sql = "INSERT INTO records " +
-            "(id, content, system_tags_json, user_tags_json, created_at, updated_at_client, deleted, server_rev, server_updated_at, last_device_id) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, change.getId());
-            stmt.setString(2, change.getContent());
-            stmt.setString(3, JsonUtils.toJson(change.getSystemTags()));
-            stmt.setString(4, JsonUtils.toJson(change.getUserTags()));
-            stmt.setString(5, change.getCreatedAt());
-            stmt.setString(6, change.getUpdatedAt());
-            stmt.setInt(7, change.isDeleted() ? 1 : 0);
-            stmt.setLong(8, rev);
-            stmt.setString(9, now);
-            stmt.setString(10, deviceId);
-            stmt.executeUpdate();
-        }
+    public SummaryResponse summaries(SummaryRequest request) {
+        String grouping = request.getGrouping() == null ? GroupSummaries.WEEK : request.getGrouping();
+        GroupSummaries summaries = spaceStore.summaries(request.getSpaceId(), grouping);
+        List<SummaryCount> groups = counts(summaries.counts(grouping));
+        // newest group first, busiest tag first: the orders the client lists them in
+        groups.sort((a, b) -> b.getKey().compareTo(a.getKey()));
+        List<SummaryCount> tags = counts(summaries.counts(GroupSummaries.TAG));
+        tags.sort((a, b) -> a.getCount() != b.getCount()
+            ? Long.compare(b.getCount(), a.getCount())
+            : a.getKey().compareTo(b.getKey()));
+        return new SummaryResponse(grouping, groups, tags);
+    }
+
+    public boolean keepsHistory() {
+        return spaceStore.keepsHistory();
     }
 
-    private void updateRecord(Connection conn, ChangeRequest change, String deviceId, long rev, String now) throws Exception {
-        String sql = "UPDATE records SET " +
-            "content = ?, " +
-            "system_tags_json = ?, " +
-            "user_tags_json = ?, " +
-            "updated_at_client = ?, " +
-            "deleted = ?, " +
-            "server_rev = ?, " +
-            "server_updated_at = ?, " +
-            "last_device_id = ? " +
-            "WHERE id = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, change.getContent());
-            stmt.setString(2, JsonUtils.toJson(change.getSystemTags()));
-            stmt.setString(3, JsonUtils.toJson(change.getUserTags()));
-            stmt.setString(4, change.getUpdatedAt());
-            stmt.setInt(5, change.isDeleted() ? 1 : 0);
-            stmt.setLong(6, rev);
-            stmt.setString(7, now);
-            stmt.setString(8, deviceId);
-            stmt.setString(9, change.getId());
-            stmt.executeUpdate();
+    public HistoryResponse history(HistoryRequest request) {
+        List<RevisionEntry> revisions = new ArrayList<>();
+        for (Revision revision : spaceStore.revisions(request.getSpaceId(), request.getRecordId())) {
+            revisions.add(toRevisionEntry(revision));
         }
+        return new HistoryResponse(request.getRecordId(), revisions);
     }
 
-    private long queryMaxRev(Connection conn) throws Exception {
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(rev), 0) AS max_rev FROM changes")) {
-            if (rs.next()) {
-                return rs.getLong("max_rev");
-            }
-            return 0;
+    // null when the record did not exist yet at the requested rev
+    public RevisionEntry revisionAt(HistoryRequest request) {
+        Revision revision = spaceStore.revisionAt(request.getSpaceId(), request.getRecordId(), request.getRev());
+        return revision == null ? null : toRevisionEntry(revision);
+    }
+
+    private static RevisionEntry toRevisionEntry(Revision revision) {
+        return new RevisionEntry(revision.getRev(), revision.getContent(), revision.isDeleted(), revision.getUpdatedAt(),
+            revision.getServerUpdatedAt(), revision.getLastDeviceId());
+    }
+
+    private static List<SummaryCount> counts(Map<String, Long> counts) {
+        List<SummaryCount> out = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            out.add(new SummaryCount(entry.getKey(), entry.getValue()));
         }
+        return out;
+    }
+
+    private static PullChange toPullChange(StoredChange change, boolean metadataOnly) {
+        return new PullChange(
+            change.getId(),
+            metadataOnly ? null : change.getContent(),
+            metadataOnly ? RecordPreview.make(change.getContent()) : null,
+            change.getSystemTags(),
+            change.getUserTags(),
+            change.getCreatedAt(),
+            change.getUpdatedAt(),
+            change.isDeleted(),
+            change.getServerRev(),
+            change.getServerUpdatedAt()
+        );
     }
 }
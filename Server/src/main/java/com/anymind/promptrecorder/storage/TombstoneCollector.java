@@ -0,0 +1,72 @@
+package com.anymind.promptrecorder.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TombstoneCollector {
+    private final SpaceStore spaceStore;
+    private final long deviceTtlMillis;
+    private final ScheduledExecutorService worker;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+    private volatile double lastRunMillis;
+
+    public TombstoneCollector(SpaceStore spaceStore,
+                              @Value("${storage.tombstones.device-ttl-days:30}") long deviceTtlDays,
+                              @Value("${storage.tombstones.gc-interval-seconds:3600}") long intervalSeconds) {
+        this.spaceStore = spaceStore;
+        this.deviceTtlMillis = TimeUnit.DAYS.toMillis(deviceTtlDays);
+        if (intervalSeconds > 0) {
+            worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tombstone-gc");
+                thread.setDaemon(true);
+                return thread;
+            });
+            worker.scheduleWithFixedDelay(this::runQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            worker = null;
+        }
+    }
+
+    public int runOnce() {
+        long start = System.nanoTime();
+        int count = spaceStore.collectTombstones(System.currentTimeMillis() - deviceTtlMillis);
+        lastRunMillis = (System.nanoTime() - start) / 1_000_000.0;
+        runs.incrementAndGet();
+        purged.addAndGet(count);
+        return count;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", worker != null);
+        out.put("device_ttl_days", TimeUnit.MILLISECONDS.toDays(deviceTtlMillis));
+        out.put("runs", runs.get());
+        out.put("purged", purged.get());
+        out.put("last_run_ms", lastRunMillis);
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            // the next run retries; a failing run must not cancel the schedule
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.anymind.promptrecorder.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+public class HashRing<T> {
+    private static final int POINTS_PER_WEIGHT = 64;
+
+    private final TreeMap<Long, T> points = new TreeMap<>();
+    private final List<T> members = new ArrayList<>();
+
+    public void add(String label, T member, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive: " + label);
+        }
+        members.add(member);
+        for (int i = 0; i < weight * POINTS_PER_WEIGHT; i++) {
+            points.put(hash(label + "#" + i), member);
+        }
+    }
+
+    public List<T> members() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public T owner(String key) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("hash ring is empty");
+        }
+        Long point = points.ceilingKey(hash(key));
+        return points.get(point == null ? points.firstKey() : point);
+    }
+
+    public List<T> candidates(String key) {
+        if (members.size() <= 1) {
+            return members();
+        }
+        List<T> ordered = new ArrayList<>(members.size());
+        long hash = hash(key);
+        collect(points.tailMap(hash).values(), ordered);
+        collect(points.headMap(hash).values(), ordered);
+        return ordered;
+    }
+
+    private void collect(Iterable<T> values, List<T> ordered) {
+        for (T member : values) {
+            if (ordered.size() == members.size()) {
+                return;
+            }
+            if (!ordered.contains(member)) {
+                ordered.add(member);
+            }
+        }
+    }
+
+    public static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -31,4 +31,20 @@ public final class JsonUtils {
             return Collections.emptyList();
         }
     }
+
+    public static String write(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode JSON", e);
+        }
+    }
+
+    public static <T> T read(String json, Class<T> type) {
+        try {
+            return OBJECT_MAPPER.readValue(json, type);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to decode JSON", e);
+        }
+    }
 }
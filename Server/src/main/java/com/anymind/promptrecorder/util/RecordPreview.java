@@ -0,0 +1,36 @@
+package com.anymind.promptrecorder.util;
+
+import java.util.regex.Pattern;
+
+public final class RecordPreview {
+    public static final int MAX_CHARS = 120;
+
+    private static final Pattern TAG = Pattern.compile("#([\\p{L}\\p{N}_-]+)");
+
+    private RecordPreview() {}
+
+    // mirrors the Android client's RecordPreview.make so list rows look the same either way
+    public static String make(String content) {
+        String source = content == null ? "" : content;
+        String candidate = null;
+        for (String line : source.split("\n", -1)) {
+            if (!isTagOnlyLine(line)) {
+                candidate = line;
+                break;
+            }
+        }
+        String trimmed = (candidate == null ? source : candidate).trim();
+        if (trimmed.isEmpty()) {
+            return "(empty)";
+        }
+        return trimmed.length() > MAX_CHARS ? trimmed.substring(0, MAX_CHARS) + "..." : trimmed;
+    }
+
+    private static boolean isTagOnlyLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return true;
+        }
+        return TAG.matcher(trimmed).replaceAll("").replace(",", " ").trim().isEmpty();
+    }
+}
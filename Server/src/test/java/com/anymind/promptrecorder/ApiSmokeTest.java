@@ -1,12 +1,19 @@
 package com.anymind.promptrecorder;
 
+import com.anymind.promptrecorder.storage.MerkleTree;
 import com.anymind.promptrecorder.storage.SpaceRegistry;
 import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -16,9 +23,12 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -41,6 +51,41 @@ class ApiSmokeTest {
             .andExpect(status().isOk());
     }
 
+    @Test
+    void exportStreamsAZipOfTheSpace() throws Exception {
+        SpaceInfo info = spaceRegistry.createSpace("export");
+        ObjectNode push = objectMapper.createObjectNode();
+        push.put("space_id", info.getSpaceId());
+        push.put("space_secret", info.getSpaceSecret());
+        push.put("device_id", "test-device");
+        ObjectNode change = push.putArray("changes").addObject();
+        change.put("id", "r1");
+        change.put("content", "kept");
+        change.put("created_at", "2026-01-01T00:00:00Z");
+        change.put("updated_at", "2026-01-01T00:00:00Z");
+        mockMvc.perform(post("/sync/push").contentType(MediaType.APPLICATION_JSON).content(push.toString()))
+            .andExpect(status().isOk());
+
+        ObjectNode export = objectMapper.createObjectNode();
+        export.put("space_id", info.getSpaceId());
+        export.put("space_secret", info.getSpaceSecret());
+        MvcResult started = mockMvc.perform(post("/sync/export").contentType(MediaType.APPLICATION_JSON)
+                .content(export.toString()))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        byte[] archive = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName());
+            }
+        }
+        assertEquals(Arrays.asList("spaces/" + info.getSpaceId() + ".jsonl", "manifest.json"), entries);
+    }
+
     @Test
     void pushAndPull() throws Exception {
         SpaceInfo info = spaceRegistry.createSpace("test");
@@ -99,4 +144,121 @@ class ApiSmokeTest {
         }
         assertTrue(found);
     }
+
+    @Test
+    void metadataPullFetchAndTree() throws Exception {
+        SpaceInfo info = spaceRegistry.createSpace("test");
+        String now = Instant.now().toString();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            line.append("word ");
+        }
+        String body = "#tag\n" + line;
+
+        ObjectNode push = objectMapper.createObjectNode();
+        push.put("space_id", info.getSpaceId());
+        push.put("space_secret", info.getSpaceSecret());
+        push.put("device_id", "test-device");
+        ObjectNode change = push.putArray("changes").addObject();
+        change.put("id", "rec-1");
+        change.put("content", body);
+        change.putArray("system_tags");
+        change.putArray("user_tags").add("#tag");
+        change.put("created_at", now);
+        change.put("updated_at", now);
+        mockMvc.perform(post("/sync/push").contentType(MediaType.APPLICATION_JSON).content(push.toString()))
+            .andExpect(status().isOk());
+
+        ObjectNode pull = objectMapper.createObjectNode();
+        pull.put("space_id", info.getSpaceId());
+        pull.put("space_secret", info.getSpaceSecret());
+        pull.put("since_rev", 0);
+        pull.put("projection", "metadata");
+        JsonNode pulled = objectMapper.readTree(mockMvc.perform(
+                post("/sync/pull").contentType(MediaType.APPLICATION_JSON).content(pull.toString()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString()).get("changes").get(0);
+        assertTrue(!pulled.has("content"));
+        assertEquals(line.substring(0, 120) + "...", pulled.get("preview").asText());
+
+        ObjectNode fetch = objectMapper.createObjectNode();
+        fetch.put("space_id", info.getSpaceId());
+        fetch.put("space_secret", info.getSpaceSecret());
+        fetch.putArray("ids").add("rec-1").add("rec-missing");
+        JsonNode fetched = objectMapper.readTree(mockMvc.perform(
+                post("/sync/fetch").contentType(MediaType.APPLICATION_JSON).content(fetch.toString()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString());
+        assertEquals(body, fetched.get("records").get(0).get("content").asText());
+        assertEquals("rec-missing", fetched.get("missing").get(0).asText());
+
+        ObjectNode tree = objectMapper.createObjectNode();
+        tree.put("space_id", info.getSpaceId());
+        tree.put("space_secret", info.getSpaceSecret());
+        tree.putArray("prefixes").add("").add(MerkleTree.bucketPrefix(MerkleTree.bucketOf("rec-1")));
+        JsonNode nodes = objectMapper.readTree(mockMvc.perform(
+                post("/sync/tree").contentType(MediaType.APPLICATION_JSON).content(tree.toString()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString()).get("nodes");
+        assertEquals(1, nodes.get(0).get("count").asInt());
+        assertEquals(16, nodes.get(0).get("children").size());
+        assertEquals("rec-1", nodes.get(1).get("records").get(0).get("id").asText());
+
+        pull.put("projection", "bodies");
+        mockMvc.perform(post("/sync/pull").contentType(MediaType.APPLICATION_JSON).content(pull.toString()))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void sessionTokenStandsInForTheSecret() throws Exception {
+        SpaceInfo info = spaceRegistry.createSpace("test");
+
+        ObjectNode session = objectMapper.createObjectNode();
+        session.put("space_id", info.getSpaceId());
+        session.put("space_secret", info.getSpaceSecret());
+        session.put("device_id", "test-device");
+        JsonNode issued = objectMapper.readTree(mockMvc.perform(
+                post("/sync/session").contentType(MediaType.APPLICATION_JSON).content(session.toString()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString());
+        String bearer = "Bearer " + issued.get("session_token").asText();
+        assertTrue(issued.get("expires_in").asLong() > 0);
+
+        ObjectNode pull = objectMapper.createObjectNode();
+        pull.put("space_id", info.getSpaceId());
+        pull.put("device_id", "test-device");
+        pull.put("since_rev", 0);
+        mockMvc.perform(post("/sync/pull").header("Authorization", bearer)
+                .contentType(MediaType.APPLICATION_JSON).content(pull.toString()))
+            .andExpect(status().isOk());
+
+        pull.put("device_id", "other-device");
+        mockMvc.perform(post("/sync/pull").header("Authorization", bearer)
+                .contentType(MediaType.APPLICATION_JSON).content(pull.toString()))
+            .andExpect(status().isUnauthorized());
+
+        pull.put("device_id", "test-device");
+        mockMvc.perform(post("/sync/pull").header("Authorization", bearer + "x")
+                .contentType(MediaType.APPLICATION_JSON).content(pull.toString()))
+            .andExpect(status().isUnauthorized());
+
+        ObjectNode push = objectMapper.createObjectNode();
+        push.put("space_id", info.getSpaceId());
+        ObjectNode change = push.putArray("changes").addObject();
+        change.put("id", "r1");
+        change.put("content", "no device in the body");
+        change.put("created_at", "2026-01-01T00:00:00Z");
+        change.put("updated_at", "2026-01-01T00:00:00Z");
+        mockMvc.perform(post("/sync/push").header("Authorization", bearer)
+                .contentType(MediaType.APPLICATION_JSON).content(push.toString()))
+            .andExpect(status().isOk());
+        ObjectNode history = objectMapper.createObjectNode();
+        history.put("space_id", info.getSpaceId());
+        history.put("record_id", "r1");
+        JsonNode revisions = objectMapper.readTree(mockMvc.perform(post("/sync/history").header("Authorization", bearer)
+                .contentType(MediaType.APPLICATION_JSON).content(history.toString()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString());
+        assertEquals("test-device", revisions.get("revisions").get(0).get("last_device_id").asText());
+    }
 }
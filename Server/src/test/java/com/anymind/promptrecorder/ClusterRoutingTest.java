@@ -0,0 +1,107 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.model.BackupModels.ExportRequest;
+import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateRequest;
+import com.anymind.promptrecorder.model.SpaceModels.SpaceCreateResponse;
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullResponse;
+import com.anymind.promptrecorder.model.SyncModels.PushRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+class ClusterRoutingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @AfterEach
+    void stop() {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+    }
+
+    @Test
+    void requestsReachTheOwningNode() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        String urlA = "http://localhost:" + portA;
+        String urlB = "http://localhost:" + portB;
+        String nodes = "a=" + urlA + ",b=" + urlB;
+        nodeA = start("a", portA, nodes);
+        nodeB = start("b", portB, nodes);
+        RestTemplate rest = new RestTemplate();
+
+        SpaceCreateResponse space = rest.postForObject(urlA + "/spaces",
+            new SpaceCreateRequest("cluster"), SpaceCreateResponse.class);
+
+        ChangeRequest change = new ChangeRequest();
+        change.setId("rec-1");
+        change.setContent("routed");
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt(Instant.now().toString());
+        change.setUpdatedAt(Instant.now().toString());
+        PushRequest push = new PushRequest();
+        push.setSpaceId(space.getSpaceId());
+        push.setSpaceSecret(space.getSpaceSecret());
+        push.setDeviceId("device");
+        push.setChanges(Collections.singletonList(change));
+        PushResponse pushed = rest.postForObject(urlB + "/sync/push", push, PushResponse.class);
+        assertThat(pushed.getResults()).hasSize(1);
+
+        PullRequest pull = new PullRequest();
+        pull.setSpaceId(space.getSpaceId());
+        pull.setSpaceSecret(space.getSpaceSecret());
+        pull.setSinceRev(0L);
+        PullResponse pulled = rest.postForObject(urlA + "/sync/pull", pull, PullResponse.class);
+        assertThat(pulled.getChanges()).extracting("id").containsExactly("rec-1");
+
+        Map<?, ?> stats = rest.getForObject(urlB + "/stats", Map.class);
+        assertThat(((Map<?, ?>) stats.get("cluster")).get("forwarded")).isEqualTo(1);
+
+        ExportRequest export = new ExportRequest();
+        export.setSpaceId(space.getSpaceId());
+        export.setSpaceSecret(space.getSpaceSecret());
+        ResponseEntity<byte[]> archive = rest.postForEntity(urlB + "/sync/export", export, byte[].class);
+        assertThat(archive.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION))
+            .isEqualTo("attachment; filename=\"" + space.getSpaceId() + ".zip\"");
+        assertThat(archive.getHeaders().getContentType()).hasToString("application/zip");
+        assertThat(archive.getBody()).isNotEmpty();
+    }
+
+    private ConfigurableApplicationContext start(String self, int port, String nodes) {
+        return SpringApplication.run(PromptRecorderServerApplication.class,
+            "--server.port=" + port,
+            "--storage.root=" + tempDir.resolve(self),
+            "--cluster.self=" + self,
+            "--cluster.nodes=" + nodes);
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
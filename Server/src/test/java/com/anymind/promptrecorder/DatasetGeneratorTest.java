@@ -0,0 +1,121 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.bench.DatasetGenerator;
+import com.anymind.promptrecorder.bench.DatasetSpec;
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullRequest;
+import com.anymind.promptrecorder.model.SyncModels.PullResponse;
+import com.anymind.promptrecorder.storage.GroupSummaries;
+import com.anymind.promptrecorder.storage.MerkleTree;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import com.anymind.promptrecorder.storage.StoredChange;
+import com.anymind.promptrecorder.storage.SyncService;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DatasetGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void generatesReproducibleSpaces() throws Exception {
+        DatasetSpec spec = new DatasetSpec();
+        spec.setSpaces(2);
+        spec.setRecordsPerSpace(500);
+        spec.setEditsPerRecord(2.0);
+        spec.setTombstoneRatio(0.1);
+        spec.setBatchSize(128);
+
+        StoragePaths first = new StoragePaths(tempDir.resolve("a").toString());
+        StoragePaths second = new StoragePaths(tempDir.resolve("b").toString());
+        List<SpaceInfo> spaces = new DatasetGenerator(spec, first).generate();
+        List<SpaceInfo> again = new DatasetGenerator(spec, second).generate();
+
+        assertThat(spaces).hasSize(2);
+        assertThat(again.get(0).getSpaceId()).isEqualTo(spaces.get(0).getSpaceId());
+        assertThat(new SpaceRegistry(first).validateSecret(
+            spaces.get(0).getSpaceId(), spaces.get(0).getSpaceSecret())).isTrue();
+
+        String spaceId = spaces.get(0).getSpaceId();
+        SpaceDatabase database = new SpaceDatabase(first);
+        try (Connection conn = database.open(spaceId);
+             Statement stmt = conn.createStatement()) {
+            assertThat(count(stmt, "SELECT COUNT(*) FROM records")).isEqualTo(500);
+            assertThat(count(stmt, "SELECT COUNT(*) FROM changes")).isGreaterThan(1400);
+            assertThat(count(stmt, "SELECT COUNT(*) FROM records WHERE deleted = 1")).isGreaterThan(0);
+            assertThat(count(stmt, "SELECT COUNT(*) FROM records r " +
+                "WHERE r.server_rev != (SELECT MAX(rev) FROM changes c WHERE c.record_id = r.id)")).isEqualTo(0);
+        }
+        try (Connection a = database.open(spaceId);
+             Connection b = new SpaceDatabase(second).open(spaceId);
+             Statement sa = a.createStatement();
+             Statement sb = b.createStatement()) {
+            String checksum = "SELECT SUM(LENGTH(content) * server_rev) FROM records";
+            assertThat(count(sa, checksum)).isEqualTo(count(sb, checksum));
+        }
+
+        SqliteSpaceStore store = new SqliteSpaceStore(database);
+        PullRequest pull = new PullRequest();
+        pull.setSpaceId(spaceId);
+        pull.setSinceRev(0L);
+        pull.setLimit(50);
+        PullResponse response = new SyncService(store).pull(pull);
+        assertThat(response.getChanges()).hasSize(50);
+
+        long live;
+        long tagged;
+        try (Connection conn = database.open(spaceId);
+             Statement stmt = conn.createStatement()) {
+            assertThat(count(stmt, "SELECT COUNT(*) FROM records WHERE content_hash IS NULL")).isEqualTo(0);
+            assertThat(count(stmt, "SELECT COUNT(*) FROM records WHERE user_tags_json LIKE '%\"#tag0\"%'"))
+                .isEqualTo(count(stmt, "SELECT COUNT(*) FROM record_tags WHERE tag = '#tag0'"))
+                .isGreaterThan(0);
+            live = count(stmt, "SELECT COUNT(*) FROM records WHERE deleted = 0");
+            tagged = count(stmt, "SELECT COUNT(*) FROM records WHERE deleted = 0 AND user_tags_json LIKE '%\"#tag0\"%'");
+        }
+        pull.setTags(Collections.singletonList("#tag0"));
+        pull.setLimit(1000);
+        assertThat(new SyncService(store).pull(pull).getChanges()).isNotEmpty()
+            .allSatisfy(change -> assertThat(change.getUserTags()).contains("#tag0"));
+        StoredChange stored = store.fetch(spaceId, Collections.singletonList(response.getChanges().get(0).getId())).get(0);
+        ChangeRequest same = new ChangeRequest();
+        same.setId(stored.getId());
+        same.setContent(stored.getContent());
+        same.setSystemTags(stored.getSystemTags());
+        same.setUserTags(stored.getUserTags());
+        same.setCreatedAt(stored.getCreatedAt());
+        same.setUpdatedAt(stored.getUpdatedAt());
+        same.setDeleted(stored.isDeleted());
+        assertThat(store.push(spaceId, "device-0", Collections.singletonList(same)).getResults().get(0).getServerRev())
+            .isEqualTo(stored.getServerRev());
+        assertThat(store.stats()).containsEntry("unchanged_skipped", 1L);
+
+        assertThat((long) store.merkleTree(spaceId).count("")).isEqualTo(live);
+        assertThat(store.bucketEntries(spaceId, MerkleTree.bucketOf(stored.getId())))
+            .containsEntry(stored.getId(), stored.getServerRev());
+        GroupSummaries summaries = store.summaries(spaceId, GroupSummaries.MONTH);
+        assertThat(summaries.counts(GroupSummaries.TAG)).containsEntry("#tag0", tagged);
+        assertThat(summaries.counts(GroupSummaries.MONTH).values().stream().mapToLong(Long::longValue).sum())
+            .isEqualTo(live);
+    }
+
+    private static long count(Statement stmt, String sql) throws Exception {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.storage.DurabilityMode;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.SpaceConnection;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DurabilityPolicyTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resolvesPerSpaceOverrides() {
+        DurabilityPolicy policy = new DurabilityPolicy("relaxed", "spc_a=strict, spc_b=grouped", 100, 1000);
+
+        assertThat(policy.modeFor("spc_a")).isEqualTo(DurabilityMode.STRICT);
+        assertThat(policy.modeFor("spc_b")).isEqualTo(DurabilityMode.GROUPED);
+        assertThat(policy.modeFor("spc_c")).isEqualTo(DurabilityMode.RELAXED);
+        assertThatThrownBy(() -> new DurabilityPolicy("eventual", "", 100, 1000))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void tracksUnflushedWindowUntilFlushed() throws Exception {
+        DurabilityPolicy policy = new DurabilityPolicy("grouped", "spc_s=strict", 50, 1000);
+        List<String> flushed = new ArrayList<>();
+
+        policy.recordCommit("spc_g", DurabilityMode.GROUPED);
+        policy.recordCommit("spc_g", DurabilityMode.GROUPED);
+        policy.recordCommit("spc_s", DurabilityMode.STRICT);
+        policy.flushDue((spaceId, mode) -> flushed.add(spaceId), false);
+
+        assertThat(flushed).isEmpty();
+        assertThat(policy.stats()).containsEntry("unflushed_spaces", 1).containsEntry("unflushed_commits", 2L);
+
+        Thread.sleep(60);
+        policy.flushDue((spaceId, mode) -> flushed.add(spaceId), false);
+
+        assertThat(flushed).containsExactly("spc_g");
+        assertThat(policy.stats()).containsEntry("unflushed_spaces", 0).containsEntry("flushes", 1L);
+        assertThat((Long) policy.stats().get("max_window_ms")).isGreaterThanOrEqualTo(50L);
+    }
+
+    @Test
+    void failedFlushKeepsWindowOpen() {
+        DurabilityPolicy policy = new DurabilityPolicy("grouped", "", 100, 1000);
+        policy.recordCommit("spc_g", DurabilityMode.GROUPED);
+
+        policy.flushDue((spaceId, mode) -> {
+            throw new IllegalStateException("disk gone");
+        }, true);
+
+        assertThat(policy.stats()).containsEntry("unflushed_spaces", 1).containsEntry("flush_failures", 1L);
+    }
+
+    @Test
+    void sqlitePushReportsAppliedModeAndFlushes() throws Exception {
+        DurabilityPolicy policy = new DurabilityPolicy("strict", "spc_fast=grouped", 20, 1000);
+        SqliteSpaceStore store = new SqliteSpaceStore(new SpaceDatabase(new StoragePaths(tempDir.toString())), policy);
+        try {
+            PushResponse strict = store.push("spc_safe", "dev", Collections.singletonList(change("r1")));
+            PushResponse grouped = store.push("spc_fast", "dev", Collections.singletonList(change("r1")));
+
+            assertThat(strict.getDurability()).isEqualTo("strict");
+            assertThat(grouped.getDurability()).isEqualTo("grouped");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!Long.valueOf(1).equals(policy.stats().get("flushes")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(policy.stats()).containsEntry("flushes", 1L).containsEntry("unflushed_spaces", 0);
+        } finally {
+            policy.close();
+        }
+    }
+
+    @Test
+    void sqliteWritersRunAtTheModesSynchronousLevel() throws Exception {
+        DurabilityPolicy policy = new DurabilityPolicy("strict", "spc_g=grouped, spc_r=relaxed", 100, 1000);
+        SpaceDatabase database = new SpaceDatabase(new StoragePaths(tempDir.toString()));
+        try {
+            SqliteSpaceStore store = new SqliteSpaceStore(database, policy);
+            for (String spaceId : new String[] {"spc_s", "spc_g", "spc_r"}) {
+                store.push(spaceId, "dev", Collections.singletonList(change("r1")));
+            }
+            // PRAGMA synchronous reports 0 = OFF, 1 = NORMAL, 2 = FULL
+            assertThat(synchronous(database, "spc_s")).isEqualTo(2);
+            assertThat(synchronous(database, "spc_g")).isEqualTo(1);
+            assertThat(synchronous(database, "spc_r")).isEqualTo(1);
+        } finally {
+            policy.close();
+            database.close();
+        }
+    }
+
+    private static int synchronous(SpaceDatabase database, String spaceId) throws Exception {
+        try (SpaceConnection handle = database.acquire(spaceId);
+             Statement stmt = handle.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA synchronous")) {
+            assertThat(rs.next()).isTrue();
+            return rs.getInt(1);
+        }
+    }
+
+    private static ChangeRequest change(String id) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(id);
+        change.setContent("content");
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt("2025-01-01T00:00:00Z");
+        change.setUpdatedAt("2025-01-01T00:00:00Z");
+        return change;
+    }
+}
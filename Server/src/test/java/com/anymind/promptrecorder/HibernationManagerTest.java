@@ -0,0 +1,91 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.storage.ChangePage;
+import com.anymind.promptrecorder.storage.HibernationManager;
+import com.anymind.promptrecorder.storage.LogSpaceStore;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HibernationManagerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sqliteSpacesCheckpointCloseAndRehydrate() throws Exception {
+        StoragePaths paths = new StoragePaths(tempDir.toString());
+        SpaceDatabase database = new SpaceDatabase(paths);
+        SpaceStore store = new SqliteSpaceStore(database);
+        try {
+            store.push("spc_idle", "dev", Collections.singletonList(change("r1", "kept")));
+            Path wal = paths.spaceDb("spc_idle").resolveSibling("space.sqlite-wal");
+            assertThat(Files.size(wal)).isPositive();
+
+            assertThat(new HibernationManager(store, 0, 0).scan()).isEqualTo(1);
+
+            assertThat(Files.exists(wal) ? Files.size(wal) : 0L).isZero();
+            assertThat(store.stats()).containsEntry("open_connections", 0).containsEntry("hibernated_spaces", 1);
+            assertRehydrates(store);
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    void logSpacesReleaseSegmentsAndRehydrate() {
+        LogSpaceStore store = new LogSpaceStore(new StoragePaths(tempDir.toString()));
+        try {
+            store.push("spc_idle", "dev", Collections.singletonList(change("r1", "kept")));
+
+            assertThat(new HibernationManager(store, 0, 0).scan()).isEqualTo(1);
+
+            assertThat(store.stats()).containsEntry("open_spaces", 0).containsEntry("hibernated_spaces", 1);
+            assertRehydrates(store);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void recentlyUsedSpacesStayOpen() {
+        LogSpaceStore store = new LogSpaceStore(new StoragePaths(tempDir.toString()));
+        try {
+            store.push("spc_busy", "dev", Collections.singletonList(change("r1", "kept")));
+
+            HibernationManager manager = new HibernationManager(store, 3600, 0);
+
+            assertThat(manager.scan()).isZero();
+            assertThat(manager.stats()).containsEntry("scans", 1L).containsEntry("hibernated", 0L);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void assertRehydrates(SpaceStore store) {
+        ChangePage page = store.pull("spc_idle", new PullQuery(0, 10));
+        assertThat(page.getChanges()).extracting("content").containsExactly("kept");
+        assertThat(store.stats()).containsEntry("hibernated_spaces", 0).containsEntry("rehydrations", 1L);
+        assertThat((Double) store.stats().get("rehydrate_max_ms")).isPositive();
+    }
+
+    private static ChangeRequest change(String id, String content) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(id);
+        change.setContent(content);
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt("2025-01-01T00:00:00Z");
+        change.setUpdatedAt("2025-01-01T00:00:00Z");
+        return change;
+    }
+}
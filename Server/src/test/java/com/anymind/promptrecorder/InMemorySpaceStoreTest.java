@@ -0,0 +1,13 @@
+package com.anymind.promptrecorder;
+
+import com.anymind.promptrecorder.storage.InMemorySpaceStore;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import java.nio.file.Path;
+
+class InMemorySpaceStoreTest extends SpaceStoreConformance {
+
+    @Override
+    protected SpaceStore createStore(Path dir) {
+        return new InMemorySpaceStore();
+    }
+}
@@ -0,0 +1,43 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.bench.LoadGenerator;
+import com.anymind.promptrecorder.bench.LoadReport;
+import com.anymind.promptrecorder.bench.LoadScenario;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = "storage.root=target/test-data")
+class LoadGeneratorTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void shortScenarioDrivesPushAndPull() throws Exception {
+        LoadScenario scenario = new LoadScenario();
+        scenario.setName("test");
+        scenario.setSpaces(2);
+        scenario.setDevicesPerSpace(2);
+        scenario.setThreads(4);
+        scenario.setWarmupSeconds(0);
+        scenario.setDurationSeconds(1.5);
+        scenario.setPushIntervalMs(50);
+        scenario.setPullIntervalMs(50);
+        scenario.setPromptMedianChars(100);
+
+        LoadReport report = new LoadGenerator(scenario).run("http://localhost:" + port);
+
+        assertThat(report.op("create_space").count()).isEqualTo(2);
+        assertThat(report.op("push").count()).isGreaterThan(0);
+        assertThat(report.op("pull").count()).isGreaterThan(0);
+        assertThat(report.op("push").errors().keySet()).isSubsetOf(Collections.singleton("sqlite_busy"));
+        assertThat(report.op("pull").errors().keySet()).isSubsetOf(Collections.singleton("sqlite_busy"));
+        assertThat(report.format()).contains("push").contains("pull");
+    }
+}
@@ -0,0 +1,251 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.storage.ChangePage;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.LogSpaceStore;
+import com.anymind.promptrecorder.storage.MerkleTree;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class LogSpaceStoreTest extends SpaceStoreConformance {
+
+    @Override
+    protected SpaceStore createStore(Path dir) {
+        return open(dir);
+    }
+
+    private static LogSpaceStore open(Path dir) {
+        return new LogSpaceStore(new StoragePaths(dir.toString()), DurabilityPolicy.strict(), 4096, 0.5, 0);
+    }
+
+    @AfterEach
+    void closeStore() {
+        ((LogSpaceStore) store).close();
+    }
+
+    @Test
+    @Override
+    void historyRebuildsEveryEarlierVersion() {
+        // the log keeps superseded entries only until compaction, so it offers no history
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "two", null)));
+
+        assertThat(store.keepsHistory()).isFalse();
+        assertThat(store.revisions("spc_a", "r1")).isEmpty();
+    }
+
+    @Test
+    void recoversAfterReopen() {
+        for (int i = 0; i < 100; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (i % 10), "content " + i, null)));
+        }
+        ((LogSpaceStore) store).close();
+
+        store = open(tempDir);
+        ChangePage page = store.pull("spc_a", new PullQuery(95, 10));
+        assertThat(page.getHeadRev()).isEqualTo(100);
+        assertThat(page.getChanges()).extracting("content")
+            .containsExactly("content 95", "content 96", "content 97", "content 98", "content 99");
+        long next = store.push("spc_a", "dev", Collections.singletonList(change("r0", "after", null)))
+            .getResults().get(0).getServerRev();
+        assertThat(next).isEqualTo(101);
+    }
+
+    @Test
+    void aBatchThatRollsOverSurvivesHibernation() {
+        char[] filler = new char[1000];
+        Arrays.fill(filler, 'x');
+        List<ChangeRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            batch.add(change("r" + i, i + new String(filler), null));
+        }
+        store.push("spc_a", "dev", batch);
+        assertThat((Long) store.stats().get("segments")).isGreaterThan(2L);
+        assertThat(store.hibernateIdle(0)).isEqualTo(1);
+
+        ChangePage page = store.pull("spc_a", new PullQuery(0, 100));
+        assertThat(page.getHeadRev()).isEqualTo(12);
+        assertThat(page.getChanges()).hasSize(12).allSatisfy(c -> assertThat(c.getContent()).endsWith("xxx"));
+        assertThat(((LogSpaceStore) store).stats()).containsEntry("open_spaces", 1);
+    }
+
+    @Test
+    void pushReceiptsOutliveHibernationAndRestart() {
+        List<ChangeRequest> batch = Collections.singletonList(change("r1", "one", null));
+        long first = store.push("spc_a", "dev", "req-1", batch).getServerRevMax();
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "two", null)));
+        assertThat(store.hibernateIdle(0)).isEqualTo(1);
+
+        assertThat(store.push("spc_a", "dev", "req-1", batch).getServerRevMax()).isEqualTo(first);
+        for (int i = 2; i < 200; i++) {
+            store.push("spc_a", "dev", "req-" + i, Collections.singletonList(change("r2", "c" + i, null)));
+        }
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+
+        assertThat(store.push("spc_a", "dev", "req-199", Collections.singletonList(change("r2", "c199", null)))
+            .getServerRevMax()).isEqualTo(200);
+        assertThat(store.push("spc_a", "dev", "req-1", batch).getServerRevMax()).isEqualTo(201);
+        assertThat(store.pull("spc_a", new PullQuery(0, 10)).getHeadRev()).isEqualTo(201);
+    }
+
+    @Test
+    void compactionKeepsLatestStateAndShrinksLog() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (i % 5), "content " + i, null)));
+        }
+        long before = logBytes();
+        ChangePage tailBefore = store.pull("spc_a", new PullQuery(290, 100));
+
+        int compacted = ((LogSpaceStore) store).compactAll();
+
+        assertThat(compacted).isPositive();
+        assertThat(logBytes()).isLessThan(before);
+        ChangePage tailAfter = store.pull("spc_a", new PullQuery(290, 100));
+        assertThat(tailAfter.getChanges()).extracting("content")
+            .containsExactlyElementsOf(tailBefore.getChanges().stream().map(c -> c.getContent()).collect(Collectors.toList()));
+        List<String> all = store.pull("spc_a", new PullQuery(0, 1000)).getChanges().stream()
+            .map(c -> c.getId() + "=" + c.getContent()).distinct().collect(Collectors.toList());
+        assertThat(all).contains("r0=content 295", "r4=content 299");
+
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+        assertThat(store.pull("spc_a", new PullQuery(299, 10)).getChanges()).extracting("content")
+            .containsExactly("content 299");
+    }
+
+    @Test
+    void lostTagsSurviveCompactionAndRestart() {
+        ChangeRequest work = change("r1", "tagged", null);
+        work.setUserTags(Collections.singletonList("#work"));
+        store.push("spc_a", "dev", Collections.singletonList(work));
+        for (int i = 0; i < 100; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r1", "untagged " + i, null)));
+        }
+        ((LogSpaceStore) store).compactAll();
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+
+        assertThat(store.pull("spc_a", new PullQuery(100, 10, "tablet", Collections.singletonList("#work")))
+            .getChanges()).extracting("content").containsExactly("untagged 99");
+    }
+
+    @Test
+    void merkleTreeIsRebuiltAfterRestart() {
+        for (int i = 0; i < 50; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (i % 7), "content " + i, null)));
+        }
+        MerkleTree before = store.merkleTree("spc_a");
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+
+        MerkleTree after = store.merkleTree("spc_a");
+        assertThat(after.count("")).isEqualTo(7);
+        assertThat(after.hash("")).isEqualTo(before.hash(""));
+    }
+
+    @Test
+    void purgedTombstonesStayPurgedAcrossCompactionAndRestart() {
+        for (int i = 0; i < 200; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (i % 4), "content " + i, null)));
+        }
+        ChangeRequest delete = change("r0", "gone", null);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+        for (int i = 0; i < 100; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (1 + i % 3), "later " + i, null)));
+        }
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+
+        assertThat(store.collectTombstones(0)).isEqualTo(1);
+        ((LogSpaceStore) store).compactAll();
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+
+        List<String> ids = store.pull("spc_a", new PullQuery(0, 1000)).getChanges().stream()
+            .map(c -> c.getId()).distinct().sorted().collect(Collectors.toList());
+        assertThat(ids).containsExactly("r1", "r2", "r3");
+        assertThat(store.pull("spc_a", new PullQuery(1, 10)).isResetRequired()).isTrue();
+    }
+
+    @Test
+    void deviceCursorsOutliveCloseAndACrashHoldsPurgesBack() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        ChangeRequest delete = change("r1", "one", 1L);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        store.pull("spc_a", new PullQuery(tombstoneRev - 1, 10, "laptop"));
+        ((LogSpaceStore) store).close();
+        store = open(tempDir);
+
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        assertThat(store.collectTombstones(0)).isZero();
+
+        ((LogSpaceStore) store).close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(p -> p.endsWith("device_cursors")).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        store = open(tempDir);
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "laptop"));
+        assertThat(store.collectTombstones(0)).isZero();
+        assertThat(store.collectTombstones(Long.MAX_VALUE)).isZero();
+    }
+
+    @Test
+    void truncatesTornTail() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "kept", null)));
+        store.push("spc_a", "dev", Collections.singletonList(change("r2", "torn", null)));
+        ((LogSpaceStore) store).close();
+
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long secondEntry = 8 + readInt(file, 0);
+            file.seek(secondEntry + 20);
+            file.write(new byte[] {1, 2, 3});
+        }
+
+        store = open(tempDir);
+        ChangePage page = store.pull("spc_a", new PullQuery(0, 10));
+        assertThat(page.getChanges()).extracting("content").containsExactly("kept");
+        assertThat(store.push("spc_a", "dev", Collections.singletonList(change("r3", "new", null)))
+            .getResults().get(0).getServerRev()).isEqualTo(2);
+    }
+
+    private static int readInt(RandomAccessFile file, long position) throws Exception {
+        file.seek(position);
+        return file.readInt();
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private long logBytes() throws Exception {
+        long total = 0;
+        for (Path segment : segments()) {
+            total += Files.size(segment);
+        }
+        return total;
+    }
+}
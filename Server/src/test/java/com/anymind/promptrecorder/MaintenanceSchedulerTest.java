@@ -0,0 +1,170 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.storage.MaintenanceScheduler;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.SpaceConnection;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MaintenanceSchedulerTest {
+    @TempDir
+    Path tempDir;
+
+    private StoragePaths paths;
+    private SpaceDatabase database;
+    private SqliteSpaceStore store;
+
+    @BeforeEach
+    void setUp() {
+        paths = new StoragePaths(tempDir.toString());
+        database = new SpaceDatabase(paths);
+        store = new SqliteSpaceStore(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkpointsVacuumsAndAnalyzesActiveSpaces() throws Exception {
+        char[] filler = new char[4000];
+        Arrays.fill(filler, 'x');
+        for (int i = 0; i < 200; i++) {
+            store.push("spc_hot", "dev", Collections.singletonList(change("r" + i, new String(filler))));
+        }
+        for (int i = 0; i < 200; i++) {
+            store.push("spc_hot", "dev", Collections.singletonList(change("r" + i, "short")));
+        }
+        store.push("spc_cold", "dev", Collections.singletonList(change("r1", "small")));
+        Path wal = paths.spaceDb("spc_hot").resolveSibling("space.sqlite-wal");
+        long walBefore = Files.size(wal);
+
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(database,
+            new MaintenanceScheduler.Settings(10_000, 0, walBefore / 2, walBefore, 1, 10_000, 300), 0);
+        assertThat(scheduler.runOnce()).isEqualTo(3);
+
+        Map<String, Object> stats = scheduler.stats();
+        Map<String, Object> tasks = (Map<String, Object>) stats.get("tasks");
+        assertThat(tasks).containsKeys("checkpoint_truncate", "incremental_vacuum", "analyze");
+        assertThat(stats).containsEntry("backlog", 0).containsEntry("runs", 1L);
+        assertThat(Files.size(wal)).isLessThan(walBefore);
+        assertThat(pragma("spc_hot", "freelist_count")).isZero();
+        assertThat(store.pull("spc_hot", new PullQuery(0, 1000)).getChanges()).hasSize(400);
+
+        assertThat(scheduler.runOnce()).isZero();
+    }
+
+    @Test
+    void leavesBusySpacesInTheBacklog() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one")));
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(database,
+            new MaintenanceScheduler.Settings(10_000, 0, 0, Long.MAX_VALUE, 1, 100, 1), 0);
+        Object gate = new Object();
+        Thread holder = new Thread(() -> {
+            try (SpaceConnection ignored = database.acquire("spc_a")) {
+                synchronized (gate) {
+                    gate.notifyAll();
+                    gate.wait(5000);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        synchronized (gate) {
+            holder.start();
+            gate.wait(5000);
+        }
+
+        assertThat(scheduler.runOnce()).isZero();
+        assertThat(scheduler.stats()).containsEntry("backlog", 1).containsEntry("skipped_busy", 1L);
+
+        synchronized (gate) {
+            gate.notifyAll();
+        }
+        holder.join();
+        assertThat(scheduler.runOnce()).isPositive();
+        assertThat(scheduler.stats()).containsEntry("backlog", 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void truncatesOnlyWhileNoReaderIsOut() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one")));
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(database,
+            new MaintenanceScheduler.Settings(10_000, 0, 0, 0, Long.MAX_VALUE, 100, Long.MAX_VALUE), 0);
+        try (SpaceConnection reader = database.acquireReader("spc_a")) {
+            assertThat(scheduler.runOnce()).isEqualTo(1);
+            assertThat(reader.isReader()).isTrue();
+        }
+        assertThat(scheduler.runOnce()).isEqualTo(1);
+
+        Map<String, Object> tasks = (Map<String, Object>) scheduler.stats().get("tasks");
+        assertThat((Map<String, Object>) tasks.get("checkpoint_passive")).containsEntry("count", 1L);
+        assertThat((Map<String, Object>) tasks.get("checkpoint_truncate")).containsEntry("count", 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void olderDatabasesAreSwitchedToIncrementalVacuumOnOpen() throws Exception {
+        Files.createDirectories(paths.spaceDir("spc_old"));
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + paths.spaceDb("spc_old"));
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE filler (x TEXT)");
+            for (int i = 0; i < 100; i++) {
+                stmt.execute("INSERT INTO filler VALUES (hex(randomblob(2000)))");
+            }
+        }
+
+        assertThat(pragma("spc_old", "auto_vacuum")).isEqualTo(2);
+        try (SpaceConnection handle = database.acquire("spc_old");
+             Statement stmt = handle.connection().createStatement()) {
+            stmt.execute("DELETE FROM filler");
+        }
+        long free = pragma("spc_old", "freelist_count");
+        assertThat(free).isGreaterThan(32);
+        MaintenanceScheduler scheduler = new MaintenanceScheduler(database,
+            new MaintenanceScheduler.Settings(10_000, 0, Long.MAX_VALUE, Long.MAX_VALUE, 1, 10_000, Long.MAX_VALUE), 0);
+        assertThat(scheduler.runOnce()).isEqualTo(1);
+        assertThat(pragma("spc_old", "freelist_count")).isZero();
+        assertThat(scheduler.stats()).containsEntry("vacuum_unavailable", 0L);
+    }
+
+    private long pragma(String spaceId, String name) throws Exception {
+        try (SpaceConnection handle = database.acquire(spaceId);
+             Statement stmt = handle.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            assertThat(rs.next()).isTrue();
+            return rs.getLong(1);
+        }
+    }
+
+    private static ChangeRequest change(String id, String content) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(id);
+        change.setContent(content);
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt("2025-01-01T00:00:00Z");
+        change.setUpdatedAt("2025-01-01T00:00:00Z");
+        return change;
+    }
+}
@@ -0,0 +1,139 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.storage.ChangePage;
+import com.anymind.promptrecorder.storage.PullCoalescer;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.StoredChange;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PullCoalescerTest {
+    private final PullCoalescer coalescer = new PullCoalescer();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentPullsShareTheLeadersQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ChangePage> leader = CompletableFuture.supplyAsync(() -> pull(2, 10, () -> {
+            release.await();
+            return page(2, 5, 5);
+        }), executor);
+        awaitQueries(1);
+
+        CompletableFuture<ChangePage> same = CompletableFuture.supplyAsync(() -> pull(2, 10, this::unexpected), executor);
+        CompletableFuture<ChangePage> later = CompletableFuture.supplyAsync(() -> pull(4, 10, this::unexpected), executor);
+        CompletableFuture<ChangePage> shorter = CompletableFuture.supplyAsync(() -> pull(3, 1, this::unexpected), executor);
+        awaitWaiters(3);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS).getChanges()).extracting("rev").containsExactly(3L, 4L, 5L);
+        assertThat(same.get(5, TimeUnit.SECONDS)).isSameAs(leader.get());
+        assertThat(later.get(5, TimeUnit.SECONDS).getChanges()).extracting("rev").containsExactly(5L);
+        assertThat(shorter.get(5, TimeUnit.SECONDS).getChanges()).extracting("rev").containsExactly(4L);
+        assertThat(later.get().getHeadRev()).isEqualTo(5);
+        assertThat(queries.get()).isEqualTo(1);
+        assertThat(coalescer.stats()).containsEntry("page_queries", 1L).containsEntry("pulls_coalesced", 3L);
+    }
+
+    @Test
+    void pullsTheSharedPageCannotCoverRunTheirOwnQuery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ChangePage> leader = CompletableFuture.supplyAsync(() -> pull(2, 2, () -> {
+            release.await();
+            return page(2, 4, 9);
+        }), executor);
+        awaitQueries(1);
+
+        CompletableFuture<ChangePage> beyond = CompletableFuture.supplyAsync(() -> pull(3, 5, () -> page(3, 8, 9)), executor);
+        CompletableFuture<ChangePage> earlier = CompletableFuture.supplyAsync(() -> pull(1, 5, () -> page(1, 6, 9)), executor);
+        CompletableFuture<ChangePage> fromZero = CompletableFuture.supplyAsync(() -> pull(0, 5, () -> page(0, 5, 9)), executor);
+        assertThat(earlier.get(5, TimeUnit.SECONDS).getChanges()).hasSize(5);
+        assertThat(fromZero.get(5, TimeUnit.SECONDS).getChanges()).hasSize(5);
+        awaitWaiters(1);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS).getChanges()).hasSize(2);
+        assertThat(beyond.get(5, TimeUnit.SECONDS).getChanges()).extracting("rev").containsExactly(4L, 5L, 6L, 7L, 8L);
+        assertThat(queries.get()).isEqualTo(4);
+    }
+
+    @Test
+    void pullsAfterACommitDoNotJoinAnOlderFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ChangePage> leader = CompletableFuture.supplyAsync(() -> pull(2, 10, () -> {
+            release.await();
+            return page(2, 5, 5);
+        }), executor);
+        awaitQueries(1);
+
+        coalescer.committed("spc_a");
+        // the leader is still blocked, so a pull that joined it would time out here
+        ChangePage woken = CompletableFuture.supplyAsync(() -> pull(2, 10, () -> page(2, 6, 6)), executor)
+            .get(5, TimeUnit.SECONDS);
+        assertThat(woken.getChanges()).extracting("rev").containsExactly(3L, 4L, 5L, 6L);
+        assertThat(woken.getHeadRev()).isEqualTo(6);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS).getHeadRev()).isEqualTo(5);
+        assertThat(queries.get()).isEqualTo(2);
+        assertThat(coalescer.stats()).containsEntry("pulls_coalesced", 0L);
+    }
+
+    private ChangePage pull(long since, int limit, PullCoalescer.PageLoader loader) {
+        try {
+            return coalescer.pull("spc_a", new PullQuery(since, limit, "dev-" + since, Collections.<String>emptyList()),
+                () -> {
+                    queries.incrementAndGet();
+                    return loader.load();
+                });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ChangePage unexpected() {
+        throw new AssertionError("joined pull ran its own query");
+    }
+
+    private void awaitQueries(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queries.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(queries.get()).isEqualTo(count);
+    }
+
+    private void awaitWaiters(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!coalescer.stats().get("pulls_waiting").equals(count) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(coalescer.stats()).containsEntry("pulls_waiting", count);
+    }
+
+    private static ChangePage page(long since, long through, long head) {
+        List<StoredChange> changes = new ArrayList<>();
+        for (long rev = since + 1; rev <= through; rev++) {
+            changes.add(new StoredChange(rev, "r" + rev, "c", Collections.<String>emptyList(),
+                Collections.<String>emptyList(), "t", "t", false, rev, "t", "dev"));
+        }
+        return new ChangePage(changes, head);
+    }
+}
@@ -0,0 +1,89 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.anymind.promptrecorder.auth.SessionTokens;
+import com.anymind.promptrecorder.storage.SpaceRegistry;
+import com.anymind.promptrecorder.storage.SpaceRegistry.SpaceInfo;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionTokensTest {
+    private static final long NOW = 1_800_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void verifiesBoundSpaceDeviceAndExpiry() {
+        SpaceRegistry registry = new SpaceRegistry(new StoragePaths(tempDir.toString()));
+        SpaceInfo space = registry.registerSpace("spc_a", "sec_a", null, "2026-01-01T00:00:00Z");
+        registry.registerSpace("spc_b", "sec_b", null, "2026-01-01T00:00:00Z");
+        SessionTokens tokens = new SessionTokens(registry, "k1=alpha", 60, 300);
+
+        String token = tokens.issue(space, "phone", NOW);
+
+        assertThat(tokens.verify(token, "spc_a", NOW + 59)).contains("phone");
+        assertThat(tokens.verify(token, "spc_a", NOW + 60)).isEmpty();
+        assertThat(tokens.verify(token, "spc_b", NOW)).isEmpty();
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA";
+        assertThat(tokens.verify(forged, "spc_a", NOW)).isEmpty();
+        assertThat(tokens.verify("not-a-token", "spc_a", NOW)).isEmpty();
+    }
+
+    @Test
+    void retiredKeysStillVerifyUntilDropped() {
+        SpaceRegistry registry = new SpaceRegistry(new StoragePaths(tempDir.toString()));
+        SpaceInfo space = registry.registerSpace("spc_a", "sec_a", null, "2026-01-01T00:00:00Z");
+        String token = new SessionTokens(registry, "k1=alpha", 60, 300).issue(space, "phone", NOW);
+
+        SessionTokens rotated = new SessionTokens(registry, "k2=beta,k1=alpha", 60, 300);
+        assertThat(rotated.verify(token, "spc_a", NOW)).contains("phone");
+        assertThat(rotated.issue(space, "phone", NOW)).startsWith("st1.k2.");
+
+        assertThat(new SessionTokens(registry, "k2=beta", 60, 300).verify(token, "spc_a", NOW)).isEmpty();
+    }
+
+    @Test
+    void changedSecretRevokesTokensOnRevalidation() {
+        SpaceInfo original = new SpaceRegistry(new StoragePaths(tempDir.resolve("a").toString()))
+            .registerSpace("spc_a", "sec_old", null, "2026-01-01T00:00:00Z");
+        SpaceRegistry current = new SpaceRegistry(new StoragePaths(tempDir.resolve("b").toString()));
+        current.registerSpace("spc_a", "sec_new", null, "2026-01-01T00:00:00Z");
+        SessionTokens tokens = new SessionTokens(current, "k1=alpha", 60, 0);
+
+        assertThat(tokens.verify(tokens.issue(original, "phone", NOW), "spc_a", NOW)).isEmpty();
+        assertThat(tokens.verify(tokens.issue(current.findSpace("spc_a").get(), "phone", NOW), "spc_a", NOW))
+            .contains("phone");
+        assertThat(tokens.stats()).containsEntry("revalidations", 2L);
+    }
+
+    @Test
+    void confirmationsExpireWithTheRevalidateInterval() throws Exception {
+        SpaceRegistry registry = new SpaceRegistry(new StoragePaths(tempDir.toString()));
+        SessionTokens tokens = new SessionTokens(registry, "k1=alpha", 60, 1);
+        for (int i = 0; i < 5; i++) {
+            tokens.issue(registry.registerSpace("spc_" + i, "sec_" + i, null, "2026-01-01T00:00:00Z"), "phone", NOW);
+        }
+        assertThat(tokens.stats()).containsEntry("confirmed_spaces", 5);
+
+        Thread.sleep(1100);
+        String token = tokens.issue(registry.findSpace("spc_0").get(), "phone", NOW);
+        assertThat(tokens.stats()).containsEntry("confirmed_spaces", 1);
+        assertThat(tokens.verify(token, "spc_0", NOW)).contains("phone");
+    }
+
+    @Test
+    void dotsAreOnlyRejectedInKeyIds() {
+        SpaceRegistry registry = new SpaceRegistry(new StoragePaths(tempDir.toString()));
+        SpaceInfo space = registry.registerSpace("spc_a", "sec_a", null, "2026-01-01T00:00:00Z");
+        SessionTokens tokens = new SessionTokens(registry, "k1=pass.phrase.with.dots", 60, 300);
+
+        assertThat(tokens.verify(tokens.issue(space, "phone", NOW), "spc_a", NOW)).contains("phone");
+        assertThatThrownBy(() -> new SessionTokens(registry, "k.1=alpha", 60, 300))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,166 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.anymind.promptrecorder.backup.SpaceExporter;
+import com.anymind.promptrecorder.model.BackupModels.ExportedSpace;
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpaceExporterTest {
+    @TempDir
+    Path tempDir;
+
+    private SpaceDatabase database;
+    private SqliteSpaceStore store;
+    private SpaceExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        database = new SpaceDatabase(new StoragePaths(tempDir.resolve("data").toString()));
+        store = new SqliteSpaceStore(database);
+        exporter = new SpaceExporter(database, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void incrementalExportCarriesOnlyLaterChangesAndDeletes() throws Exception {
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one", false), change("r2", "two", false)));
+        store.push("spc_b", "dev", Collections.singletonList(change("b1", "bee", false)));
+        Path full = tempDir.resolve("full.zip");
+        try (OutputStream out = Files.newOutputStream(full)) {
+            exporter.export(Arrays.asList("spc_a", "spc_b"), Collections.<String, Long>emptyMap(), out);
+        }
+        assertThat(lines(full, "spc_a")).hasSize(2);
+        assertThat(lines(full, "spc_b")).hasSize(1);
+        assertThatThrownBy(() -> exporter.export(Collections.singletonList("spc_none"),
+            Collections.<String, Long>emptyMap(), new ByteArrayOutputStream()))
+            .hasMessageContaining("no database for space spc_none");
+
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one, edited", false), change("r2", "two", true)));
+        Map<String, Long> since = SpaceExporter.sinceRevs(full);
+        assertThat(since).containsEntry("spc_a", 2L).containsEntry("spc_b", 1L);
+        ByteArrayOutputStream incremental = new ByteArrayOutputStream();
+        List<ExportedSpace> exported = exporter.export(Arrays.asList("spc_a", "spc_b"), since, incremental);
+
+        assertThat(exported).extracting("fromRev").containsExactly(2L, 1L);
+        assertThat(exported).extracting("toRev").containsExactly(4L, 1L);
+        assertThat(exported).extracting("full").containsExactly(false, false);
+        Path delta = tempDir.resolve("delta.zip");
+        Files.write(delta, incremental.toByteArray());
+        assertThat(lines(delta, "spc_a")).hasSize(2)
+            .anySatisfy(line -> assertThat(line).contains("\"id\":\"r1\"").contains("one, edited"))
+            .anySatisfy(line -> assertThat(line).contains("\"id\":\"r2\"").contains("\"deleted\":true"));
+        assertThat(lines(delta, "spc_b")).isEmpty();
+        assertThat(exporter.stats()).containsEntry("exports", 3L);
+    }
+
+    @Test
+    void exportReadsWithoutOpeningTheWriterAndRefusesOlderSchemas() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", false)));
+        database.close();
+        StoragePaths paths = new StoragePaths(tempDir.resolve("data").toString());
+        Files.createDirectories(paths.spaceDir("spc_old"));
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + paths.spaceDb("spc_old"));
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE records (id TEXT PRIMARY KEY, content TEXT NOT NULL)");
+        }
+        SpaceDatabase offline = new SpaceDatabase(paths);
+        try {
+            SpaceExporter other = new SpaceExporter(offline, 0);
+            List<ExportedSpace> exported = other.export(Collections.singletonList("spc_a"),
+                Collections.<String, Long>emptyMap(), new ByteArrayOutputStream());
+
+            assertThat(exported).extracting("records").containsExactly(1L);
+            assertThat(offline.stats()).containsEntry("open_connections", 0);
+            assertThatThrownBy(() -> other.export(Collections.singletonList("spc_old"),
+                Collections.<String, Long>emptyMap(), new ByteArrayOutputStream()))
+                .hasMessageContaining("older schema");
+        } finally {
+            offline.close();
+        }
+    }
+
+    @Test
+    void spacesOnOtherRootsAreFoundOnlyWhenTheRootsAreGiven() throws Exception {
+        String roots = tempDir.resolve("disk1") + "," + tempDir.resolve("disk2");
+        SpaceDatabase spread = new SpaceDatabase(new StoragePaths(tempDir.resolve("data").toString(), roots, 0));
+        List<String> spaceIds = Arrays.asList("spc_1", "spc_2", "spc_3", "spc_4", "spc_5", "spc_6");
+        try {
+            SqliteSpaceStore spreadStore = new SqliteSpaceStore(spread);
+            for (String spaceId : spaceIds) {
+                spreadStore.push(spaceId, "dev", Collections.singletonList(change("r1", spaceId, false)));
+            }
+        } finally {
+            spread.close();
+        }
+
+        SpaceDatabase configured = new SpaceDatabase(new StoragePaths(tempDir.resolve("data").toString(), roots, 0));
+        SpaceDatabase primaryOnly = new SpaceDatabase(new StoragePaths(tempDir.resolve("data").toString()));
+        try {
+            assertThat(new SpaceExporter(configured, 0).export(spaceIds, Collections.<String, Long>emptyMap(),
+                new ByteArrayOutputStream())).extracting("records").containsOnly(1L);
+            assertThatThrownBy(() -> new SpaceExporter(primaryOnly, 0).export(spaceIds,
+                Collections.<String, Long>emptyMap(), new ByteArrayOutputStream()))
+                .hasMessageContaining("no database for space");
+        } finally {
+            configured.close();
+            primaryOnly.close();
+        }
+    }
+
+    private static List<String> lines(Path archive, String spaceId) throws Exception {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry entry = zip.getEntry("spaces/" + spaceId + ".jsonl");
+            assertThat(entry).isNotNull();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            try (InputStream in = zip.getInputStream(entry)) {
+                while ((read = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+            }
+            String text = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+            return text.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(text.split("\n"));
+        }
+    }
+
+    private static ChangeRequest change(String id, String content, boolean deleted) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(id);
+        change.setContent(content);
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt("2026-01-01T00:00:00Z");
+        change.setUpdatedAt("2026-01-02T00:00:00Z");
+        change.setDeleted(deleted);
+        return change;
+    }
+}
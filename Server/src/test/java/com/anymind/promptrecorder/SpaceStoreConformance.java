@@ -0,0 +1,348 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.storage.ChangePage;
+import com.anymind.promptrecorder.storage.GroupSummaries;
+import com.anymind.promptrecorder.storage.MerkleTree;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.Revision;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.StoredChange;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+abstract class SpaceStoreConformance {
+
+    @TempDir
+    Path tempDir;
+
+    protected SpaceStore store;
+
+    protected abstract SpaceStore createStore(Path dir) throws Exception;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = createStore(tempDir);
+    }
+
+    protected static ChangeRequest change(String id, String content, Long baseRev) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(id);
+        change.setContent(content);
+        change.setSystemTags(Collections.singletonList("#P1"));
+        change.setUserTags(Arrays.asList("#a", "#b"));
+        change.setCreatedAt("2026-01-01T00:00:00Z");
+        change.setUpdatedAt("2026-01-02T00:00:00Z");
+        change.setBaseRev(baseRev);
+        return change;
+    }
+
+    @Test
+    void emptySpacePullsNothing() {
+        ChangePage page = store.pull("spc_empty", new PullQuery(0, 10));
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getHeadRev()).isEqualTo(0);
+    }
+
+    @Test
+    void pushAssignsIncreasingRevs() {
+        PushResponse first = store.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), change("r2", "two", null)));
+        PushResponse second = store.push("spc_a", "dev", Collections.singletonList(change("r3", "three", null)));
+
+        assertThat(first.getResults()).extracting("id").containsExactly("r1", "r2");
+        long rev1 = first.getResults().get(0).getServerRev();
+        long rev2 = first.getResults().get(1).getServerRev();
+        long rev3 = second.getResults().get(0).getServerRev();
+        assertThat(rev1).isPositive();
+        assertThat(rev2).isGreaterThan(rev1);
+        assertThat(rev3).isGreaterThan(rev2);
+        assertThat(second.getServerRevMax()).isEqualTo(rev3);
+    }
+
+    @Test
+    void pullReturnsStoredFields() {
+        ChangeRequest deleted = change("r2", "gone", null);
+        deleted.setDeleted(true);
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "hello #a", null), deleted));
+
+        ChangePage page = store.pull("spc_a", new PullQuery(0, 10));
+
+        assertThat(page.getChanges()).hasSize(2);
+        StoredChange first = page.getChanges().get(0);
+        assertThat(first.getId()).isEqualTo("r1");
+        assertThat(first.getContent()).isEqualTo("hello #a");
+        assertThat(first.getSystemTags()).containsExactly("#P1");
+        assertThat(first.getUserTags()).containsExactly("#a", "#b");
+        assertThat(first.getCreatedAt()).isEqualTo("2026-01-01T00:00:00Z");
+        assertThat(first.getUpdatedAt()).isEqualTo("2026-01-02T00:00:00Z");
+        assertThat(first.isDeleted()).isFalse();
+        assertThat(first.getServerUpdatedAt()).isNotEmpty();
+        assertThat(first.getLastDeviceId()).isEqualTo("dev");
+        assertThat(page.getChanges().get(1).isDeleted()).isTrue();
+        assertThat(page.getHeadRev()).isEqualTo(page.getChanges().get(1).getRev());
+    }
+
+    @Test
+    void pullPagesBySinceRevAndLimit() {
+        for (int i = 0; i < 5; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + i, "c" + i, null)));
+        }
+
+        ChangePage firstPage = store.pull("spc_a", new PullQuery(0, 2));
+        long cursor = firstPage.getChanges().get(1).getRev();
+        ChangePage secondPage = store.pull("spc_a", new PullQuery(cursor, 10));
+
+        assertThat(firstPage.getChanges()).extracting("id").containsExactly("r0", "r1");
+        assertThat(secondPage.getChanges()).extracting("id").containsExactly("r2", "r3", "r4");
+        assertThat(secondPage.getHeadRev()).isEqualTo(firstPage.getHeadRev());
+    }
+
+    @Test
+    void updatesReportConflictsAndLatestState() {
+        long rev1 = store.push("spc_a", "dev1", Collections.singletonList(change("r1", "v1", null)))
+            .getResults().get(0).getServerRev();
+        PushResponse update = store.push("spc_a", "dev2", Collections.singletonList(change("r1", "v2", rev1)));
+        PushResponse stale = store.push("spc_a", "dev1", Collections.singletonList(change("r1", "v3", rev1)));
+
+        assertThat(update.getResults().get(0).isConflict()).isFalse();
+        assertThat(stale.getResults().get(0).isConflict()).isTrue();
+
+        List<StoredChange> changes = store.pull("spc_a", new PullQuery(rev1, 10)).getChanges();
+        assertThat(changes).isNotEmpty();
+        StoredChange last = changes.get(changes.size() - 1);
+        assertThat(last.getContent()).isEqualTo("v3");
+        assertThat(last.getServerRev()).isEqualTo(stale.getResults().get(0).getServerRev());
+        assertThat(last.getLastDeviceId()).isEqualTo("dev1");
+        assertThat(last.getCreatedAt()).isEqualTo("2026-01-01T00:00:00Z");
+    }
+
+    @Test
+    void repeatedRequestIdReplaysTheOriginalResponse() {
+        List<ChangeRequest> batch = Arrays.asList(change("r1", "one", null), change("r2", "two", null));
+        PushResponse first = store.push("spc_a", "dev", "req-1", batch);
+        PushResponse retry = store.push("spc_a", "dev", "req-1", batch);
+
+        assertThat(retry.getResults()).extracting("serverRev").containsExactly(
+            first.getResults().get(0).getServerRev(), first.getResults().get(1).getServerRev());
+        assertThat(retry.getServerRevMax()).isEqualTo(first.getServerRevMax());
+        ChangePage page = store.pull("spc_a", new PullQuery(0, 10));
+        assertThat(page.getChanges()).hasSize(2);
+        assertThat(page.getHeadRev()).isEqualTo(first.getServerRevMax());
+
+        List<ChangeRequest> edited = Collections.singletonList(change("r1", "edited", null));
+        PushResponse otherDevice = store.push("spc_a", "dev2", "req-1", edited);
+        assertThat(otherDevice.getServerRevMax()).isGreaterThan(first.getServerRevMax());
+        PushResponse untagged = store.push("spc_a", "dev", null, Collections.singletonList(change("r1", "again", null)));
+        assertThat(untagged.getServerRevMax()).isGreaterThan(otherDevice.getServerRevMax());
+    }
+
+    @Test
+    void unchangedRecordsKeepTheirRev() {
+        long rev = store.push("spc_a", "dev1", Collections.singletonList(change("r1", "same", null)))
+            .getResults().get(0).getServerRev();
+        ChangeRequest again = change("r1", "same", null);
+        again.setUpdatedAt("2026-03-01T00:00:00Z");
+        PushResponse repeat = store.push("spc_a", "dev2", Collections.singletonList(again));
+
+        assertThat(repeat.getResults().get(0).getServerRev()).isEqualTo(rev);
+        assertThat(repeat.getResults().get(0).isConflict()).isFalse();
+        assertThat(repeat.getServerRevMax()).isEqualTo(rev);
+        assertThat(store.pull("spc_a", new PullQuery(rev, 10)).getChanges()).isEmpty();
+
+        ChangeRequest retagged = change("r1", "same", null);
+        retagged.setUserTags(Collections.singletonList("#c"));
+        assertThat(store.push("spc_a", "dev2", Collections.singletonList(retagged)).getResults().get(0).getServerRev())
+            .isGreaterThan(rev);
+    }
+
+    @Test
+    void tagFilteredPullFollowsRecordsInAndOutOfTheFilter() {
+        ChangeRequest work = change("r2", "two", null);
+        work.setUserTags(Collections.singletonList("#work"));
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), work));
+        List<String> filter = Collections.singletonList("#work");
+
+        ChangePage first = store.pull("spc_a", new PullQuery(0, 10, "tablet", filter));
+        assertThat(first.getChanges()).extracting("id").containsExactly("r2");
+        long cursor = first.getHeadRev();
+
+        ChangeRequest joined = change("r1", "one", null);
+        joined.setUserTags(Arrays.asList("#a", "#work"));
+        ChangeRequest left = change("r2", "two", null);
+        left.setUserTags(Collections.singletonList("#home"));
+        store.push("spc_a", "dev", Arrays.asList(joined, left, change("r3", "three", null)));
+
+        ChangePage next = store.pull("spc_a", new PullQuery(cursor, 10, "tablet", filter));
+        assertThat(next.getChanges()).extracting("id").containsExactly("r1", "r2");
+        assertThat(next.getChanges().get(1).getUserTags()).containsExactly("#home");
+        assertThat(store.pull("spc_a", new PullQuery(cursor, 10, "tablet", Collections.singletonList("#P1")))
+            .getChanges()).hasSize(3);
+    }
+
+    @Test
+    void fetchReturnsLatestStateOfRequestedRecords() {
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), change("r2", "two", null)));
+        PushResponse update = store.push("spc_a", "dev", Collections.singletonList(change("r1", "uno", null)));
+
+        List<StoredChange> found = store.fetch("spc_a", Arrays.asList("r1", "nope"));
+        assertThat(found).extracting("content").containsExactly("uno");
+        assertThat(found.get(0).getServerRev()).isEqualTo(update.getServerRevMax());
+        assertThat(store.fetch("spc_other", Collections.singletonList("r1"))).isEmpty();
+    }
+
+    @Test
+    void merkleTreeTracksLiveRecordVersions() {
+        PushResponse first = store.push("spc_a", "dev", Arrays.asList(
+            change("r1", "one", null), change("r2", "two", null), change("r3", "three", null)));
+        long rev3 = first.getResults().get(2).getServerRev();
+        ChangeRequest deleted = change("r2", "two", null);
+        deleted.setDeleted(true);
+        long rev1 = store.push("spc_a", "dev", Arrays.asList(change("r1", "uno", null), deleted))
+            .getResults().get(0).getServerRev();
+
+        MerkleTree tree = store.merkleTree("spc_a");
+        assertThat(tree.count("")).isEqualTo(2);
+        assertThat(tree.hash("")).isEqualTo(MerkleTree.entryHash("r1", rev1) ^ MerkleTree.entryHash("r3", rev3));
+        String leaf = MerkleTree.bucketPrefix(MerkleTree.bucketOf("r1"));
+        assertThat(tree.hash(leaf.substring(0, 1))).isNotZero();
+        assertThat(store.bucketEntries("spc_a", MerkleTree.bucketOf("r1"))).containsEntry("r1", rev1);
+        assertThat(store.bucketEntries("spc_a", MerkleTree.bucketOf("r2"))).doesNotContainKey("r2");
+        assertThat(store.merkleTree("spc_empty").count("")).isZero();
+    }
+
+    @Test
+    void summariesCountLiveRecordsByGroupAndTag() {
+        ChangeRequest february = change("r2", "two", null);
+        february.setCreatedAt("2026-02-10T08:00:00Z");
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), february, change("r3", "three", null)));
+        assertThat(store.summaries("spc_a", GroupSummaries.MONTH).counts(GroupSummaries.MONTH))
+            .containsEntry("2026-01", 2L).containsEntry("2026-02", 1L);
+
+        ChangeRequest retagged = change("r1", "one", null);
+        retagged.setUserTags(Collections.singletonList("#c"));
+        retagged.setCreatedAt("2030-01-01T00:00:00Z");
+        ChangeRequest deleted = change("r3", "three", null);
+        deleted.setDeleted(true);
+        store.push("spc_a", "dev", Arrays.asList(retagged, deleted));
+
+        GroupSummaries weeks = store.summaries("spc_a", GroupSummaries.WEEK);
+        assertThat(weeks.counts(GroupSummaries.WEEK)).containsOnly(entry("2026-W01", 1L), entry("2026-W07", 1L));
+        assertThat(weeks.counts(GroupSummaries.TAG)).containsOnly(
+            entry("#P1", 2L), entry("#a", 1L), entry("#b", 1L), entry("#c", 1L));
+        assertThat(weeks.counts(GroupSummaries.DAY)).isEmpty();
+        assertThat(store.summaries("spc_a", GroupSummaries.DAY).counts(GroupSummaries.DAY))
+            .containsOnly(entry("2026-01-01", 1L), entry("2026-02-10", 1L));
+        assertThat(store.summaries("spc_empty", GroupSummaries.WEEK).counts(GroupSummaries.TAG)).isEmpty();
+    }
+
+    @Test
+    void historyRebuildsEveryEarlierVersion() {
+        store.push("spc_a", "dev", Collections.singletonList(change("r0", "other", null)));
+        List<String> versions = new ArrayList<>();
+        List<Long> revs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String content = i % 5 == 4 ? "short" : "Summarize the notes, take " + i + ", and keep it brief";
+            versions.add(content);
+            revs.add(store.push("spc_a", "dev", Collections.singletonList(change("r1", content, null)))
+                .getResults().get(0).getServerRev());
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertThat(store.revisionAt("spc_a", "r1", revs.get(i)).getContent()).isEqualTo(versions.get(i));
+        }
+        assertThat(store.revisionAt("spc_a", "r1", 100).getRev()).isEqualTo(revs.get(19));
+        assertThat(store.revisionAt("spc_a", "r1", revs.get(0) - 1)).isNull();
+        assertThat(store.revisionAt("spc_a", "missing", 100)).isNull();
+        List<Revision> listed = store.revisions("spc_a", "r1");
+        Collections.reverse(revs);
+        assertThat(listed).extracting("rev").containsExactlyElementsOf(revs);
+        assertThat(listed).extracting("content").containsOnlyNulls();
+        assertThat(store.revisions("spc_a", "missing")).isEmpty();
+    }
+
+    @Test
+    void historyKeepsEditedEmojiWhole() {
+        assumeTrue(store.keepsHistory());
+        List<String> versions = Arrays.asList("Mood: \uD83D\uDE00 today", "Mood: \uD83D\uDE01 today",
+            "Mood: \uD83D\uDE01\uD83D\uDE00 today", "\uD83D\uDE00 today", "\uD83D\uDE01");
+        List<Long> revs = new ArrayList<>();
+        for (String content : versions) {
+            revs.add(store.push("spc_a", "dev", Collections.singletonList(change("r1", content, null)))
+                .getResults().get(0).getServerRev());
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertThat(store.revisionAt("spc_a", "r1", revs.get(i)).getContent()).isEqualTo(versions.get(i));
+        }
+    }
+
+    @Test
+    void spacesAreIsolated() {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "a", null)));
+        store.push("spc_b", "dev", Collections.singletonList(change("r1", "b", null)));
+
+        assertThat(store.pull("spc_a", new PullQuery(0, 10)).getChanges()).extracting("content").containsExactly("a");
+        assertThat(store.pull("spc_b", new PullQuery(0, 10)).getChanges()).extracting("content").containsExactly("b");
+    }
+
+    @Test
+    void purgesTombstonesOnceEveryActiveDeviceHasPassedThem() {
+        store.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), change("r2", "two", null)));
+        ChangeRequest delete = change("r1", "one", 1L);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        store.pull("spc_a", new PullQuery(tombstoneRev - 1, 10, "laptop"));
+        assertThat(store.collectTombstones(0)).isZero();
+
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "laptop"));
+        assertThat(store.collectTombstones(0)).isEqualTo(1);
+
+        ChangePage fresh = store.pull("spc_a", new PullQuery(0, 10, "tablet"));
+        assertThat(fresh.getChanges()).extracting("id").containsExactly("r2");
+        assertThat(fresh.isResetRequired()).isFalse();
+        assertThat(fresh.getHeadRev()).isEqualTo(tombstoneRev);
+    }
+
+    @Test
+    void devicesBehindThePurgeMustResync() {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        ChangeRequest delete = change("r1", "one", 1L);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        assertThat(store.collectTombstones(0)).isEqualTo(1);
+
+        ChangePage stale = store.pull("spc_a", new PullQuery(1, 10, "old-phone"));
+        assertThat(stale.isResetRequired()).isTrue();
+        assertThat(stale.getChanges()).isEmpty();
+        assertThat(store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone")).isResetRequired()).isFalse();
+    }
+
+    @Test
+    void untrackedPullersAndInactiveDevicesKeepTombstones() {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        ChangeRequest delete = change("r1", "one", 1L);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10));
+        assertThat(store.collectTombstones(0)).isZero();
+
+        assertThat(store.collectTombstones(Long.MAX_VALUE)).isZero();
+        assertThat(store.pull("spc_a", new PullQuery(0, 10)).getChanges()).extracting("deleted").containsExactly(true, true);
+    }
+}
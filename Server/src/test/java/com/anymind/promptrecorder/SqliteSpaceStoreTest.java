@@ -0,0 +1,225 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.storage.ChangePage;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.GroupSummaries;
+import com.anymind.promptrecorder.storage.MerkleTree;
+import com.anymind.promptrecorder.storage.PullQuery;
+import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SpaceStore;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
+import com.anymind.promptrecorder.storage.StoragePaths;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SqliteSpaceStoreTest extends SpaceStoreConformance {
+    private SpaceDatabase database;
+
+    @Override
+    protected SpaceStore createStore(Path dir) {
+        database = new SpaceDatabase(new StoragePaths(dir.toString()));
+        return new SqliteSpaceStore(database);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reusesPreparedStatementsAcrossRequests() {
+        for (int i = 0; i < 20; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r" + (i % 3), "content " + i, null)));
+            store.pull("spc_a", new PullQuery(i, 10));
+        }
+
+        Map<String, Object> stats = store.stats();
+        Map<String, Object> cache = (Map<String, Object>) stats.get("statement_cache");
+        assertThat(stats).containsEntry("open_connections", 1);
+        assertThat((Long) cache.get("misses")).isLessThanOrEqualTo(16L);
+        assertThat((Double) cache.get("hit_rate")).isGreaterThan(0.9);
+    }
+
+    @Test
+    void readsDoNotWaitForTheWriter() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> store.withSpaceLocked("spc_a", () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        writer.start();
+        try {
+            held.await();
+            ChangePage page = CompletableFuture.supplyAsync(() ->
+                store.pull("spc_a", new PullQuery(0, 10, "tablet", Collections.<String>emptyList())))
+                .get(5, TimeUnit.SECONDS);
+            assertThat(page.getChanges()).extracting("id").containsExactly("r1");
+            assertThat(CompletableFuture.supplyAsync(() -> store.fetch("spc_a", Collections.singletonList("r1")))
+                .get(5, TimeUnit.SECONDS)).hasSize(1);
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+        assertThat(store.stats()).containsEntry("open_readers", 1).containsEntry("cursor_acks_deferred", 1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recentPullsAreServedFromTheHotTail() {
+        SpaceStore hot = new SqliteSpaceStore(database, DurabilityPolicy.strict(), 3, 1024 * 1024);
+        hot.push("spc_a", "dev", Arrays.asList(change("r1", "one", null), change("r2", "two", null)));
+        hot.push("spc_a", "dev", Collections.singletonList(change("r3", "three", null)));
+        ChangeRequest gone = change("r1", "gone", null);
+        gone.setDeleted(true);
+        hot.push("spc_a", "dev", Arrays.asList(change("r2", "two again", null), gone));
+
+        for (long since : new long[] {2, 3, 5}) {
+            ChangePage fromRing = hot.pull("spc_a", new PullQuery(since, 2, "tablet", Collections.<String>emptyList()));
+            ChangePage fromDisk = store.pull("spc_a", new PullQuery(since, 2, "tablet", Collections.<String>emptyList()));
+            assertThat(fromRing.getChanges()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(fromDisk.getChanges());
+            assertThat(fromRing.getHeadRev()).isEqualTo(fromDisk.getHeadRev());
+        }
+        assertThat(hot.pull("spc_a", new PullQuery(1, 10)).getChanges()).extracting("rev").containsExactly(2L, 3L, 4L, 5L);
+        Map<String, Object> tail = (Map<String, Object>) hot.stats().get("hot_tail");
+        assertThat(tail).containsEntry("rings", 1).containsEntry("hits", 3L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void historyKeepsEditsAsDeltasBetweenKeyframes() throws Exception {
+        StringBuilder base = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            base.append("line ").append(i).append('\n');
+        }
+        for (int i = 0; i <= 30; i++) {
+            store.push("spc_a", "dev", Collections.singletonList(change("r1", base + "edit " + i, null)));
+        }
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + new StoragePaths(tempDir.toString()).spaceDb("spc_a"));
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(keyframe), SUM(LENGTH(body)) FROM record_revisions")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(30);
+            assertThat(rs.getInt(2)).isEqualTo(1);
+            assertThat(rs.getLong(3)).isLessThan(base.length() + 30 * 16);
+        }
+        assertThat(store.revisionAt("spc_a", "r1", 2).getContent()).isEqualTo(base + "edit 1");
+    }
+
+    @Test
+    void pushReceiptsSurviveRestart() {
+        long rev = store.push("spc_a", "dev", "req-1", Collections.singletonList(change("r1", "one", null)))
+            .getResults().get(0).getServerRev();
+        database.close();
+        store = createStore(tempDir);
+
+        PushResponse retry = store.push("spc_a", "dev", "req-1", Collections.singletonList(change("r1", "one", null)));
+        assertThat(retry.getResults().get(0).getServerRev()).isEqualTo(rev);
+        assertThat(retry.getDurability()).isEqualTo("strict");
+        assertThat(store.stats()).containsEntry("push_replays", 1L);
+        assertThat(store.pull("spc_a", new PullQuery(0, 10)).getHeadRev()).isEqualTo(rev);
+    }
+
+    @Test
+    void hibernatedSpacesAreStillCollected() {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        ChangeRequest delete = change("r1", "one", 1L);
+        delete.setDeleted(true);
+        long tombstoneRev = store.push("spc_a", "dev", Collections.singletonList(delete)).getResults().get(0).getServerRev();
+        store.pull("spc_a", new PullQuery(tombstoneRev, 10, "phone"));
+        store.push("spc_b", "dev", Collections.singletonList(change("r1", "kept", null)));
+        store.pull("spc_b", new PullQuery(1, 10, "phone"));
+        assertThat(store.hibernateIdle(0)).isEqualTo(2);
+
+        assertThat(store.collectTombstones(0)).isEqualTo(1);
+        assertThat(store.stats()).containsEntry("open_connections", 1);
+        assertThat(store.pull("spc_a", new PullQuery(0, 10)).getChanges()).isEmpty();
+    }
+
+    @Test
+    void relaxedCheckpointsUseTheWriterAndSkipABusyOne() throws Exception {
+        store.push("spc_a", "dev", Collections.singletonList(change("r1", "one", null)));
+        assertThat(database.checkpoint("spc_a")).isTrue();
+        assertThat(database.checkpoint("spc_none")).isFalse();
+        assertThat(database.hasDatabase("spc_none")).isFalse();
+
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> store.withSpaceLocked("spc_a", () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        writer.start();
+        try {
+            held.await();
+            assertThat(database.checkpoint("spc_a")).isFalse();
+        } finally {
+            release.countDown();
+            writer.join();
+        }
+        assertThat(store.stats()).containsEntry("open_connections", 1);
+    }
+
+    @Test
+    void upgradedSpacesAreBackfilled() throws Exception {
+        StoragePaths paths = new StoragePaths(tempDir.resolve("legacy").toString());
+        Files.createDirectories(paths.spaceDir("spc_old"));
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + paths.spaceDb("spc_old"));
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE records (id TEXT PRIMARY KEY, content TEXT NOT NULL, " +
+                "system_tags_json TEXT NOT NULL, user_tags_json TEXT NOT NULL, created_at TEXT NOT NULL, " +
+                "updated_at_client TEXT NOT NULL, deleted INTEGER NOT NULL DEFAULT 0, server_rev INTEGER NOT NULL, " +
+                "server_updated_at TEXT NOT NULL, last_device_id TEXT)");
+            stmt.execute("CREATE TABLE changes (rev INTEGER PRIMARY KEY AUTOINCREMENT, record_id TEXT NOT NULL, " +
+                "deleted INTEGER NOT NULL, server_updated_at TEXT NOT NULL)");
+            stmt.execute("INSERT INTO changes (record_id, deleted, server_updated_at) VALUES ('r1', 0, 'then')");
+            stmt.execute("INSERT INTO records VALUES ('r1', 'legacy', '[\"#P1\"]', '[\"#a\",\"#b\"]', " +
+                "'2026-01-01T00:00:00Z', '2026-01-02T00:00:00Z', 0, 1, 'then', 'dev')");
+        }
+        SpaceDatabase legacy = new SpaceDatabase(paths);
+        try {
+            SpaceStore upgraded = new SqliteSpaceStore(legacy);
+            PushResponse response = upgraded.push("spc_old", "dev", Collections.singletonList(change("r1", "legacy", null)));
+            assertThat(response.getResults().get(0).getServerRev()).isEqualTo(1);
+            assertThat(response.getResults().get(0).getServerUpdatedAt()).isEqualTo("then");
+            assertThat(upgraded.stats()).containsEntry("unchanged_skipped", 1L);
+            assertThat(upgraded.pull("spc_old", new PullQuery(0, 10, "dev", Collections.singletonList("#b")))
+                .getChanges()).extracting("id").containsExactly("r1");
+            assertThat(upgraded.merkleTree("spc_old").hash("")).isEqualTo(MerkleTree.entryHash("r1", 1));
+            assertThat(upgraded.bucketEntries("spc_old", MerkleTree.bucketOf("r1"))).containsEntry("r1", 1L);
+            assertThat(upgraded.summaries("spc_old", GroupSummaries.WEEK).counts(GroupSummaries.TAG))
+                .containsEntry("#a", 1L).containsEntry("#P1", 1L);
+        } finally {
+            legacy.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.anymind.promptrecorder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.anymind.promptrecorder.storage.StoragePaths;
+import com.anymind.promptrecorder.storage.StorageRoot;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StoragePathsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void spreadsSpacesByWeight() {
+        String roots = tempDir.resolve("a") + ":2," + tempDir.resolve("b") + ":1";
+        StoragePaths paths = new StoragePaths(tempDir.resolve("main").toString(), roots, 0);
+        StoragePaths again = new StoragePaths(tempDir.resolve("main").toString(), roots, 0);
+
+        Map<Path, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String spaceId = "spc_" + i;
+            StorageRoot root = paths.rootFor(spaceId);
+            counts.merge(root.path(), 1, Integer::sum);
+            assertThat(again.spaceDb(spaceId)).isEqualTo(paths.spaceDb(spaceId));
+        }
+
+        assertThat(paths.registryDb().getParent()).isEqualTo(tempDir.resolve("main").toAbsolutePath());
+        assertThat(counts).hasSize(2);
+        double share = counts.get(tempDir.resolve("a").toAbsolutePath()) / 3000.0;
+        assertThat(share).isBetween(0.55, 0.78);
+    }
+
+    @Test
+    void findsSpacesOutsideTheirHashedRoot() throws Exception {
+        Path main = tempDir.resolve("main");
+        Files.createDirectories(main.resolve("spaces").resolve("spc_legacy"));
+        String roots = tempDir.resolve("a") + "," + tempDir.resolve("b");
+        StoragePaths paths = new StoragePaths(main.toString(), roots, 0);
+
+        assertThat(paths.spaceDir("spc_legacy")).isEqualTo(main.toAbsolutePath().resolve("spaces").resolve("spc_legacy"));
+        assertThat(paths.spaceDir("spc_new").startsWith(main.toAbsolutePath())).isFalse();
+    }
+}
@@ -3,16 +3,22 @@ package com.anymind.promptrecorder;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.anymind.promptrecorder.model.SyncModels.ChangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeRequest;
+import com.anymind.promptrecorder.model.SyncModels.ExchangeResponse;
 import com.anymind.promptrecorder.model.SyncModels.PullRequest;
 import com.anymind.promptrecorder.model.SyncModels.PullResponse;
 import com.anymind.promptrecorder.model.SyncModels.PushRequest;
 import com.anymind.promptrecorder.model.SyncModels.PushResponse;
+import com.anymind.promptrecorder.storage.DurabilityPolicy;
+import com.anymind.promptrecorder.storage.InMemorySpaceStore;
 import com.anymind.promptrecorder.storage.SpaceDatabase;
+import com.anymind.promptrecorder.storage.SqliteSpaceStore;
 import com.anymind.promptrecorder.storage.StoragePaths;
 import com.anymind.promptrecorder.storage.SyncService;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -25,7 +31,7 @@ class SyncServiceTest {
     void pushAndPullRoundTrip() {
         StoragePaths paths = new StoragePaths(tempDir.toString());
         SpaceDatabase spaceDatabase = new SpaceDatabase(paths);
-        SyncService syncService = new SyncService(spaceDatabase);
+        SyncService syncService = new SyncService(new SqliteSpaceStore(spaceDatabase));
 
         String spaceId = "spc_test";
         String now = Instant.now().toString();
@@ -60,4 +66,113 @@ class SyncServiceTest {
         assertThat(pullResponse.getChanges().get(0).getId()).isEqualTo("rec-1");
         assertThat(pullResponse.getServerRevMax()).isGreaterThan(0);
     }
+
+    @Test
+    void pullLeavesOutTheCallersOwnChangesButAdvancesTheCursor() {
+        SyncService syncService = new SyncService(new InMemorySpaceStore());
+        for (int i = 0; i < 5; i++) {
+            syncService.push(push("phone", "own-" + i));
+        }
+        syncService.push(push("laptop", "other"));
+
+        PullResponse page = syncService.pull(pull("phone", 1L, 3));
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getNextSinceRev()).isEqualTo(4);
+        assertThat(page.isHasMore()).isTrue();
+
+        page = syncService.pull(pull("phone", page.getNextSinceRev(), 3));
+        assertThat(page.getChanges()).extracting("id").containsExactly("other");
+        assertThat(page.getNextSinceRev()).isEqualTo(6);
+        assertThat(page.isHasMore()).isFalse();
+
+        assertThat(syncService.pull(pull("phone", 0L, 10)).getChanges()).hasSize(6);
+        assertThat(syncService.pull(pull("laptop", 1L, 10)).getChanges()).hasSize(4);
+    }
+
+    @Test
+    void pullLimitsOutsideTheRangeAreClamped() {
+        SyncService syncService = new SyncService(new InMemorySpaceStore());
+        for (int i = 0; i < 3; i++) {
+            syncService.push(push("laptop", "other-" + i));
+        }
+
+        PullResponse page = syncService.pull(pull("phone", 0L, 0));
+        assertThat(page.getChanges()).extracting("id").containsExactly("other-0");
+        assertThat(page.getNextSinceRev()).isEqualTo(1);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(syncService.pull(pull("phone", 1L, -5)).getChanges()).extracting("id").containsExactly("other-1");
+    }
+
+    @Test
+    void exchangeAppliesThePushAndLeavesItOutOfThePulledPage() {
+        SyncService syncService = new SyncService(new InMemorySpaceStore());
+        syncService.push(push("laptop", "other"));
+
+        PushRequest pushed = push("phone", "mine");
+        ExchangeRequest request = new ExchangeRequest();
+        request.setSpaceId("spc_echo");
+        request.setDeviceId("phone");
+        request.setRequestId("req-1");
+        request.setChanges(pushed.getChanges());
+        request.setSinceRev(0L);
+        request.setLimit(10);
+        ExchangeResponse response = syncService.exchange(request);
+
+        assertThat(response.getPush().getResults()).extracting("id").containsExactly("mine");
+        assertThat(response.getPush().getResults().get(0).getServerRev()).isEqualTo(2);
+        assertThat(response.getPull().getChanges()).extracting("id").containsExactly("other");
+        assertThat(response.getPull().getNextSinceRev()).isEqualTo(2);
+        assertThat(response.getPull().isHasMore()).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exchangeReadsItsPageOnTheWriterItPushedWith() {
+        SpaceDatabase spaceDatabase = new SpaceDatabase(new StoragePaths(tempDir.toString()));
+        try {
+            SqliteSpaceStore store = new SqliteSpaceStore(spaceDatabase, DurabilityPolicy.strict(), 64, 1024 * 1024);
+            SyncService syncService = new SyncService(store);
+            syncService.push(push("laptop", "other"));
+
+            ExchangeRequest request = new ExchangeRequest();
+            request.setSpaceId("spc_echo");
+            request.setDeviceId("phone");
+            request.setChanges(push("phone", "mine").getChanges());
+            request.setSinceRev(1L);
+            request.setLimit(10);
+            ExchangeResponse response = syncService.exchange(request);
+
+            assertThat(response.getPull().getServerRevMax()).isEqualTo(response.getPush().getServerRevMax()).isEqualTo(2);
+            assertThat(response.getPull().getNextSinceRev()).isEqualTo(2);
+            Map<String, Object> stats = store.stats();
+            assertThat(stats).containsEntry("open_readers", 0).containsEntry("page_queries", 0L);
+            assertThat((Map<String, Object>) stats.get("hot_tail")).containsEntry("hits", 0L);
+        } finally {
+            spaceDatabase.close();
+        }
+    }
+
+    private static PushRequest push(String deviceId, String recordId) {
+        ChangeRequest change = new ChangeRequest();
+        change.setId(recordId);
+        change.setContent(recordId);
+        change.setSystemTags(Collections.<String>emptyList());
+        change.setUserTags(Collections.<String>emptyList());
+        change.setCreatedAt("2026-01-01T00:00:00Z");
+        change.setUpdatedAt("2026-01-01T00:00:00Z");
+        PushRequest request = new PushRequest();
+        request.setSpaceId("spc_echo");
+        request.setDeviceId(deviceId);
+        request.setChanges(Collections.singletonList(change));
+        return request;
+    }
+
+    private static PullRequest pull(String deviceId, Long sinceRev, int limit) {
+        PullRequest request = new PullRequest();
+        request.setSpaceId("spc_echo");
+        request.setDeviceId(deviceId);
+        request.setSinceRev(sinceRev);
+        request.setLimit(limit);
+        return request;
+    }
 }